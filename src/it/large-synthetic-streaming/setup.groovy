@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+// Generates the classes of the module into target/classes like large-synthetic does.
+// Use -Dejb.it.classCount=<count> for a smaller run.
+
+int classCount = Integer.getInteger( "ejb.it.classCount", 100000 )
+int beanCount = classCount / 20
+String[] suffixes = [ "Bean", "Remote", "Session", "Local" ]
+String[] words = [ "java/lang/Object", "javax/ejb/Stateless", "Ljava/lang/String;", "<init>", "()V", "Code",
+                   "LineNumberTable", "LocalVariableTable", "SourceFile", "RuntimeVisibleAnnotations" ]
+
+File classes = new File( basedir, "target/classes" )
+Random random = new Random( classCount )
+for ( int i = 0; i < classCount; i++ )
+{
+    String name = "org/apache/maven/its/ejb/module" + ( i % 10 ) + "/domain" + ( i.intdiv( 10 ) % 10 ) + "/service" \
+        + ( i.intdiv( 100 ) % 100 ) + "/impl/Generated" + i + suffixes[i % suffixes.length] + ".class"
+    File file = new File( classes, name )
+    file.parentFile.mkdirs()
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+    int length = 512 + random.nextInt( 3584 )
+    while ( bytes.size() < length )
+    {
+        if ( random.nextInt( 4 ) == 0 )
+        {
+            byte[] noise = new byte[1 + random.nextInt( 8 )]
+            random.nextBytes( noise )
+            bytes.write( noise )
+        }
+        else
+        {
+            bytes.write( words[random.nextInt( words.length )].getBytes( "UTF-8" ) )
+        }
+    }
+    file.bytes = bytes.toByteArray()
+}
+
+File descriptor = new File( classes, "META-INF/ejb-jar.xml" )
+descriptor.parentFile.mkdirs()
+descriptor.withWriter( "UTF-8" ) { out ->
+    out << '<?xml version="1.0" encoding="UTF-8"?>\n'
+    out << '<ejb-jar xmlns="http://xmlns.jcp.org/xml/ns/javaee" version="3.2">\n'
+    out << '  <display-name>${project.artifactId}</display-name>\n'
+    out << '  <enterprise-beans>\n'
+    for ( int i = 0; i < beanCount; i++ )
+    {
+        out << '    <session>\n'
+        out << '      <ejb-name>Generated' << i << 'Bean</ejb-name>\n'
+        out << '      <ejb-class>org.apache.maven.its.ejb.Generated' << i << 'Bean</ejb-class>\n'
+        out << '      <session-type>Stateless</session-type>\n'
+        out << '      <env-entry>\n'
+        out << '        <env-entry-name>endpoint</env-entry-name>\n'
+        out << '        <env-entry-type>java.lang.String</env-entry-type>\n'
+        out << '        <env-entry-value>${serviceEndpoint}/' << i << '?version=${project.version}</env-entry-value>\n'
+        out << '      </env-entry>\n'
+        out << '    </session>\n'
+    }
+    out << '  </enterprise-beans>\n'
+    out << '</ejb-jar>\n'
+}
+
+System.out.println( "Generated " + classCount + " classes and " + beanCount + " beans in " + classes )
+return true
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.jar.*
+
+// The build ran with a heap of 96 MiB, so it is enough to check that the jars are complete and sorted.
+
+int classCount = Integer.getInteger( "ejb.it.classCount", 100000 )
+
+File jar = new File( basedir, "target/large-synthetic-streaming-1.0.jar" )
+File clientJar = new File( basedir, "target/large-synthetic-streaming-1.0-client.jar" )
+assert jar.isFile() : "Missing " + jar
+assert clientJar.isFile() : "Missing " + clientJar
+
+def checkSorted = { JarFile archive ->
+    String previous = ""
+    archive.entries().each {
+        String name = it.name.endsWith( "/" ) ? it.name.substring( 0, it.name.length() - 1 ) : it.name
+        if ( !name.startsWith( "META-INF" ) )
+        {
+            assert previous <= name : name + " is written after " + previous + " in " + archive.name
+            previous = name
+        }
+    }
+}
+
+new JarFile( jar ).withCloseable { ejbJar ->
+    int classes = ejbJar.entries().findAll { it.name.endsWith( ".class" ) }.size()
+    assert classes == classCount : "Expected " + classCount + " classes in " + jar + " but found " + classes
+    String descriptor = ejbJar.getInputStream( ejbJar.getEntry( "META-INF/ejb-jar.xml" ) ).getText( "UTF-8" )
+    assert !descriptor.contains( '${' ) : "The deployment descriptor has not been filtered"
+    checkSorted( ejbJar )
+}
+new JarFile( clientJar ).withCloseable { ejbClientJar ->
+    int classes = ejbClientJar.entries().findAll { it.name.endsWith( ".class" ) }.size()
+    assert classes == classCount / 2 : "Expected " + classCount / 2 + " classes in " + clientJar + " but found " + classes
+    checkSorted( ejbClientJar )
+}
+
+// the runs of the external sort and the spilled central directory are deleted
+def leftovers = new File( basedir, "target" ).listFiles().findAll { it.isFile() && !it.name.endsWith( ".jar" ) }
+assert leftovers.isEmpty() : "Temporary files left: " + leftovers
+return true
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.jar.*
+import groovy.json.JsonSlurper
+
+// Checks the jars, then compares the throughput from the packaging profile with baseline.properties. The heap is
+// limited by the -Xmx of invoker.properties, and its peak is taken from the -verbose:gc lines of the build log.
+
+int classCount = Integer.getInteger( "ejb.it.classCount", 100000 )
+
+File jar = new File( basedir, "target/large-synthetic-1.0.jar" )
+File clientJar = new File( basedir, "target/large-synthetic-1.0-client.jar" )
+assert jar.isFile() : "Missing " + jar
+assert clientJar.isFile() : "Missing " + clientJar
+
+new JarFile( jar ).withCloseable { ejbJar ->
+    int classes = ejbJar.entries().findAll { it.name.endsWith( ".class" ) }.size()
+    assert classes == classCount : "Expected " + classCount + " classes in " + jar + " but found " + classes
+    String descriptor = ejbJar.getInputStream( ejbJar.getEntry( "META-INF/ejb-jar.xml" ) ).getText( "UTF-8" )
+    assert !descriptor.contains( '${' ) : "The deployment descriptor has not been filtered"
+    assert descriptor.contains( "https://services.example.org/synthetic/0?version=1.0" )
+}
+new JarFile( clientJar ).withCloseable { ejbClientJar ->
+    // the default client excludes drop the Bean and Session classes
+    int classes = ejbClientJar.entries().findAll { it.name.endsWith( ".class" ) }.size()
+    assert classes == classCount / 2 : "Expected " + classCount / 2 + " classes in " + clientJar + " but found " + classes
+    assert ejbClientJar.entries().findAll { it.name.endsWith( "Bean.class" ) }.isEmpty()
+}
+
+def profile = new JsonSlurper().parse( new File( basedir, "target/ejb-profile.json" ) )
+double seconds = profile.wallTimeMs / 1000
+double entriesPerSecond = profile.archives.sum { it.entries } / seconds
+
+// the heap before and after each collection, 24M->3M(256M) since Java 9 and 24576K->3072K(262144K) before
+long peakHeapBytes = 0
+new File( basedir, "build.log" ).eachLine { line ->
+    def collection = line =~ /(\d+)([KMG])->\d+[KMG]\(\d+[KMG]\)/
+    if ( collection.find() )
+    {
+        long used = Long.parseLong( collection.group( 1 ) ) << 10 * ( "KMG".indexOf( collection.group( 2 ) ) + 1 )
+        peakHeapBytes = Math.max( peakHeapBytes, used )
+    }
+}
+double peakHeapMiB = peakHeapBytes / ( 1024 * 1024 )
+
+Properties baseline = new Properties()
+new File( basedir, "baseline.properties" ).withInputStream { baseline.load( it ) }
+double tolerance = Double.parseDouble( System.getProperty( "ejb.it.tolerance", baseline.getProperty( "tolerance" ) ) )
+double minEntriesPerSecond = Double.parseDouble( baseline.getProperty( "entriesPerSecond" ) ) * ( 1 - tolerance )
+
+println String.format( Locale.ROOT, "Packaged %d entries in %.1f s: %.0f entries/s (minimum %.0f), peak heap %.0f MiB",
+    profile.archives.sum { it.entries }, seconds, entriesPerSecond, minEntriesPerSecond, peakHeapMiB )
+
+// the baseline is for the full size module
+if ( classCount == 100000 )
+{
+    assert entriesPerSecond >= minEntriesPerSecond : "Throughput regression: " + entriesPerSecond + " entries/s"
+}
+return true
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.jar.JarFile
+
+def names = { String classifier ->
+    def file = new File( basedir, "target/variants-1.0" + ( classifier ? "-" + classifier : "" ) + ".jar" )
+    assert file.isFile() : "Missing " + file
+    new JarFile( file ).withCloseable { jar -> jar.entries().collect { it.name } as Set }
+}
+def descriptor = { String classifier ->
+    new JarFile( new File( basedir, "target/variants-1.0-" + classifier + ".jar" ) ).withCloseable { jar ->
+        jar.getInputStream( jar.getEntry( "META-INF/ejb-jar.xml" ) ).getText( "UTF-8" )
+    }
+}
+
+def main = names( null )
+assert main.contains( "org/apache/maven/variants/Person.class" )
+assert !main.contains( "org/apache/maven/variants/weblogic/WeblogicPerson.class" )
+assert !main.contains( "META-INF/wildfly/ejb-jar.xml" )
+
+def wildfly = names( "wildfly" )
+assert wildfly.contains( "org/apache/maven/variants/Person.class" )
+assert !wildfly.contains( "org/apache/maven/variants/weblogic/WeblogicPerson.class" )
+assert !wildfly.contains( "META-INF/wildfly/ejb-jar.xml" )
+assert descriptor( "wildfly" ).contains( "Descriptor of the wildfly jar." )
+
+def weblogic = names( "weblogic" )
+assert weblogic.contains( "org/apache/maven/variants/weblogic/WeblogicPerson.class" )
+assert !weblogic.contains( "META-INF/wildfly/ejb-jar.xml" )
+assert descriptor( "weblogic" ).contains( "Descriptor of the default jar." )
+
+def buildLog = new File( basedir, "build.log" ).text
+assert buildLog.contains( "Building EJB variant variants-1.0-wildfly.jar" )
+assert buildLog.contains( "Building EJB variant variants-1.0-weblogic.jar" )
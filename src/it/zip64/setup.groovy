@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+// Generates more classes than a jar without Zip64 extensions can hold into target/classes. With
+// -Dejb.it.zip64.largeEntry=true it also adds a sparse file of more than 4 GiB, which needs Zip64 sizes; deflating it
+// takes about a minute per jar.
+
+int classCount = Integer.getInteger( "ejb.it.classCount", 70000 )
+
+File classes = new File( basedir, "target/classes" )
+for ( int i = 0; i < classCount; i++ )
+{
+    File file = new File( classes, "org/apache/maven/its/ejb/p" + ( i % 100 ) + "/Generated" + i + "Remote.class" )
+    file.parentFile.mkdirs()
+    file.text = "class " + i
+}
+
+File descriptor = new File( classes, "META-INF/ejb-jar.xml" )
+descriptor.parentFile.mkdirs()
+descriptor.text = '<ejb-jar xmlns="http://xmlns.jcp.org/xml/ns/javaee" version="3.2"/>\n'
+
+if ( Boolean.getBoolean( "ejb.it.zip64.largeEntry" ) )
+{
+    File largeEntry = new File( classes, "data/large.bin" )
+    largeEntry.parentFile.mkdirs()
+    new RandomAccessFile( largeEntry, "rw" ).withCloseable { it.setLength( 0x100000000L + 1024 ) }
+}
+
+System.out.println( "Generated " + classCount + " classes in " + classes )
+return true
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.util.zip.*
+
+// Every jar must have a Zip64 end of central directory and the same entries in its central directory and its local
+// file headers, as read by a stream.
+
+int classCount = Integer.getInteger( "ejb.it.classCount", 70000 )
+boolean largeEntry = Boolean.getBoolean( "ejb.it.zip64.largeEntry" )
+
+def hasZip64End = { File jar ->
+    FileChannel.open( jar.toPath() ).withCloseable { channel ->
+        // the locator precedes the end of central directory, which has no comment
+        ByteBuffer locator = ByteBuffer.allocate( 4 ).order( ByteOrder.LITTLE_ENDIAN )
+        channel.read( locator, channel.size() - 22 - 20 )
+        return locator.getInt( 0 ) == 0x07064b50
+    }
+}
+
+Map<String, List<String>> entryNames = [:]
+for ( String classifier : [ "", "-nio", "-streaming", "-client", "-nio-client", "-streaming-client" ] )
+{
+    File jar = new File( basedir, "target/zip64-1.0" + classifier + ".jar" )
+    assert jar.isFile() : "Missing " + jar
+    assert hasZip64End( jar ) : "No Zip64 end of central directory in " + jar
+
+    List<String> names = []
+    new ZipFile( jar ).withCloseable { zipFile ->
+        zipFile.entries().each { names << it.name }
+        if ( largeEntry && !classifier.endsWith( "client" ) )
+        {
+            assert zipFile.getEntry( "data/large.bin" ).size == 0x100000000L + 1024 : "Wrong size in " + jar
+        }
+    }
+    int classes = names.count { it.endsWith( ".class" ) }
+    assert classes == classCount : "Expected " + classCount + " classes in " + jar + " but found " + classes
+
+    int streamed = 0
+    new ZipInputStream( new BufferedInputStream( new FileInputStream( jar ) ) ).withCloseable { in ->
+        byte[] buffer = new byte[65536]
+        while ( in.nextEntry != null )
+        {
+            while ( in.read( buffer ) > 0 )
+            {
+            }
+            streamed++
+        }
+    }
+    assert streamed == names.size() : "Read " + streamed + " local file headers in " + jar + " but " + names.size() \
+        + " central directory entries"
+    entryNames[classifier] = names
+}
+
+// the archivers agree on the entries, though plexus orders the directories first, and streaming writes the same bytes
+// as the NIO archiver
+assert entryNames[""].toSet() == entryNames["-nio"].toSet() : "The plexus and NIO jars have different entries"
+assert entryNames["-client"].toSet() == entryNames["-nio-client"].toSet() : "The client jars have different entries"
+if ( !largeEntry )
+{
+    assert new File( basedir, "target/zip64-1.0-nio.jar" ).bytes \
+        == new File( basedir, "target/zip64-1.0-streaming.jar" ).bytes
+}
+return true
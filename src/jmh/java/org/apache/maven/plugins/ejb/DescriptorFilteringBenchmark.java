@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The filtering of the deployment descriptor, with the filter wrappers of the project as {@link EjbMojo} creates
+ * them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DescriptorFilteringBenchmark {
+    @Param({"10", "1000"})
+    public int beanCount;
+
+    private MojoFactory mojoFactory;
+
+    private SyntheticProject module;
+
+    private EjbMojo mojo;
+
+    private File descriptor;
+
+    private File template;
+
+    @Setup(Level.Trial)
+    public void createModule() throws Exception {
+        mojoFactory = new MojoFactory();
+        module = SyntheticProject.create(0, beanCount);
+        mojo = mojoFactory.newMojo(module);
+        descriptor = new File(module.getClassesDirectory(), EjbMojo.DEFAULT_EJBJAR);
+        template = new File(module.getBuildDirectory(), "ejb-jar-template.xml");
+        Files.copy(descriptor.toPath(), template.toPath());
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreDescriptor() throws Exception {
+        Files.copy(template.toPath(), descriptor.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteModule() throws Exception {
+        module.delete();
+        mojoFactory.close();
+    }
+
+    @Benchmark
+    public long filterDeploymentDescriptor() throws Exception {
+        mojo.filterDeploymentDescriptor(descriptor);
+        return descriptor.length();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The matching of the class tree against the include and exclude patterns of the EJB client, on their own and as
+ * the directory scan the archiver runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class IncludesExcludesBenchmark {
+    private static final List<String> CLIENT_EXCLUDES =
+            Arrays.asList("**/*Bean.class", "**/*CMP.class", "**/*Session.class", "**/package.html");
+
+    @Param({"1000", "10000", "100000"})
+    public int classCount;
+
+    private SyntheticProject project;
+
+    private String[] includes;
+
+    private String[] excludes;
+
+    @Setup(Level.Trial)
+    public void createProject() throws IOException {
+        project = SyntheticProject.create(classCount, 1);
+        IncludesExcludes includesExcludes =
+                new IncludesExcludes(null, null, Arrays.asList("**/**"), CLIENT_EXCLUDES);
+        includes = includesExcludes.resultingIncludes();
+        excludes = includesExcludes.resultingExcludes();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() throws IOException {
+        project.delete();
+    }
+
+    @Benchmark
+    public String[] resultingPatterns() {
+        IncludesExcludes includesExcludes =
+                new IncludesExcludes(null, null, Arrays.asList("**/**"), CLIENT_EXCLUDES);
+        includesExcludes.resultingIncludes();
+        return includesExcludes.resultingExcludes();
+    }
+
+    @Benchmark
+    public int matchPatterns() {
+        int included = 0;
+        for (String name : project.getEntryNames()) {
+            if (matchesAny(includes, name) && !matchesAny(excludes, name)) {
+                included++;
+            }
+        }
+        return included;
+    }
+
+    @Benchmark
+    public int scanDirectory() {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(project.getClassesDirectory());
+        scanner.setIncludes(includes);
+        scanner.setExcludes(excludes);
+        scanner.scan();
+        return scanner.getIncludedFiles().length;
+    }
+
+    private static boolean matchesAny(String[] patterns, String name) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+import org.apache.maven.shared.filtering.MavenFileFilter;
+import org.codehaus.plexus.ContainerConfiguration;
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.PlexusConstants;
+import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.util.ReflectionUtils;
+
+/**
+ * Creates {@link EjbMojo}s wired with the components of a plexus container, like Maven does, for the benchmarks.
+ */
+final class MojoFactory implements AutoCloseable {
+    private final PlexusContainer container;
+
+    MojoFactory() throws Exception {
+        ContainerConfiguration configuration = new DefaultContainerConfiguration()
+                .setClassPathScanning(PlexusConstants.SCANNING_INDEX)
+                .setAutoWiring(true);
+        container = new DefaultPlexusContainer(configuration);
+    }
+
+    /**
+     * Creates a mojo with the default configuration for a fresh project of the module, so it can be executed once.
+     *
+     * @param module the module to package
+     * @return the mojo
+     * @throws Exception if a component could not be looked up
+     */
+    EjbMojo newMojo(SyntheticProject module) throws Exception {
+        MavenProject project = module.newProject();
+        EjbMojo mojo = new EjbMojo();
+        set(mojo, "project", project);
+        set(mojo, "outputDirectory", module.getBuildDirectory());
+        set(mojo, "sourceDirectory", module.getClassesDirectory());
+        set(mojo, "jarName", project.getBuild().getFinalName());
+        set(mojo, "ejbJar", EjbMojo.DEFAULT_EJBJAR);
+        set(mojo, "ejbVersion", "3.2");
+        set(mojo, "clientClassifier", EjbMojo.DEFAULT_CLIENT_CLASSIFIER);
+        set(mojo, "archive", new MavenArchiveConfiguration());
+        set(mojo, "manifestCache", Boolean.TRUE);
+        set(mojo, "jarArchiver", newJarArchiver());
+        set(mojo, "clientJarArchiver", newJarArchiver());
+        set(mojo, "archiverManager", container.lookup(ArchiverManager.class));
+        set(mojo, "projectHelper", container.lookup(MavenProjectHelper.class));
+        set(mojo, "mavenFileFilter", container.lookup(MavenFileFilter.class, "default"));
+        return mojo;
+    }
+
+    /**
+     * @return a new jar archiver, the archivers collect their entries and can only be used once
+     */
+    JarArchiver newJarArchiver() throws Exception {
+        return (JarArchiver) container.lookup(Archiver.class, "jar");
+    }
+
+    static void set(Object mojo, String field, Object value) throws IllegalAccessException {
+        ReflectionUtils.setVariableValueInObject(mojo, field, value);
+    }
+
+    @Override
+    public void close() {
+        container.dispose();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.archiver.MavenArchiver;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The baseline for {@link PackagingBenchmark}: a plain jar of the same class tree, created the way the
+ * maven-jar-plugin does, without descriptor checks, includes and excludes or a client jar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class PlainJarBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int classCount;
+
+    private MojoFactory mojoFactory;
+
+    private SyntheticProject module;
+
+    private MavenProject project;
+
+    private MavenArchiver archiver;
+
+    @Setup(Level.Trial)
+    public void createModule() throws Exception {
+        mojoFactory = new MojoFactory();
+        module = SyntheticProject.create(classCount, 100);
+    }
+
+    @Setup(Level.Invocation)
+    public void createArchiver() throws Exception {
+        project = module.newProject();
+        archiver = new MavenArchiver();
+        archiver.setArchiver(mojoFactory.newJarArchiver());
+        archiver.setOutputFile(new File(module.getBuildDirectory(), "plain.jar"));
+        archiver.getArchiver().addDirectory(module.getClassesDirectory(), new String[] {"**/**"}, new String[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteModule() throws Exception {
+        module.delete();
+        mojoFactory.close();
+    }
+
+    @Benchmark
+    public void plainJar() throws Exception {
+        archiver.createArchive(null, project, new MavenArchiveConfiguration());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Build;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * A generated EJB module with a tree of class files in deep packages and a deployment descriptor, shared by the
+ * benchmarks. The content is derived from a fixed seed, so every run packages the same bytes.
+ */
+final class SyntheticProject {
+    /**
+     * The class name suffixes, so the default client excludes drop half of the classes.
+     */
+    private static final String[] SUFFIXES = {"Bean", "Remote", "Session", "Local"};
+
+    private static final String[] CONSTANT_POOL_WORDS = {
+        "java/lang/Object", "javax/ejb/Stateless", "javax/ejb/EJB", "Ljava/lang/String;", "<init>", "()V", "Code",
+        "LineNumberTable", "LocalVariableTable", "this", "SourceFile", "org/sample/ejb/AppService", "getName",
+        "setName", "(Ljava/lang/String;)V", "RuntimeVisibleAnnotations"
+    };
+
+    private static final String POM = "<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+            + "  <groupId>org.apache.maven.plugins.ejb.benchmark</groupId>\n  <artifactId>synthetic-ejb</artifactId>\n"
+            + "  <version>1.0</version>\n  <packaging>ejb</packaging>\n</project>\n";
+
+    private final File basedir;
+
+    private final List<String> entryNames;
+
+    private SyntheticProject(File basedir, List<String> entryNames) {
+        this.basedir = basedir;
+        this.entryNames = entryNames;
+    }
+
+    /**
+     * Creates a module with the given number of classes below a new temporary directory.
+     *
+     * @param classCount the number of class files
+     * @param beanCount the number of session beans in the deployment descriptor
+     * @return the module
+     * @throws IOException if the files could not be written
+     */
+    static SyntheticProject create(int classCount, int beanCount) throws IOException {
+        File basedir = Files.createTempDirectory("ejb-benchmark").toFile();
+        File classes = new File(basedir, "target/classes");
+        Random random = new Random(classCount);
+        List<String> entryNames = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            String entryName = classEntryName(i);
+            File file = new File(classes, entryName);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), classBytes(random));
+            entryNames.add(entryName);
+        }
+        writeDescriptor(new File(classes, EjbMojo.DEFAULT_EJBJAR), beanCount);
+        // the archiver adds the pom to META-INF/maven
+        Files.write(new File(basedir, "pom.xml").toPath(), POM.getBytes(StandardCharsets.UTF_8));
+        return new SyntheticProject(basedir, entryNames);
+    }
+
+    /**
+     * Spreads the classes over four levels of packages below <code>org/sample/ejb</code>.
+     */
+    private static String classEntryName(int index) {
+        return "org/sample/ejb/module" + index % 10 + "/domain" + index / 10 % 10 + "/service" + index / 100 % 100
+                + "/impl/Generated" + index + SUFFIXES[index % SUFFIXES.length] + ".class";
+    }
+
+    /**
+     * @return between 512 bytes and 4 KiB of class file like content, which compresses about as well as real classes
+     */
+    private static byte[] classBytes(Random random) {
+        int length = 512 + random.nextInt(3584);
+        byte[] bytes = new byte[length];
+        int position = 0;
+        while (position < length) {
+            byte[] word;
+            if (random.nextInt(4) == 0) {
+                word = new byte[1 + random.nextInt(8)];
+                random.nextBytes(word);
+            } else {
+                word = CONSTANT_POOL_WORDS[random.nextInt(CONSTANT_POOL_WORDS.length)].getBytes(StandardCharsets.UTF_8);
+            }
+            int count = Math.min(word.length, length - position);
+            System.arraycopy(word, 0, bytes, position, count);
+            position += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes an EJB 3.2 descriptor with <code>${...}</code> expressions in every bean, so filtering has work to do.
+     */
+    static void writeDescriptor(File descriptor, int beanCount) throws IOException {
+        descriptor.getParentFile().mkdirs();
+        try (Writer out = Files.newBufferedWriter(descriptor.toPath(), StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<ejb-jar xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\" version=\"3.2\">\n");
+            out.write("  <display-name>${project.artifactId}</display-name>\n");
+            out.write("  <enterprise-beans>\n");
+            for (int i = 0; i < beanCount; i++) {
+                out.write("    <session>\n");
+                out.write("      <ejb-name>Generated" + i + "Bean</ejb-name>\n");
+                out.write("      <ejb-class>org.sample.ejb.Generated" + i + "Bean</ejb-class>\n");
+                out.write("      <session-type>Stateless</session-type>\n");
+                out.write("      <env-entry>\n");
+                out.write("        <env-entry-name>version</env-entry-name>\n");
+                out.write("        <env-entry-type>java.lang.String</env-entry-type>\n");
+                out.write("        <env-entry-value>${project.version}</env-entry-value>\n");
+                out.write("      </env-entry>\n");
+                out.write("    </session>\n");
+            }
+            out.write("  </enterprise-beans>\n");
+            out.write("</ejb-jar>\n");
+        }
+    }
+
+    /**
+     * @return a project with the build directories of the module
+     */
+    MavenProject newProject() {
+        MavenProject project = new MavenProject();
+        project.setGroupId("org.apache.maven.plugins.ejb.benchmark");
+        project.setArtifactId("synthetic-ejb");
+        project.setVersion("1.0");
+        project.setPackaging("ejb");
+        project.setFile(new File(basedir, "pom.xml"));
+        Build build = new Build();
+        build.setDirectory(getBuildDirectory().getPath());
+        build.setOutputDirectory(getClassesDirectory().getPath());
+        build.setFinalName("synthetic-ejb-1.0");
+        project.setBuild(build);
+        project.setArtifact(new DefaultArtifact(
+                project.getGroupId(),
+                project.getArtifactId(),
+                project.getVersion(),
+                null,
+                "ejb",
+                null,
+                new DefaultArtifactHandler("ejb")));
+        return project;
+    }
+
+    File getBuildDirectory() {
+        return new File(basedir, "target");
+    }
+
+    File getClassesDirectory() {
+        return new File(basedir, "target/classes");
+    }
+
+    /**
+     * @return the names of the class entries
+     */
+    List<String> getEntryNames() {
+        return entryNames;
+    }
+
+    /**
+     * Deletes the module.
+     *
+     * @throws IOException if a file could not be deleted
+     */
+    void delete() throws IOException {
+        Files.walkFileTree(basedir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The archivers which can write the EJB, client and variant jars.
+ *
+ * @since 3.2.2
+ */
+enum ArchiverBackend {
+    /**
+     * The plexus jar archiver injected into the mojo, which deflates the entries in parallel with the scatter zip
+     * creator of commons-compress and then copies them into the jar.
+     */
+    PLEXUS("plexus"),
+
+    /**
+     * The {@link NioJarArchiver}, which writes the jar through a file channel and supports all packaging options.
+     */
+    NIO("nio");
+
+    private final String name;
+
+    ArchiverBackend(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the backend in the plugin configuration
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the configured name, in any case
+     * @return the backend, or <code>null</code> if there is none with the name
+     */
+    static ArchiverBackend of(String name) {
+        for (ArchiverBackend backend : values()) {
+            if (backend.name.equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the names of all backends
+     */
+    static List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (ArchiverBackend backend : values()) {
+            names.add(backend.name);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The size of the central directory of a jar, which every class loader reads when it opens the jar. It is read back
+ * from the written jar, so it measures the output of every archiver the same way.
+ *
+ * @since 3.2.2
+ */
+final class CentralDirectory {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+
+    /**
+     * Offsets of the entry count, size and offset of the central directory in the Zip64 end record, and of the end
+     * record in its locator.
+     */
+    private static final int ZIP64_ENTRY_COUNT_OFFSET = 32;
+
+    private static final int ZIP64_SIZE_OFFSET = 40;
+
+    private static final int ZIP64_OFFSET_OFFSET = 48;
+
+    private static final int ZIP64_LOCATOR_OFFSET_OFFSET = 8;
+
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    private static final long MAX_UNSIGNED_INT = 0xFFFFFFFFL;
+
+    private static final int CENTRAL_FILE_HEADER_SIZE = 46;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    /**
+     * Offsets of the entry count, size and offset of the central directory in its end record.
+     */
+    private static final int ENTRY_COUNT_OFFSET = 10;
+
+    private static final int SIZE_OFFSET = 12;
+
+    private static final int OFFSET_OFFSET = 16;
+
+    /**
+     * Offsets of the sizes, and the name, extra field and comment lengths in a central file header.
+     */
+    private static final int COMPRESSED_SIZE_OFFSET = 20;
+
+    private static final int UNCOMPRESSED_SIZE_OFFSET = 24;
+
+    private static final int NAME_LENGTH_OFFSET = 28;
+
+    private static final int EXTRA_LENGTH_OFFSET = 30;
+
+    private static final int COMMENT_LENGTH_OFFSET = 32;
+
+    private final int entryCount;
+
+    private final long size;
+
+    private final List<Entry> entries;
+
+    private final Set<String> missingDirectories;
+
+    private CentralDirectory(int entryCount, long size, List<Entry> entries, Set<String> missingDirectories) {
+        this.entryCount = entryCount;
+        this.size = size;
+        this.entries = entries;
+        this.missingDirectories = missingDirectories;
+    }
+
+    /**
+     * Reads the central directory of a jar.
+     *
+     * @param jar the jar file
+     * @return the central directory
+     * @throws IOException if the file could not be read or is no valid zip file
+     */
+    static CentralDirectory read(Path jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            long[] endPosition = new long[1];
+            ByteBuffer end = readEndOfCentralDirectory(channel, endPosition);
+            long entryCount = Short.toUnsignedInt(end.getShort(ENTRY_COUNT_OFFSET));
+            long size = Integer.toUnsignedLong(end.getInt(SIZE_OFFSET));
+            long offset = Integer.toUnsignedLong(end.getInt(OFFSET_OFFSET));
+            ByteBuffer zip64End = readZip64EndOfCentralDirectory(channel, endPosition[0]);
+            if (zip64End != null) {
+                entryCount = zip64End.getLong(ZIP64_ENTRY_COUNT_OFFSET);
+                size = zip64End.getLong(ZIP64_SIZE_OFFSET);
+                offset = zip64End.getLong(ZIP64_OFFSET_OFFSET);
+            }
+            if (entryCount > Integer.MAX_VALUE || size > Integer.MAX_VALUE) {
+                throw new IOException("The central directory of " + jar + " is too large to be read");
+            }
+
+            ByteBuffer headers = allocate((int) size);
+            readFully(channel, headers, offset);
+
+            List<Entry> entries = new ArrayList<>((int) entryCount);
+            Set<String> names = new HashSet<>();
+            int position = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (headers.getInt(position) != CENTRAL_FILE_HEADER_SIGNATURE) {
+                    throw new IOException("Invalid central directory in " + jar);
+                }
+                long compressedSize = Integer.toUnsignedLong(headers.getInt(position + COMPRESSED_SIZE_OFFSET));
+                long uncompressedSize = Integer.toUnsignedLong(headers.getInt(position + UNCOMPRESSED_SIZE_OFFSET));
+                int nameLength = Short.toUnsignedInt(headers.getShort(position + NAME_LENGTH_OFFSET));
+                int extraLength = Short.toUnsignedInt(headers.getShort(position + EXTRA_LENGTH_OFFSET));
+                int commentLength = Short.toUnsignedInt(headers.getShort(position + COMMENT_LENGTH_OFFSET));
+                byte[] name = new byte[nameLength];
+                // called on Buffer, the ByteBuffer overrides of Java 9 are missing on Java 8
+                ((Buffer) headers).position(position + CENTRAL_FILE_HEADER_SIZE);
+                headers.get(name);
+                if (uncompressedSize == MAX_UNSIGNED_INT || compressedSize == MAX_UNSIGNED_INT) {
+                    // the Zip64 extra field has the sizes which do not fit, the uncompressed one first
+                    int zip64Field = findExtraField(
+                            headers,
+                            position + CENTRAL_FILE_HEADER_SIZE + nameLength,
+                            extraLength,
+                            ZIP64_EXTRA_FIELD_ID);
+                    if (zip64Field < 0) {
+                        throw new IOException("Missing Zip64 extra field in " + jar);
+                    }
+                    int field = zip64Field + 4;
+                    if (uncompressedSize == MAX_UNSIGNED_INT) {
+                        uncompressedSize = headers.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == MAX_UNSIGNED_INT) {
+                        compressedSize = headers.getLong(field);
+                    }
+                }
+                String entryName = new String(name, StandardCharsets.UTF_8);
+                names.add(entryName);
+                entries.add(new Entry(entryName, compressedSize, uncompressedSize));
+                position += CENTRAL_FILE_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+
+            Set<String> missingDirectories = new HashSet<>();
+            for (String name : names) {
+                int separator = name.indexOf('/');
+                while (separator > 0 && separator < name.length() - 1) {
+                    String directory = name.substring(0, separator + 1);
+                    if (!names.contains(directory)) {
+                        missingDirectories.add(directory);
+                    }
+                    separator = name.indexOf('/', separator + 1);
+                }
+            }
+            return new CentralDirectory((int) entryCount, size, entries, missingDirectories);
+        }
+    }
+
+    /**
+     * @param endPosition receives the position of the end record in the file
+     */
+    private static ByteBuffer readEndOfCentralDirectory(FileChannel channel, long[] endPosition) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = allocate(tailSize);
+        readFully(channel, tail, fileSize - tailSize);
+        for (int position = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                endPosition[0] = fileSize - tailSize + position;
+                ((Buffer) tail).position(position);
+                return tail.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        throw new IOException("No end of central directory found");
+    }
+
+    /**
+     * @return the Zip64 end of central directory record, or <code>null</code> if its locator does not precede the end
+     *         record
+     */
+    private static ByteBuffer readZip64EndOfCentralDirectory(FileChannel channel, long endPosition) throws IOException {
+        if (endPosition < ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE + ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE) {
+            return null;
+        }
+        ByteBuffer locator = allocate(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+        readFully(channel, locator, endPosition - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+        if (locator.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+            return null;
+        }
+        ByteBuffer end = allocate(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+        readFully(channel, end, locator.getLong(ZIP64_LOCATOR_OFFSET_OFFSET));
+        if (end.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+            throw new IOException("Invalid Zip64 end of central directory");
+        }
+        return end;
+    }
+
+    /**
+     * @return the position of the extra field with the given id, or <code>-1</code>
+     */
+    private static int findExtraField(ByteBuffer headers, int start, int length, int id) {
+        int position = start;
+        while (position + 4 <= start + length) {
+            if (Short.toUnsignedInt(headers.getShort(position)) == id) {
+                return position;
+            }
+            position += 4 + Short.toUnsignedInt(headers.getShort(position + 2));
+        }
+        return -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the size of the central directory in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the sum of the uncompressed sizes of all entries
+     */
+    long getUncompressedSize() {
+        long uncompressedSize = 0;
+        for (Entry entry : entries) {
+            uncompressedSize += entry.getSize();
+        }
+        return uncompressedSize;
+    }
+
+    /**
+     * @return the sum of the compressed sizes of all entries
+     */
+    long getCompressedSize() {
+        long compressedSize = 0;
+        for (Entry entry : entries) {
+            compressedSize += entry.getCompressedSize();
+        }
+        return compressedSize;
+    }
+
+    /**
+     * @return the entries in the order of the central directory
+     */
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the number of parent directories of the entries which have no entry of their own
+     */
+    int getMissingDirectoryCount() {
+        return missingDirectories.size();
+    }
+
+    /**
+     * @return the bytes the central directory would need for the entries of the missing directories
+     */
+    long getMissingDirectorySize() {
+        long missingSize = 0;
+        for (String directory : missingDirectories) {
+            missingSize += CENTRAL_FILE_HEADER_SIZE + directory.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return missingSize;
+    }
+
+    /**
+     * The name and sizes of an entry.
+     */
+    static final class Entry {
+        private final String name;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        Entry(String name, long compressedSize, long size) {
+            this.name = name;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The order in which a server loads the classes of an EJB jar, read from a <code>-verbose:class</code> log or from a
+ * plain list of class or entry names. It is used to order the jar entries, so the entries which are needed first sit
+ * at the front of the file.
+ *
+ * @since 3.2.2
+ */
+final class ClassLoadProfile {
+    /**
+     * {@code [Loaded org.example.Foo from file:/...]} as written by JDK 8.
+     */
+    private static final Pattern LEGACY_VERBOSE_CLASS = Pattern.compile("^\\[Loaded ([^\\s\\]]+)");
+
+    /**
+     * {@code [0.012s][info][class,load] org.example.Foo source: ...} as written by the unified logging of JDK 9+.
+     */
+    private static final Pattern UNIFIED_VERBOSE_CLASS = Pattern.compile("\\[class,load\\s*\\]\\s+(\\S+)");
+
+    private static final Pattern CLASS_NAME = Pattern.compile("[\\w$]+(\\.[\\w$]+)*");
+
+    private final Map<String, Integer> ranks;
+
+    private ClassLoadProfile(Map<String, Integer> ranks) {
+        this.ranks = ranks;
+    }
+
+    /**
+     * Reads a profile from a file.
+     *
+     * @param file the <code>-verbose:class</code> log or list file
+     * @return the profile
+     * @throws IOException if the file could not be read
+     */
+    static ClassLoadProfile read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Parses a profile. Each line is either a <code>-verbose:class</code> log line, a class name, an entry name
+     * containing a slash, a comment starting with <code>#</code>, or is ignored.
+     *
+     * @param reader the profile content
+     * @return the profile
+     * @throws IOException if the content could not be read
+     */
+    static ClassLoadProfile parse(BufferedReader reader) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String entryName = toEntryName(line.trim());
+            if (entryName != null && !ranks.containsKey(entryName)) {
+                ranks.put(entryName, ranks.size());
+            }
+        }
+        return new ClassLoadProfile(ranks);
+    }
+
+    private static String toEntryName(String line) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+
+        Matcher matcher = LEGACY_VERBOSE_CLASS.matcher(line);
+        if (matcher.find()) {
+            return classToEntryName(matcher.group(1));
+        }
+        matcher = UNIFIED_VERBOSE_CLASS.matcher(line);
+        if (matcher.find()) {
+            return classToEntryName(matcher.group(1));
+        }
+        if (line.startsWith("[")) {
+            // some other log output
+            return null;
+        }
+
+        if (line.indexOf('/') >= 0) {
+            return line;
+        }
+        if (CLASS_NAME.matcher(line).matches()) {
+            return classToEntryName(line);
+        }
+        return null;
+    }
+
+    private static String classToEntryName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * @return the number of distinct entries in the profile
+     */
+    int size() {
+        return ranks.size();
+    }
+
+    /**
+     * Creates the order of the jar entries: the given leading entries first, then the entries of the profile in the
+     * order they were loaded, and all other entries in lexicographic order. The order does not depend on the order
+     * in which the entries are found, so it stays reproducible.
+     *
+     * @param leadingEntries entries which should precede all classes, like the deployment descriptor
+     * @return the comparator of entry names
+     */
+    Comparator<String> entryOrder(List<String> leadingEntries) {
+        return (first, second) -> {
+            String firstName = first.replace('\\', '/');
+            String secondName = second.replace('\\', '/');
+            int result = Integer.compare(rank(firstName, leadingEntries), rank(secondName, leadingEntries));
+            return result != 0 ? result : firstName.compareTo(secondName);
+        };
+    }
+
+    private int rank(String entryName, List<String> leadingEntries) {
+        int leading = leadingEntries.indexOf(entryName);
+        if (leading >= 0) {
+            return leading - leadingEntries.size();
+        }
+        Integer rank = ranks.get(entryName);
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+}
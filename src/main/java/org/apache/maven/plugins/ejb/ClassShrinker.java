@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the classes of an EJB jar which no entry point of the container reaches, so they can be left out of the jar.
+ * The entry points are
+ * <ul>
+ * <li>the classes named in the deployment descriptor, the other XML and properties files and the service files,
+ * which covers the beans, interceptors and listeners of <code>ejb-jar.xml</code>, the classes of
+ * <code>persistence.xml</code> and <code>beans.xml</code> and the service providers;</li>
+ * <li>the classes annotated with an annotation of a Java EE or Jakarta EE package, like <code>@Stateless</code>,
+ * <code>@Entity</code> or <code>@ApplicationScoped</code>, or with an annotation of the jar which is itself such an
+ * entry point, like a CDI stereotype;</li>
+ * <li>the <code>package-info</code> and <code>module-info</code> classes and the classes kept by the user.</li>
+ * </ul>
+ * A class reaches every class of the jar its constant pool names: the super classes and interfaces, the classes of
+ * the fields, methods and annotations it uses, and the string constants which hold a class name, as passed to
+ * {@link Class#forName(String)}. Classes only loaded by names built at run time must be kept by the user.
+ * <p/>
+ * When the <code>beans.xml</code> of the jar discovers all classes as CDI beans, every class is an entry point and
+ * nothing is left out. That is the case for the <code>all</code> discovery mode, and for a <code>beans.xml</code>
+ * without a discovery mode before CDI 4, which made <code>annotated</code> the default.
+ *
+ * @since 3.2.2
+ */
+final class ClassShrinker {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private static final String BEANS_XML = "META-INF/beans.xml";
+
+    private static final String JAKARTA_NAMESPACE = "https://jakarta.ee/xml/ns/jakartaee";
+
+    /**
+     * The major CDI version from which a <code>beans.xml</code> without a discovery mode discovers annotated classes.
+     */
+    private static final int CDI_ANNOTATED_BY_DEFAULT = 4;
+
+    private static final Pattern XML_COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+
+    /**
+     * The start tag of the root element, with its namespace prefix if any and its attributes.
+     */
+    private static final Pattern BEANS_ELEMENT = Pattern.compile("<(?:([\\w.-]+):)?beans(?=[\\s/>])([^>]*)>");
+
+    private static final Pattern XML_ATTRIBUTE = Pattern.compile("([\\w:.-]+)\\s*=\\s*([\"'])(.*?)\\2", Pattern.DOTALL);
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    /**
+     * The access flags, this class and super class which follow the constant pool.
+     */
+    private static final int CLASS_HEADER_LENGTH = 6;
+
+    /**
+     * The access flags, name and descriptor of a field or method, ahead of its attributes.
+     */
+    private static final int MEMBER_HEADER_LENGTH = 6;
+
+    /**
+     * The internal names of the packages whose annotations make a class an entry point, with a trailing slash.
+     */
+    private static final List<String> ENTRY_POINT_PACKAGES = entryPointPackages();
+
+    /**
+     * The internal names of the further annotations which make a class an entry point.
+     */
+    private static final Set<String> ENTRY_POINT_CLASSES = entryPointClasses();
+
+    /**
+     * The internal names of the classes of the jar, and the classes their constant pool names.
+     */
+    private final Map<String, Set<String>> references = new HashMap<>();
+
+    /**
+     * The annotations of the classes of the jar which have any.
+     */
+    private final Map<String, List<String>> annotations = new HashMap<>();
+
+    /**
+     * The names found in the descriptors and resources, which are entry points if they are classes of the jar.
+     */
+    private final Set<String> names = new HashSet<>();
+
+    private final Set<String> kept = new HashSet<>();
+
+    private final boolean jakartaNamespace;
+
+    private boolean keepAll;
+
+    ClassShrinker() {
+        this(false);
+    }
+
+    /**
+     * @param jakartaNamespace whether the jar is built for the <code>jakarta</code> namespace, in which an empty
+     *            <code>beans.xml</code> is read as one of CDI 4
+     */
+    ClassShrinker(boolean jakartaNamespace) {
+        this.jakartaNamespace = jakartaNamespace;
+    }
+
+    /**
+     * Adds a class of the jar.
+     *
+     * @param name the entry name of the class
+     * @param content the class file
+     * @param keep whether the class is kept by the user
+     * @throws IOException if the content is not a valid class file
+     */
+    void addClass(String name, byte[] content, boolean keep) throws IOException {
+        String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+        ConstantPool pool = ConstantPool.read(name, content);
+        Set<String> referenced = new HashSet<>();
+        for (int index = 1; index < pool.count(); index++) {
+            String constant = pool.utf8(index);
+            if (constant != null) {
+                addNames(constant, referenced);
+            }
+        }
+        referenced.remove(className);
+        try {
+            List<String> classAnnotations = readAnnotations(content, pool);
+            if (!classAnnotations.isEmpty()) {
+                annotations.put(className, classAnnotations);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException(name + " is truncated", e);
+        }
+        references.put(className, referenced);
+        String simpleName = className.substring(className.lastIndexOf('/') + 1);
+        if (keep || simpleName.equals("package-info") || simpleName.equals("module-info")) {
+            kept.add(className);
+        }
+    }
+
+    /**
+     * Adds a file of the jar which is no class. The class names in descriptors, properties and service files, and the
+     * names of the service files, are entry points. Other files are ignored.
+     *
+     * @param name the entry name of the file
+     * @param content the content of the file
+     */
+    void addResource(String name, byte[] content) {
+        if (name.equals(BEANS_XML) && discoversAll(content, jakartaNamespace)) {
+            keepAll = true;
+        }
+        if (name.startsWith(SERVICES)) {
+            names.add(name.substring(SERVICES.length()).replace('.', '/'));
+        }
+        if (isDescriptor(name)) {
+            String text = new String(content, StandardCharsets.UTF_8);
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                char c = i < text.length() ? text.charAt(i) : ' ';
+                boolean part = Character.isJavaIdentifierPart(c) || c == '.';
+                if (part && start < 0) {
+                    start = i;
+                } else if (!part && start >= 0) {
+                    names.add(text.substring(start, i).replace('.', '/'));
+                    start = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name the entry name of a file
+     * @return whether the file may name entry points
+     */
+    static boolean isDescriptor(String name) {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        return name.startsWith(SERVICES) || lowerCase.endsWith(".xml") || lowerCase.endsWith(".properties");
+    }
+
+    /**
+     * @return the number of classes added
+     */
+    int size() {
+        return references.size();
+    }
+
+    /**
+     * @return whether the jar discovers all its classes as CDI beans, so nothing can be left out
+     */
+    boolean isKeepingAll() {
+        return keepAll;
+    }
+
+    /**
+     * @return the entry names of the classes no entry point reaches, sorted
+     */
+    SortedSet<String> unreachable() {
+        SortedSet<String> unreachable = new TreeSet<>();
+        if (keepAll) {
+            return unreachable;
+        }
+        Set<String> reached = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        Map<String, Boolean> entryAnnotations = new HashMap<>();
+        for (String className : references.keySet()) {
+            if (kept.contains(className)
+                    || names.contains(className)
+                    || isAnnotatedEntryPoint(className, entryAnnotations, new HashSet<>())) {
+                reached.add(className);
+                pending.add(className);
+            }
+        }
+        while (!pending.isEmpty()) {
+            for (String referenced : references.get(pending.poll())) {
+                if (references.containsKey(referenced) && reached.add(referenced)) {
+                    pending.add(referenced);
+                }
+            }
+        }
+        for (String className : references.keySet()) {
+            if (!reached.contains(className)) {
+                unreachable.add(className + CLASS_SUFFIX);
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * @return whether the class has an annotation of an entry point package, or an annotation of the jar which has
+     *         one, through any number of annotations
+     */
+    private boolean isAnnotatedEntryPoint(String className, Map<String, Boolean> known, Set<String> visiting) {
+        Boolean result = known.get(className);
+        if (result != null) {
+            return result;
+        }
+        if (!visiting.add(className)) {
+            // an annotation annotated with itself, directly or not, says nothing more
+            return false;
+        }
+        boolean entryPoint = false;
+        for (String annotation : annotations.getOrDefault(className, Collections.emptyList())) {
+            if (isEntryPointPackage(annotation)
+                    || references.containsKey(annotation) && isAnnotatedEntryPoint(annotation, known, visiting)) {
+                entryPoint = true;
+                break;
+            }
+        }
+        visiting.remove(className);
+        known.put(className, entryPoint);
+        return entryPoint;
+    }
+
+    private static boolean isEntryPointPackage(String className) {
+        if (ENTRY_POINT_CLASSES.contains(className)) {
+            return true;
+        }
+        for (String prefix : ENTRY_POINT_PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the class names a constant may hold: an internal name, the names in a descriptor or signature, or a binary
+     * name with dots.
+     */
+    private static void addNames(String constant, Set<String> names) {
+        names.add(constant);
+        if (constant.indexOf('.') >= 0) {
+            names.add(constant.replace('.', '/'));
+        }
+        for (int start = constant.indexOf('L'); start >= 0; start = constant.indexOf('L', start + 1)) {
+            int end = constant.indexOf(';', start);
+            if (end < 0) {
+                break;
+            }
+            int typeArguments = constant.indexOf('<', start);
+            names.add(constant.substring(start + 1, typeArguments >= 0 && typeArguments < end ? typeArguments : end));
+        }
+    }
+
+    /**
+     * @return the internal names of the runtime visible annotations of the class itself
+     */
+    private static List<String> readAnnotations(byte[] content, ConstantPool pool) {
+        int position = pool.end() + CLASS_HEADER_LENGTH;
+        position += 2 + 2 * ConstantPool.readUnsignedShort(content, position);
+        position = skipMembers(content, position);
+        position = skipMembers(content, position);
+        int count = ConstantPool.readUnsignedShort(content, position);
+        position += 2;
+        List<String> classAnnotations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = pool.utf8(ConstantPool.readUnsignedShort(content, position));
+            int length = ConstantPool.readInt(content, position + 2);
+            int body = position + 2 + 4;
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(name)) {
+                int annotationCount = ConstantPool.readUnsignedShort(content, body);
+                int annotation = body + 2;
+                for (int j = 0; j < annotationCount; j++) {
+                    String type = pool.utf8(ConstantPool.readUnsignedShort(content, annotation));
+                    if (type != null && type.startsWith("L") && type.endsWith(";")) {
+                        classAnnotations.add(type.substring(1, type.length() - 1));
+                    }
+                    annotation = skipAnnotation(content, annotation);
+                }
+            }
+            position = body + length;
+        }
+        return classAnnotations;
+    }
+
+    /**
+     * @return the position after the fields or the methods
+     */
+    private static int skipMembers(byte[] content, int position) {
+        int count = ConstantPool.readUnsignedShort(content, position);
+        position += 2;
+        for (int i = 0; i < count; i++) {
+            position += MEMBER_HEADER_LENGTH;
+            int attributeCount = ConstantPool.readUnsignedShort(content, position);
+            position += 2;
+            for (int j = 0; j < attributeCount; j++) {
+                position += 2 + 4 + ConstantPool.readInt(content, position + 2);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return the position after the annotation
+     */
+    private static int skipAnnotation(byte[] content, int position) {
+        int pairs = ConstantPool.readUnsignedShort(content, position + 2);
+        position += 4;
+        for (int i = 0; i < pairs; i++) {
+            position = skipElementValue(content, position + 2);
+        }
+        return position;
+    }
+
+    /**
+     * @return the position after the element value
+     */
+    private static int skipElementValue(byte[] content, int position) {
+        char tag = (char) content[position];
+        position++;
+        switch (tag) {
+            case 'e':
+                return position + 4;
+            case '@':
+                return skipAnnotation(content, position);
+            case '[':
+                int count = ConstantPool.readUnsignedShort(content, position);
+                position += 2;
+                for (int i = 0; i < count; i++) {
+                    position = skipElementValue(content, position);
+                }
+                return position;
+            default:
+                // a constant or a class, by the index of a constant
+                return position + 2;
+        }
+    }
+
+    /**
+     * @param jakartaNamespace whether an empty file, or one without a namespace, is read as one of CDI 4
+     * @return whether a <code>beans.xml</code> makes every class a CDI bean: by the <code>all</code> discovery mode,
+     *         or without a mode by a version before 4.0, by a Java EE namespace when there is no version, or by being
+     *         empty outside of the <code>jakarta</code> namespace
+     */
+    private static boolean discoversAll(byte[] content, boolean jakartaNamespace) {
+        String text =
+                XML_COMMENT.matcher(new String(content, StandardCharsets.UTF_8)).replaceAll("");
+        Matcher beans = BEANS_ELEMENT.matcher(text);
+        if (!beans.find()) {
+            return !jakartaNamespace;
+        }
+        String mode = null;
+        String version = null;
+        String namespace = null;
+        String namespaceAttribute = beans.group(1) != null ? "xmlns:" + beans.group(1) : "xmlns";
+        Matcher attribute = XML_ATTRIBUTE.matcher(beans.group(2));
+        while (attribute.find()) {
+            String attributeName = attribute.group(1);
+            if (attributeName.equals("bean-discovery-mode")) {
+                mode = attribute.group(3).trim();
+            } else if (attributeName.equals("version")) {
+                version = attribute.group(3).trim();
+            } else if (attributeName.equals(namespaceAttribute)) {
+                namespace = attribute.group(3).trim();
+            }
+        }
+        if (mode != null) {
+            return mode.equals("all");
+        }
+        if (version != null) {
+            int dot = version.indexOf('.');
+            String major = dot < 0 ? version : version.substring(0, dot);
+            return !major.matches("\\d+") || Integer.parseInt(major) < CDI_ANNOTATED_BY_DEFAULT;
+        }
+        if (namespace == null) {
+            return !jakartaNamespace;
+        }
+        return !namespace.equals(JAKARTA_NAMESPACE);
+    }
+
+    private static List<String> entryPointPackages() {
+        List<String> packages = new ArrayList<>();
+        for (String name : JakartaTransformer.PACKAGES) {
+            packages.add(name.replace('.', '/') + '/');
+            packages.add("jakarta" + name.substring("javax".length()).replace('.', '/') + '/');
+        }
+        return Collections.unmodifiableList(packages);
+    }
+
+    private static Set<String> entryPointClasses() {
+        Set<String> classes = new HashSet<>();
+        for (String name : JakartaTransformer.CLASSES) {
+            classes.add(name.replace('.', '/'));
+            classes.add("jakarta" + name.substring("javax".length()).replace('.', '/'));
+        }
+        return Collections.unmodifiableSet(classes);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The constant pool of a class file, read far enough to locate its UTF-8 constants and the end of the pool, for the
+ * entry transformers which rewrite class files without a bytecode library.
+ *
+ * @since 3.2.2
+ */
+final class ConstantPool {
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final int CONSTANT_INTEGER = 3;
+
+    private static final int CONSTANT_FLOAT = 4;
+
+    private static final int CONSTANT_LONG = 5;
+
+    private static final int CONSTANT_DOUBLE = 6;
+
+    private static final int CONSTANT_CLASS = 7;
+
+    private static final int CONSTANT_STRING = 8;
+
+    private static final int CONSTANT_FIELDREF = 9;
+
+    private static final int CONSTANT_METHODREF = 10;
+
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    private static final int CONSTANT_DYNAMIC = 17;
+
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+
+    private static final int CONSTANT_MODULE = 19;
+
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /**
+     * The offset of the constant pool count in a class file, after the magic and the version.
+     */
+    private static final int COUNT_OFFSET = 8;
+
+    private final byte[] content;
+
+    /**
+     * The offset of the tag of each UTF-8 constant by its index, -1 for the other constants.
+     */
+    private final int[] utf8Offsets;
+
+    private final int end;
+
+    private ConstantPool(byte[] content, int[] utf8Offsets, int end) {
+        this.content = content;
+        this.utf8Offsets = utf8Offsets;
+        this.end = end;
+    }
+
+    /**
+     * @param name the name of the entry, for the error messages
+     * @param content the class file
+     * @return the constant pool of the class
+     * @throws IOException if the content is no class file or its constant pool is truncated
+     */
+    static ConstantPool read(String name, byte[] content) throws IOException {
+        if (content.length < COUNT_OFFSET + 2 || readInt(content, 0) != CLASS_MAGIC) {
+            throw new IOException(name + " is not a class file");
+        }
+        int count = readUnsignedShort(content, COUNT_OFFSET);
+        int[] utf8Offsets = new int[count];
+        Arrays.fill(utf8Offsets, -1);
+        int position = COUNT_OFFSET + 2;
+        try {
+            for (int index = 1; index < count; index++) {
+                int tag = content[position] & BYTE_MASK;
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        utf8Offsets[index] = position;
+                        position += 3 + readUnsignedShort(content, position + 1);
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        position += 3;
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        position += 4;
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        position += 5;
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        // takes two entries of the pool
+                        position += 9;
+                        index++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " in " + name);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("The constant pool of " + name + " is truncated", e);
+        }
+        if (position > content.length) {
+            throw new IOException("The constant pool of " + name + " is truncated");
+        }
+        return new ConstantPool(content, utf8Offsets, position);
+    }
+
+    /**
+     * @return the number of entries of the pool plus one, as the class file has it
+     */
+    int count() {
+        return utf8Offsets.length;
+    }
+
+    /**
+     * @param index the index of a constant
+     * @return the offset of the tag of the UTF-8 constant in the class file, or -1 if it is another constant
+     */
+    int utf8Offset(int index) {
+        return index > 0 && index < utf8Offsets.length ? utf8Offsets[index] : -1;
+    }
+
+    /**
+     * @param index the index of a UTF-8 constant
+     * @return its value, or <code>null</code> if the constant is no UTF-8 constant
+     */
+    String utf8(int index) {
+        int offset = utf8Offset(index);
+        if (offset < 0) {
+            return null;
+        }
+        // the names compared are ASCII, in which modified UTF-8 and UTF-8 agree
+        return new String(content, offset + 3, readUnsignedShort(content, offset + 1), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the offset of the access flags of the class, which follow the pool
+     */
+    int end() {
+        return end;
+    }
+
+    static int readUnsignedShort(byte[] content, int position) {
+        return (content[position] & BYTE_MASK) << 8 | content[position + 1] & BYTE_MASK;
+    }
+
+    static int readInt(byte[] content, int position) {
+        return readUnsignedShort(content, position) << 16 | readUnsignedShort(content, position + 2);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes debug attributes from the class files of a jar while it is written. The attributes only serve debuggers
+ * and stack traces, the classes behave the same without them: a stack trace then shows <code>Unknown Source</code>
+ * instead of the source file and line. The names of the removed attributes stay in the constant pool, which is not
+ * renumbered.
+ * <p/>
+ * The transformer is stateless, so it can be used by several threads at once.
+ *
+ * @since 3.2.2
+ */
+final class DebugInfoStripper implements EntryTransformer {
+    /**
+     * The attributes which may be stripped, none of which the JVM needs to load and verify a class.
+     */
+    static final List<String> ATTRIBUTES = Arrays.asList(
+            "SourceFile", "SourceDebugExtension", "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable");
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String CODE = "Code";
+
+    /**
+     * The access flags, this class and super class which follow the constant pool.
+     */
+    private static final int CLASS_HEADER_LENGTH = 6;
+
+    /**
+     * The access flags, name and descriptor of a field or method, ahead of its attributes.
+     */
+    private static final int MEMBER_HEADER_LENGTH = 6;
+
+    /**
+     * The maximum stack and locals of a <code>Code</code> attribute, ahead of the length of the code.
+     */
+    private static final int CODE_HEADER_LENGTH = 4;
+
+    private static final int EXCEPTION_HANDLER_LENGTH = 8;
+
+    private final Set<String> attributes;
+
+    /**
+     * @param attributes the names of the attributes to strip, some of {@link #ATTRIBUTES}
+     */
+    DebugInfoStripper(Collection<String> attributes) {
+        if (!ATTRIBUTES.containsAll(attributes)) {
+            throw new IllegalArgumentException("Only " + ATTRIBUTES + " can be stripped, not " + attributes);
+        }
+        this.attributes = new HashSet<>(attributes);
+    }
+
+    @Override
+    public boolean transforms(String name) {
+        return name.endsWith(CLASS_SUFFIX);
+    }
+
+    /**
+     * @return the class without the attributes, or the given content if it had none of them
+     * @throws IOException if the content is not a valid class file
+     */
+    @Override
+    public byte[] transform(String name, long lastModified, byte[] content) throws IOException {
+        ConstantPool pool = ConstantPool.read(name, content);
+        Stripping stripping = new Stripping(content, pool);
+        try {
+            int position = pool.end() + CLASS_HEADER_LENGTH;
+            position += 2 + 2 * ConstantPool.readUnsignedShort(content, position);
+            stripping.out.write(content, 0, position);
+            position = stripping.copyMembers(position);
+            position = stripping.copyMembers(position);
+            position = stripping.copyAttributes(position, stripping.out);
+            if (position > content.length) {
+                throw new IOException(name + " is truncated");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException(name + " is truncated", e);
+        }
+        return stripping.stripped ? stripping.out.toByteArray() : content;
+    }
+
+    /**
+     * The copy of a class without the stripped attributes.
+     */
+    private final class Stripping {
+        private final byte[] content;
+
+        private final ConstantPool pool;
+
+        private final ByteArrayOutputStream out;
+
+        private boolean stripped;
+
+        Stripping(byte[] content, ConstantPool pool) {
+            this.content = content;
+            this.pool = pool;
+            this.out = new ByteArrayOutputStream(content.length);
+        }
+
+        /**
+         * Copies the fields or the methods.
+         *
+         * @return the position after them
+         */
+        int copyMembers(int position) {
+            int count = ConstantPool.readUnsignedShort(content, position);
+            out.write(content, position, 2);
+            position += 2;
+            for (int i = 0; i < count; i++) {
+                out.write(content, position, MEMBER_HEADER_LENGTH);
+                position = copyAttributes(position + MEMBER_HEADER_LENGTH, out);
+            }
+            return position;
+        }
+
+        /**
+         * Copies a table of attributes, without the stripped ones and with the <code>Code</code> attributes copied
+         * the same way.
+         *
+         * @return the position after the table
+         */
+        int copyAttributes(int position, ByteArrayOutputStream target) {
+            int count = ConstantPool.readUnsignedShort(content, position);
+            position += 2;
+            ByteArrayOutputStream kept = new ByteArrayOutputStream();
+            int keptCount = 0;
+            for (int i = 0; i < count; i++) {
+                int nameIndex = ConstantPool.readUnsignedShort(content, position);
+                int length = ConstantPool.readInt(content, position + 2);
+                String name = pool.utf8(nameIndex);
+                int body = position + 2 + 4;
+                if (attributes.contains(name)) {
+                    stripped = true;
+                } else if (CODE.equals(name)) {
+                    ByteArrayOutputStream code = new ByteArrayOutputStream(length);
+                    int codeLength = ConstantPool.readInt(content, body + CODE_HEADER_LENGTH);
+                    int handlers = body + CODE_HEADER_LENGTH + 4 + codeLength;
+                    int handlerCount = ConstantPool.readUnsignedShort(content, handlers);
+                    int codeAttributes = handlers + 2 + handlerCount * EXCEPTION_HANDLER_LENGTH;
+                    code.write(content, body, codeAttributes - body);
+                    copyAttributes(codeAttributes, code);
+                    kept.write(content, position, 2);
+                    writeInt(kept, code.size());
+                    kept.write(code.toByteArray(), 0, code.size());
+                    keptCount++;
+                } else {
+                    kept.write(content, position, body + length - position);
+                    keptCount++;
+                }
+                position = body + length;
+            }
+            target.write(keptCount >> 8);
+            target.write(keptCount);
+            target.write(kept.toByteArray(), 0, kept.size());
+            return position;
+        }
+
+        private void writeInt(ByteArrayOutputStream target, int value) {
+            target.write(ByteBuffer.allocate(Integer.BYTES).putInt(value).array(), 0, Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps the deflated content of archive entries in a directory, keyed by the SHA-256 of the uncompressed content, the
+ * compression level and the {@link #DEFLATER_IDENTITY identity of the deflater}, so a file which is deflated by one
+ * module or build is copied as it is by the next, and a build on another JDK or zlib deflates it again as it would
+ * without the cache. The directory may be shared by any number of modules and concurrent builds:
+ * <ul>
+ * <li>entries are written to a temporary file and moved into place in one step, so they are either complete or not
+ * there;</li>
+ * <li>an entry records the size and the CRC of its content, and is only used if they match the content looked up;</li>
+ * <li>an entry records the SHA-256 of its deflated data, and is only used if it matches the data read, so a truncated
+ * or corrupted entry is deflated again and replaced;</li>
+ * <li>an entry which disappears while it is looked up, removed by another build, is a miss.</li>
+ * </ul>
+ * The directory is kept below its size by {@link #trim()}, which removes the entries least recently used first. An
+ * entry which can not be stored, in a directory which is full or read-only, is logged and the content deflated
+ * without the cache.
+ *
+ * @since 3.2.2
+ */
+final class DeflateCache {
+    /**
+     * The name of the cache in the packaging profile.
+     */
+    static final String NAME = "deflate";
+
+    /**
+     * Larger files are deflated each time, they are seldom shared and would be read into the heap for the lookup.
+     */
+    static final long MAX_ENTRY_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * Changed with the format of the entries, the entries of another format are missed and replaced.
+     */
+    private static final int MAGIC = 0x454a4245;
+
+    private static final int DIGEST_SIZE = 32;
+
+    private static final int HEADER_SIZE = 20 + DIGEST_SIZE;
+
+    private static final String SUFFIX = ".deflated";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Temporary files older than this are left over by a build which was killed, and removed by {@link #trim()}.
+     */
+    private static final long TEMPORARY_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final int HEX_RADIX = 16;
+
+    private static final int BYTE_MASK = 0xff;
+
+    private static final int IDENTITY_BYTES = 8;
+
+    private static final int PROBE_LINES = 512;
+
+    private static final long PROBE_SEED = 0x454a42L;
+
+    /**
+     * Identifies the output of the deflater: the JVM and a digest of a fixed probe deflated with the settings of the
+     * entries. The output of the same level differs between zlib builds, which a JDK may bundle or load from the
+     * system.
+     */
+    static final String DEFLATER_IDENTITY = deflaterIdentity();
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    private final PackagingProfile profile;
+
+    private final Log log;
+
+    private final AtomicBoolean stored = new AtomicBoolean();
+
+    /**
+     * Whether storing an entry failed, which is only warned about once.
+     */
+    private final AtomicBoolean writeFailed = new AtomicBoolean();
+
+    /**
+     * @param directory the directory of the cache, created when the first entry is stored
+     * @param maxBytes the size {@link #trim()} keeps the directory below
+     * @param profile the profile recording the lookups, or <code>null</code>
+     * @param log the log of the entries which could not be stored
+     */
+    DeflateCache(Path directory, long maxBytes, PackagingProfile profile, Log log) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.profile = profile;
+        this.log = log;
+    }
+
+    /**
+     * Gets the deflated content from the cache, or deflates it and stores it in the cache. Safe for concurrent use.
+     *
+     * @param content the uncompressed content
+     * @param deflater a deflater from {@link ZipChannelWriter#newDeflater()}, which is not used by another thread
+     *            meanwhile
+     * @return the deflated content, as {@link ZipChannelWriter#prepare(byte[], boolean, Deflater)} returns it
+     */
+    ZipChannelWriter.PreparedContent deflate(byte[] content, Deflater deflater) {
+        long start = System.nanoTime();
+        Path entry = entry(content);
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        ZipChannelWriter.PreparedContent cached = read(entry, content.length, crc.getValue(), start);
+        addLookup(cached != null);
+        if (cached != null) {
+            return cached;
+        }
+
+        ZipChannelWriter.PreparedContent deflated = ZipChannelWriter.prepare(content, true, deflater);
+        try {
+            write(entry, deflated);
+        } catch (IOException e) {
+            // the jar does not need the cache, write deleted what it wrote of the entry
+            String message = "Could not store " + entry + " in the deflate cache: " + e;
+            if (writeFailed.compareAndSet(false, true)) {
+                log.warn(message);
+            } else {
+                log.debug(message);
+            }
+        }
+        return deflated;
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits into its size, if this cache stored any. Entries
+     * removed while another build reads them are simply missed by it.
+     *
+     * @throws IOException if the directory could not be listed
+     */
+    void trim() throws IOException {
+        if (!stored.get() || !Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> entries = new ArrayList<>();
+        List<FileTime> used = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> buckets = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path bucket : buckets) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(bucket)) {
+                    for (Path file : files) {
+                        BasicFileAttributes attributes = readAttributes(file);
+                        if (attributes == null) {
+                            continue;
+                        }
+                        String name = file.getFileName().toString();
+                        if (name.endsWith(SUFFIX)) {
+                            entries.add(file);
+                            used.add(attributes.lastModifiedTime());
+                            sizes.add(attributes.size());
+                            total += attributes.size();
+                        } else if (name.endsWith(TEMPORARY_SUFFIX)
+                                && now - attributes.lastModifiedTime().toMillis() > TEMPORARY_MAX_AGE_MILLIS) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Integer> leastRecentlyUsed = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            leastRecentlyUsed.add(i);
+        }
+        leastRecentlyUsed.sort(Comparator.comparing(used::get));
+        for (int i : leastRecentlyUsed) {
+            if (total <= maxBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entries.get(i));
+                total -= sizes.get(i);
+            } catch (IOException e) {
+                // in use by another build on a platform which can not delete open files
+            }
+        }
+    }
+
+    /**
+     * @return the file of the entry of the content, in a subdirectory named after the first byte of its digest
+     */
+    private Path entry(byte[] content) {
+        String hex = hex(sha256().digest(content), DIGEST_SIZE);
+        String level = ZipChannelWriter.COMPRESSION_LEVEL == Deflater.DEFAULT_COMPRESSION
+                ? "default"
+                : String.valueOf(ZipChannelWriter.COMPRESSION_LEVEL);
+        return directory.resolve(hex.substring(0, 2)).resolve(hex + "-" + level + "-" + DEFLATER_IDENTITY + SUFFIX);
+    }
+
+    /**
+     * @return the cached content, or <code>null</code> if the entry is missing or does not match the content
+     */
+    private static ZipChannelWriter.PreparedContent read(Path entry, long size, long crc, long start) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            long length = Files.size(entry) - HEADER_SIZE;
+            if (in.readInt() != MAGIC || in.readLong() != size || in.readLong() != crc || length < 0) {
+                return null;
+            }
+            byte[] digest = new byte[DIGEST_SIZE];
+            in.readFully(digest);
+            byte[] data = new byte[(int) length];
+            in.readFully(data);
+            if (!MessageDigest.isEqual(digest, sha256().digest(data))) {
+                return null;
+            }
+            // a hit counts as recently used, for the eviction
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ZipChannelWriter.PreparedContent(data, data.length, crc, size, true, System.nanoTime() - start);
+        } catch (NoSuchFileException | EOFException e) {
+            return null;
+        } catch (IOException e) {
+            // an unreadable entry is deflated again and replaced
+            return null;
+        }
+    }
+
+    private void write(Path entry, ZipChannelWriter.PreparedContent deflated) throws IOException {
+        Path bucket = entry.getParent();
+        Files.createDirectories(bucket);
+        Path temporary = Files.createTempFile(bucket, entry.getFileName().toString(), TEMPORARY_SUFFIX);
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(deflated.getSize());
+                out.writeLong(deflated.getCrc());
+                MessageDigest digest = sha256();
+                digest.update(deflated.getData(), 0, deflated.getLength());
+                out.write(digest.digest());
+                out.write(deflated.getData(), 0, deflated.getLength());
+            }
+            try {
+                EjbHelper.replaceFile(temporary, entry);
+            } catch (IOException e) {
+                // a move which is not atomic may have left a partial entry
+                deleteQuietly(entry);
+                throw e;
+            }
+            stored.set(true);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return the hex of the first bytes of the SHA-256 of the JVM and of a fixed probe deflated like the entries
+     */
+    private static String deflaterIdentity() {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(PROBE_SEED);
+        for (int i = 0; i < PROBE_LINES; i++) {
+            text.append("org/sample/ejb/Bean")
+                    .append(random.nextInt(PROBE_LINES))
+                    .append(".class ");
+            text.append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        byte[] probe = text.toString().getBytes(StandardCharsets.US_ASCII);
+        Deflater deflater = ZipChannelWriter.newDeflater();
+        try {
+            ZipChannelWriter.PreparedContent deflated = ZipChannelWriter.prepare(probe, true, deflater);
+            MessageDigest digest = sha256();
+            digest.update((System.getProperty("java.vm.vendor") + '\0' + System.getProperty("java.vm.version") + '\0')
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(deflated.getData(), 0, deflated.getLength());
+            return hex(digest.digest(), IDENTITY_BYTES);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes, int count) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            hex.append(Character.forDigit((bytes[i] & BYTE_MASK) >> 4, HEX_RADIX))
+                    .append(Character.forDigit(bytes[i] & 0xf, HEX_RADIX));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // an entry which is not complete does not match its digest and is missed
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void addLookup(boolean hit) {
+        if (profile != null) {
+            profile.addCacheLookup(NAME, hit);
+        }
+    }
+}
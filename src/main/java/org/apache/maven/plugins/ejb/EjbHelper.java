@@ -19,6 +19,11 @@
 package org.apache.maven.plugins.ejb;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * This class contains some helper methods which do not belong to {@link EjbMojo}.
@@ -81,6 +86,7 @@ public final class EjbHelper {
         if (basedir == null) {
             throw new IllegalArgumentException("basedir is not allowed to be null");
         }
+
         if (finalName == null) {
             throw new IllegalArgumentException("finalName is not allowed to be null");
         }
@@ -95,4 +101,34 @@ public final class EjbHelper {
 
         return new File(basedir, fileName.toString());
     }
+
+    /**
+     * Moves a file over another one in one step where the file system allows it, so a concurrent reader of the target
+     * sees either the old or the new content, never a partly written file.
+     *
+     * @param source the file with the new content, usually a temporary file on the same file system
+     * @param target the file to replace
+     * @throws IOException if the file could not be moved
+     * @since 3.2.2
+     */
+    public static void replaceFile(File source, File target) throws IOException {
+        replaceFile(source.toPath(), target.toPath());
+    }
+
+    /**
+     * Moves a file over another one in one step where the file system allows it, see
+     * {@link #replaceFile(File, File)}.
+     *
+     * @param source the file with the new content, on the file system of the target
+     * @param target the file to replace
+     * @throws IOException if the file could not be moved
+     * @since 3.2.2
+     */
+    public static void replaceFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
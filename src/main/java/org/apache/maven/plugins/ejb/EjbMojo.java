@@ -20,9 +20,25 @@ package org.apache.maven.plugins.ejb;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.input.XmlStreamReader;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
@@ -42,10 +58,15 @@ import org.apache.maven.shared.filtering.MavenFileFilter;
 import org.apache.maven.shared.filtering.MavenFilteringException;
 import org.apache.maven.shared.filtering.MavenResourcesExecution;
 import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
+import org.codehaus.plexus.archiver.AbstractArchiver;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.archiver.util.DefaultFileSet;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
 import org.codehaus.plexus.util.FileUtils;
 
 /**
@@ -206,6 +227,12 @@ public class EjbMojo extends AbstractMojo {
     @Component(role = Archiver.class, hint = "jar")
     private JarArchiver clientJarArchiver;
 
+    /**
+     * The archiver manager, which looks up a new jar archiver for each variant.
+     */
+    @Component
+    private ArchiverManager archiverManager;
+
     /**
      * The Maven project's helper.
      */
@@ -273,14 +300,402 @@ public class EjbMojo extends AbstractMojo {
     @Parameter(defaultValue = "${project.build.outputTimestamp}")
     private String outputTimestamp;
 
+    /**
+     * The archiver which writes the EJB jar and its variants:
+     * <ul>
+     * <li><code>plexus</code>: the plexus jar archiver, which deflates the entries in parallel into temporary scatter
+     * files and copies them into the jar;</li>
+     * <li><code>nio</code>: an archiver writing the jar through NIO channels. Files which end up stored uncompressed
+     * (see <code>archive/compress</code> and <code>archive/recompressAddedZips</code>) are transferred from the source
+     * file into the jar without being copied through the Java heap. It supports all packaging options.</li>
+     * </ul>
+     * Unset, the <code>nio</code> archiver is used when an option only it supports is configured, the
+     * <code>plexus</code> archiver otherwise. Choosing <code>plexus</code> along with such an option fails the build.
+     * With {@link #plexusEntryLayout} both write the same jar for the same reproducible settings, so they can be
+     * compared on a project.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.archiverBackend")
+    private String archiverBackend;
+
+    /**
+     * The archiver which writes the EJB client jar, like {@link #archiverBackend}. Unset, the client jar is written
+     * by the <code>archiverBackend</code> if one is set, else chosen by the options the same way.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.clientArchiverBackend")
+    private String clientArchiverBackend;
+
+    /**
+     * Whether the <code>nio</code> {@link #archiverBackend} should lay the entries out like the plexus archiver does:
+     * all directories ahead of the files, and the files in the order they are added, with <code>META-INF&#47;</code>
+     * written even for {@link #compactJars}. With the same reproducible settings the two archivers then write the
+     * same bytes. By default the NIO archiver writes each directory right before its first entry and applies the
+     * order of the entries across the whole jar. The plexus archiver always uses its layout. Not supported with
+     * {@link #streamingPackaging}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.plexusEntryLayout", defaultValue = "false")
+    private boolean plexusEntryLayout;
+
+    /**
+     * A class-load profile used to order the entries of the EJB and client jars, so the deployment descriptor and the
+     * classes the server loads first sit at the front of the file. The profile is either a <code>-verbose:class</code>
+     * log (JDK 8 or unified logging format) or a plain list with one class name or entry name per line. Entries which
+     * are not in the profile follow in lexicographic order. With the plexus archiver the order is applied to the
+     * files taken from {@link #sourceDirectory}, the NIO archiver applies it across all entries.
+     * <p/>
+     * Without a profile the entries keep the default order, which is sorted when <code>outputTimestamp</code> is set.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private File classLoadProfile;
+
+    /**
+     * Aligns the data of the entries which are stored uncompressed in the EJB and client jars on a boundary of this
+     * many bytes, so a runtime can memory-map them straight out of the jar, like zipalign does. The local file headers
+     * are padded with an extra field, so the jars stay valid for every zip reader and reproducible with
+     * <code>outputTimestamp</code>. The value must be a power of two up to 32768, e.g. <code>4</code> or
+     * <code>4096</code> for page alignment; <code>0</code> disables the alignment.
+     * <p/>
+     * Only the NIO archiver can align entries, so setting an alignment implies the <code>nio</code>
+     * {@link #archiverBackend}. Use <code>archive/compress</code> to control which entries are stored.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(defaultValue = "0")
+    private int storedEntryAlignment;
+
+    /**
+     * Whether the EJB and client jars should be written without directory entries. Class loaders do not need them,
+     * but every entry adds to the central directory which is parsed whenever a jar is opened. The jars are written
+     * without extra fields in the central directory in any case. The plexus archiver still writes a
+     * <code>META-INF/</code> entry which marks the file as a jar. The size of the central directory and the bytes
+     * saved are logged for each jar.
+     * <p/>
+     * The package index of the plexus archiver (<code>archive/index</code>) is built from the directory entries, so
+     * use the <code>nio</code> {@link #archiverBackend} when both are enabled.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(defaultValue = "false")
+    private boolean compactJars;
+
+    /**
+     * Whether a JSON profile of the packaging should be written to <code>ejb-profile.json</code> in the build
+     * directory, with <code>-&lt;classifier&gt;</code> before the extension when a classifier is set. It holds the
+     * wall time of each phase, the entries, bytes in and out and compression ratio of each jar, the largest entries,
+     * the entries which took longest to deflate (NIO archiver only) and cache hits. A summary of all EJB modules of
+     * the build is written to <code>ejb-profile-reactor.json</code> in the build directory of the top level project.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.profileReport", defaultValue = "false")
+    private boolean profileReport;
+
+    /**
+     * Whether the files of <code>sourceDirectory</code> should be written to the EJB and client jars while the
+     * directory is walked, instead of being collected by the archiver first. The memory needed then no longer grows
+     * with the number of files: the central directory is spilled to a temporary file, and when the entries are
+     * ordered, by <code>outputTimestamp</code> or <code>classLoadProfile</code>, the entry names are sorted with an
+     * external merge sort in the build directory. Use it for modules with hundreds of thousands of files.
+     * <p/>
+     * The directory is listed by several threads of the packaging pool only when the entries are ordered, since the
+     * names are sorted anyway. Unordered streaming walks it on one thread to write the files in the order they are
+     * found, and without streaming the archiver scans it on one thread as well.
+     * <p/>
+     * Only the NIO archiver streams, so it implies the <code>nio</code> {@link #archiverBackend}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.streamingPackaging", defaultValue = "false")
+    private boolean streamingPackaging;
+
+    /**
+     * The number of MiB of files which may be read and deflated ahead of the entry being written to the EJB and client
+     * jars, by a pool of threads, so reading, compressing and writing overlap. <code>0</code> reads each file when it
+     * is written. The jars are the same either way.
+     * <p/>
+     * Only the NIO archiver reads ahead, so a positive value implies the <code>nio</code> {@link #archiverBackend}.
+     * The files of <code>sourceDirectory</code> are not read ahead with {@link #streamingPackaging}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.readAheadSize", defaultValue = "0")
+    private int readAheadSize;
+
+    /**
+     * Further classified EJB jars built from the same classes, each with its own excludes and deployment descriptor,
+     * for example one per application server. Usage:
+     * <p/>
+     *
+     * <pre>
+     * &lt;variants&gt;
+     *   &lt;variant&gt;
+     *     &lt;classifier&gt;wildfly&lt;&#47;classifier&gt;
+     *     &lt;ejbJar&gt;META-INF&#47;wildfly&#47;ejb-jar.xml&lt;&#47;ejbJar&gt;
+     *     &lt;excludes&gt;
+     *       &lt;exclude&gt;**&#47;weblogic&#47;**&lt;&#47;exclude&gt;
+     *     &lt;&#47;excludes&gt;
+     *     &lt;filterDeploymentDescriptor&gt;true&lt;&#47;filterDeploymentDescriptor&gt;
+     *   &lt;&#47;variant&gt;
+     * &lt;&#47;variants&gt;
+     * </pre>
+     *
+     * <br/>
+     * The variants are built in parallel once the EJB and client jars are done, and attached with their classifiers.
+     * <code>sourceDirectory</code> is scanned once for all jars of the execution, unless {@link #streamingPackaging}
+     * is set. The deployment descriptors of the variants are left out of every jar except as <code>ejbJar</code> of
+     * their own.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private List<EjbVariant> variants;
+
+    /**
+     * Whether the <code>Class-Path</code> generated into the manifest from the dependencies should be kept in
+     * <code>ejb-manifest-cache.properties</code> of the build directory across builds. It is used again as long as
+     * the resolved dependencies and the class path settings of <code>archive&#47;manifest</code> are the same, instead
+     * of being generated from the dependencies. Set it to <code>false</code> to generate the class path every time.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.manifestCache", defaultValue = "true")
+    private boolean manifestCache;
+
+    /**
+     * A directory keeping the deflated content of the files written to the jars, keyed by the digest of the content,
+     * so a file which was deflated before, by this or another module or build, is copied instead of deflated again.
+     * The directory may be shared by all modules and concurrent builds on the machine, for example
+     * <code>${settings.localRepository}&#47;..&#47;ejb-deflate-cache</code>. Unset, every file is deflated.
+     * <p/>
+     * Only the NIO archiver uses the cache, so setting it implies the <code>nio</code> {@link #archiverBackend}. Files
+     * larger than 8 MiB are not cached.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.deflateCache")
+    private File deflateCache;
+
+    /**
+     * The number of MiB the {@link #deflateCache} is kept below. The entries used least recently are removed first,
+     * after the jars of an execution are written.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.deflateCacheSize", defaultValue = "512")
+    private int deflateCacheSize;
+
+    /**
+     * Whether the digests of a jar signature should be computed while the EJB, client and variant jars are written,
+     * so a signed jar comes out of one pass over its files instead of being read and written again by a signing step.
+     * Each jar then ends with <code>META-INF&#47;MANIFEST.MF</code>, listing the digest of every entry, and the
+     * signature file <code>META-INF&#47;&lt;signatureName&gt;.SF</code>. With a {@link #signer}, the signature block
+     * follows and the jar is signed.
+     * <p/>
+     * The manifest is written after the entries it lists. {@link java.util.jar.JarFile}, class loaders and
+     * <code>jarsigner -verify</code> find it through the central directory, but a
+     * {@link java.util.jar.JarInputStream} looks for it at the start of the jar only and sees an unsigned jar without
+     * manifest.
+     * <p/>
+     * Only the NIO archiver computes the digests, so it implies the <code>nio</code> {@link #archiverBackend}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.signingDigests", defaultValue = "false")
+    private boolean signingDigests;
+
+    /**
+     * The digest algorithm of the {@link #signingDigests}: <code>SHA-256</code>, <code>SHA-384</code> or
+     * <code>SHA-512</code>.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.signatureDigestAlgorithm", defaultValue = "SHA-256")
+    private String signatureDigestAlgorithm;
+
+    /**
+     * The name of the signature file and block in <code>META-INF</code>, up to 8 letters, digits, <code>-</code> or
+     * <code>_</code>. It is upper-cased like <code>jarsigner</code> does.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.signatureName", defaultValue = "EJB")
+    private String signatureName;
+
+    /**
+     * The class name of the {@link SignatureBlockSigner} which signs the signature files of the
+     * {@link #signingDigests}, added as a dependency of the plugin. Unset, the jars are left without signature block.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.signer")
+    private String signer;
+
+    /**
+     * The properties the {@link #signer} is configured with, for example the location of its key store.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private Properties signerProperties;
+
+    /**
+     * Whether the EJB, client and variant jars should be migrated from the <code>javax</code> namespace of Java EE to
+     * the <code>jakarta</code> namespace of Jakarta EE 9 while they are written, so an application built against
+     * Java EE runs on a Jakarta EE server without a transformation step reading and writing the jars again.
+     * <p/>
+     * The names of the Java EE packages are rewritten in the constant pools of the classes, which hold the class
+     * references, descriptors, signatures and string constants, in XML descriptors, <code>.properties</code> and
+     * <code>.tld</code> files, and in the names and contents of the service files in
+     * <code>META-INF&#47;services</code>. The packages of Java SE, like <code>javax.transaction.xa</code>, are kept.
+     * The namespaces and schema versions of the descriptors are not changed, an <code>ejb-jar.xml</code> which
+     * declares one should be updated in the sources.
+     * <p/>
+     * The transformation comes before the {@link #entryTransformers}. Only the NIO archiver transforms entries, so
+     * it implies the <code>nio</code> {@link #archiverBackend}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.jakartaTransform", defaultValue = "false")
+    private boolean jakartaTransform;
+
+    /**
+     * Leaves the classes out of the EJB jar which no entry point of the container reaches. The entry points are the
+     * classes named in the deployment descriptor, in the other XML and properties files and in the service files, the
+     * classes annotated with a Java EE or Jakarta EE annotation like <code>@Stateless</code>, <code>@Entity</code> or
+     * <code>@ApplicationScoped</code>, and the {@link #keepClasses}. Every class they reference through their
+     * constant pool is kept, which includes classes named by string constants. A <code>beans.xml</code> which
+     * discovers all classes as CDI beans keeps all of them.
+     * <p/>
+     * The classes left out are listed in <code>ejb-dropped-classes.txt</code> in the build directory. The client jar
+     * and the variants keep all their classes.
+     *
+     * @since 3.2.2
+     */
+    @Parameter(property = "ejb.shrinkClasses", defaultValue = "false")
+    private boolean shrinkClasses;
+
+    /**
+     * The classes to keep in the EJB jar when {@link #shrinkClasses} is set, even if no entry point reaches them,
+     * like classes only loaded by names built at run time. The patterns are matched against the class files, like
+     * the {@link #excludes}, for example <code>**&#47;spi/**</code>. The classes they reference are kept too.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private List<String> keepClasses;
+
+    /**
+     * The debug attributes to strip from the classes of the EJB jar and its variants while it is written, any of
+     * <code>SourceFile</code>, <code>SourceDebugExtension</code>, <code>LineNumberTable</code>,
+     * <code>LocalVariableTable</code> and <code>LocalVariableTypeTable</code>. The jar gets smaller and its classes
+     * load faster and take less metaspace, at the price of stack traces without source files and line numbers. The
+     * classes in {@link #sourceDirectory} keep their attributes.
+     * <p/>
+     * The attributes are stripped after the {@link #jakartaTransform} and before the {@link #entryTransformers}.
+     * Only the NIO archiver strips attributes, so it implies the <code>nio</code> {@link #archiverBackend}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private List<String> strippedClassAttributes;
+
+    /**
+     * The debug attributes to strip from the classes of the EJB client jar, like the {@link #strippedClassAttributes}
+     * of the EJB jar. A client jar on the class path of many applications is a good place to strip all of them.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private List<String> clientStrippedClassAttributes;
+
+    /**
+     * The class names of the {@link EntryTransformer}s of the EJB jar and its variants, added as dependencies of the
+     * plugin. They rename and rewrite the entries in the order given while the jar is written, like stripping debug
+     * information or relocating packages, instead of further steps reading and writing the finished jar. With a
+     * {@link #readAheadSize}, the entries read ahead are transformed on the threads which deflate them.
+     * <p/>
+     * Only the NIO archiver transforms entries, so it implies the <code>nio</code> {@link #archiverBackend}.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private List<String> entryTransformers;
+
+    /**
+     * The class names of the {@link EntryTransformer}s of the EJB client jar, like the {@link #entryTransformers} of
+     * the EJB jar.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private List<String> clientEntryTransformers;
+
+    /**
+     * The properties all {@link #entryTransformers} and {@link #clientEntryTransformers} are configured with.
+     *
+     * @since 3.2.2
+     */
+    @Parameter
+    private Properties entryTransformerProperties;
+
     private static final String EJB_TYPE = "ejb";
 
     private static final String EJB_CLIENT_TYPE = "ejb-client";
 
+    private static final long BYTES_PER_MIB = 1024 * 1024;
+
+    private Comparator<String> entryOrder;
+
+    private PackagingProfile profile;
+
+    private SourceScan sourceScan;
+
+    private ManifestCache sharedManifestCache;
+
+    private PackagingExecutor executor;
+
+    private DeflateCache sharedDeflateCache;
+
+    private SignatureBlockSigner signatureBlockSigner;
+
+    private ArchiverBackend mainBackend;
+
+    private ArchiverBackend clientBackend;
+
+    private List<EntryTransformer> mainTransformers;
+
+    private List<EntryTransformer> clientTransformers;
+
     /**
      * Generates an EJB jar and optionally an ejb-client jar.
      */
     public void execute() throws MojoExecutionException {
+        // the pool is acquired by the first work run in parallel, if any
+        try (PackagingExecutor packagingExecutor = PackagingExecutor.lease(session)) {
+            executor = packagingExecutor;
+            generateJars();
+        }
+    }
+
+    private void generateJars() throws MojoExecutionException {
+        if (profileReport) {
+            profile = new PackagingProfile(
+                    project.getGroupId() + ":" + project.getArtifactId(), project.getVersion(), getClassifier());
+        }
+
+        sharedManifestCache = new ManifestCache(
+                manifestCache ? outputDirectory.toPath().resolve("ejb-manifest-cache.properties") : null, profile);
+        if (deflateCache != null) {
+            sharedDeflateCache =
+                    new DeflateCache(deflateCache.toPath(), deflateCacheSize * BYTES_PER_MIB, profile, getLog());
+        }
 
         if (!sourceDirectory.exists()) {
             getLog().warn("The created EJB jar will be empty cause the " + sourceDirectory.getPath()
@@ -288,7 +703,47 @@ public class EjbMojo extends AbstractMojo {
             sourceDirectory.mkdirs();
         }
 
-        File jarFile = generateEjb();
+        if (classLoadProfile != null) {
+            entryOrder = readEntryOrder(classLoadProfile);
+        }
+
+        mainBackend = selectBackend(archiverBackend, "archiverBackend", nioOptions(false));
+        clientBackend = clientArchiverBackend != null
+                ? selectBackend(clientArchiverBackend, "clientArchiverBackend", nioOptions(true))
+                : selectBackend(archiverBackend, "archiverBackend", nioOptions(true));
+        if (plexusEntryLayout && streamingPackaging) {
+            String message = "The plexusEntryLayout cannot be combined with streamingPackaging.";
+            getLog().error(message);
+            throw new MojoExecutionException(message);
+        }
+
+        if (compactJars && archive.isIndex() && mainBackend == ArchiverBackend.PLEXUS) {
+            getLog().warn("The package index of the plexus archiver is built from directory entries, "
+                    + "set the archiverBackend to nio to index the packages of compact jars.");
+        }
+
+        if (storedEntryAlignment != 0 && !ZipChannelWriter.isValidAlignment(storedEntryAlignment)) {
+            String message = "The given storedEntryAlignment '" + storedEntryAlignment
+                    + "' is not a power of two up to " + ZipChannelWriter.MAX_ALIGNMENT + ".";
+            getLog().error(message);
+            throw new MojoExecutionException(message);
+        }
+
+        validateVariants();
+
+        if (signingDigests) {
+            validateSigning();
+        }
+
+        if (jakartaTransform && !ejbVersion.startsWith("4.")) {
+            getLog().warn("The jars are transformed to the jakarta namespace, which needs ejbVersion 4.x, not "
+                    + ejbVersion + ".");
+        }
+        mainTransformers = newTransformers(strippedClassAttributes, "strippedClassAttributes", entryTransformers);
+        clientTransformers = newTransformers(
+                clientStrippedClassAttributes, "clientStrippedClassAttributes", clientEntryTransformers);
+
+        File jarFile = generateEjb(jarArchiver, getClassifier(), null);
 
         if (hasClassifier()) {
             if (!isClassifierValid()) {
@@ -299,18 +754,23 @@ public class EjbMojo extends AbstractMojo {
 
             // TODO: We should check the attached artifacts to be sure we don't attach
             // the same file twice...
+            PackagingPhase attach = PackagingPhase.begin(PackagingPhase.Kind.ATTACH, getClassifier(), profile);
             projectHelper.attachArtifact(project, EJB_TYPE, getClassifier(), jarFile);
+            endAttach(attach, jarFile);
         } else {
             if (projectHasAlreadySetAnArtifact()) {
                 throw new MojoExecutionException("You have to use a classifier "
                         + "to attach supplemental artifacts to the project instead of replacing them.");
             }
 
+            PackagingPhase attach = PackagingPhase.begin(PackagingPhase.Kind.ATTACH, getClassifier(), profile);
             project.getArtifact().setFile(jarFile);
+            endAttach(attach, jarFile);
         }
 
         if (generateClient) {
             File clientJarFile = generateEjbClient();
+            PackagingPhase attach = PackagingPhase.begin(PackagingPhase.Kind.ATTACH, getClientClassifier(), profile);
             if (hasClientClassifier()) {
                 if (!isClientClassifierValid()) {
                     String message = "The given client classifier '" + getClientClassifier() + "' is not valid.";
@@ -324,6 +784,61 @@ public class EjbMojo extends AbstractMojo {
                 // Failure!
                 projectHelper.attachArtifact(project, "ejb-client", getClientClassifier(), clientJarFile);
             }
+            endAttach(attach, clientJarFile);
+        }
+
+        if (hasVariants()) {
+            List<File> variantJarFiles = generateVariants();
+            for (int i = 0; i < variants.size(); i++) {
+                String variantClassifier = variants.get(i).getClassifier();
+                File variantJarFile = variantJarFiles.get(i);
+                PackagingPhase attach = PackagingPhase.begin(PackagingPhase.Kind.ATTACH, variantClassifier, profile);
+                projectHelper.attachArtifact(project, EJB_TYPE, variantClassifier, variantJarFile);
+                endAttach(attach, variantJarFile);
+            }
+        }
+
+        if (sharedDeflateCache != null) {
+            trimDeflateCache();
+        }
+
+        if (profile != null) {
+            writeProfile();
+        }
+    }
+
+    private void trimDeflateCache() {
+        try {
+            sharedDeflateCache.trim();
+        } catch (IOException e) {
+            // the jars are done, a cache which is too large is no reason to fail the build
+            getLog().warn("Could not trim the deflate cache " + deflateCache + ": " + e.getMessage());
+        }
+    }
+
+    private void writeProfile() throws MojoExecutionException {
+        profile.finish();
+        String classifierSuffix = hasClassifier() ? "-" + getClassifier() : "";
+        File reportFile = new File(outputDirectory, "ejb-profile" + classifierSuffix + ".json");
+        try {
+            profile.write(reportFile);
+            getLog().info("Packaging profile written to " + reportFile);
+
+            ReactorProfile reactorProfile = ReactorProfile.of(session);
+            MavenProject topLevelProject = session != null ? session.getTopLevelProject() : null;
+            if (reactorProfile != null && topLevelProject != null) {
+                reactorProfile.add(profile);
+                reactorProfile.write(new File(topLevelProject.getBuild().getDirectory(), "ejb-profile-reactor.json"));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "There was a problem writing the packaging profile " + reportFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void endAttach(PackagingPhase attach, File jarFile) {
+        if (attach.isRecording()) {
+            attach.end(jarFile.getName(), 1, 0, jarFile.length());
         }
     }
 
@@ -335,14 +850,26 @@ public class EjbMojo extends AbstractMojo {
         }
     }
 
-    private File generateEjb() throws MojoExecutionException {
-        File jarFile = EjbHelper.getJarFile(outputDirectory, jarName, getClassifier());
+    /**
+     * @param injectedArchiver the plexus archiver for the jar
+     * @param archiveClassifier the classifier of the jar
+     * @param variant the variant the jar is built for, or <code>null</code> for the EJB jar
+     * @return the jar
+     * @throws MojoExecutionException if the jar could not be built
+     */
+    private File generateEjb(JarArchiver injectedArchiver, String archiveClassifier, EjbVariant variant)
+            throws MojoExecutionException {
+        File jarFile = EjbHelper.getJarFile(outputDirectory, jarName, archiveClassifier);
 
-        getLog().info("Building EJB " + jarName + " with EJB version " + ejbVersion);
+        if (variant == null) {
+            getLog().info("Building EJB " + jarName + " with EJB version " + ejbVersion);
+        } else {
+            getLog().info("Building EJB variant " + jarFile.getName() + " with EJB version " + ejbVersion);
+        }
 
-        MavenArchiver archiver = new MavenArchiver();
+        MavenArchiver archiver = sharedManifestCache.newArchiver();
 
-        archiver.setArchiver(jarArchiver);
+        archiver.setArchiver(selectArchiver(injectedArchiver, archiveClassifier, mainBackend, mainTransformers));
 
         archiver.setCreatedBy("Maven EJB Plugin", "org.apache.maven.plugins", "maven-ejb-plugin");
 
@@ -351,30 +878,83 @@ public class EjbMojo extends AbstractMojo {
         // configure for Reproducible Builds based on outputTimestamp value
         archiver.configureReproducible(outputTimestamp);
 
-        File deploymentDescriptor = new File(sourceDirectory, ejbJar);
-
-        checkEJBVersionCompliance(deploymentDescriptor);
+        if (entryOrder != null) {
+            archiver.getArchiver().setFilenameComparator(entryOrder);
+        }
 
-        try {
-            List<String> defaultExcludes = Arrays.asList(ejbJar, "**/package.html");
-            List<String> defaultIncludes = DEFAULT_INCLUDES_LIST;
+        archiver.getArchiver().setFilesonly(compactJars);
+        archiver.getArchiver().setIncludeEmptyDirs(!compactJars);
 
-            IncludesExcludes ie =
-                    new IncludesExcludes(Collections.<String>emptyList(), excludes, defaultIncludes, defaultExcludes);
+        String descriptor = variant != null && variant.getEjbJar() != null ? variant.getEjbJar() : ejbJar;
+        File deploymentDescriptor = new File(sourceDirectory, descriptor);
 
-            archiver.getArchiver().addDirectory(sourceDirectory, ie.resultingIncludes(), ie.resultingExcludes());
+        PackagingPhase validation =
+                PackagingPhase.begin(PackagingPhase.Kind.DESCRIPTOR_VALIDATION, archiveClassifier, profile);
+        // one attribute read answers whether the descriptor exists and how large it is
+        BasicFileAttributes descriptorAttributes = readAttributes(deploymentDescriptor.toPath());
+        boolean descriptorExists = descriptorAttributes != null && descriptorAttributes.isRegularFile();
+        checkEJBVersionCompliance(descriptorExists, descriptor);
+        if (validation.isRecording()) {
+            validation.end(descriptor, descriptorExists ? 1 : 0, descriptorExists ? descriptorAttributes.size() : 0, 0);
+        }
 
+        try {
             // FIXME: We should be able to filter more than just the deployment descriptor?
-            if (deploymentDescriptor.exists()) {
+            // the descriptor is filtered first, so the shrinking reads the class names the jar gets
+            if (descriptorExists) {
+                boolean filter = variant != null && variant.getFilterDeploymentDescriptor() != null
+                        ? variant.getFilterDeploymentDescriptor()
+                        : filterDeploymentDescriptor;
                 // EJB-34 Filter ejb-jar.xml
-                if (filterDeploymentDescriptor) {
-                    filterDeploymentDescriptor(deploymentDescriptor);
+                if (filter) {
+                    PackagingPhase filtering =
+                            PackagingPhase.begin(PackagingPhase.Kind.FILTERING, archiveClassifier, profile);
+                    long unfilteredLength = descriptorAttributes.size();
+                    if (variant == null) {
+                        filterDeploymentDescriptor(deploymentDescriptor);
+                    } else {
+                        // the descriptor may be shared by several variants, so it is not filtered in place
+                        File filteredDescriptor = new File(outputDirectory, "ejb-" + archiveClassifier + "/" + ejbJar);
+                        filterDeploymentDescriptor(deploymentDescriptor, filteredDescriptor);
+                        deploymentDescriptor = filteredDescriptor;
+                    }
+                    if (filtering.isRecording()) {
+                        filtering.end(descriptor, 1, unfilteredLength, Files.size(deploymentDescriptor.toPath()));
+                    }
                 }
+            }
+
+            List<String> defaultExcludes = new ArrayList<>(Arrays.asList(ejbJar, "**/package.html"));
+            defaultExcludes.addAll(variantDescriptors());
+            List<String> defaultIncludes = DEFAULT_INCLUDES_LIST;
+
+            List<String> archiveExcludes =
+                    variant != null && variant.getExcludes() != null ? variant.getExcludes() : excludes;
+            if (archiveExcludes != null && !archiveExcludes.isEmpty()) {
+                archiveExcludes = new ArrayList<>(archiveExcludes);
+                archiveExcludes.addAll(variantDescriptors());
+                if (variant != null) {
+                    // the descriptor of a variant replaces the one of sourceDirectory
+                    archiveExcludes.add(ejbJar);
+                }
+            }
+            IncludesExcludes ie = new IncludesExcludes(
+                    Collections.<String>emptyList(), archiveExcludes, defaultIncludes, defaultExcludes);
+            Set<String> dropped = variant == null && shrinkClasses
+                    ? shrink(ie, descriptorExists ? deploymentDescriptor : null)
+                    : Collections.<String>emptySet();
+
+            addSourceDirectory(archiver.getArchiver(), ie, dropped);
+
+            if (descriptorExists) {
                 archiver.getArchiver().addFile(deploymentDescriptor, ejbJar);
             }
 
             // create archive
+            PackagingPhase compression = PackagingPhase.begin(PackagingPhase.Kind.ARCHIVE, archiveClassifier, profile);
             archiver.createArchive(session, project, archive);
+            endArchive(compression, archiveClassifier, jarFile);
+            logCentralDirectory(jarFile);
         } catch (ArchiverException | ManifestException | IOException | DependencyResolutionRequiredException e) {
             throw new MojoExecutionException("There was a problem creating the EJB archive: " + e.getMessage(), e);
         } catch (MavenFilteringException e) {
@@ -385,14 +965,102 @@ public class EjbMojo extends AbstractMojo {
         return jarFile;
     }
 
+    /**
+     * Builds the jars of the variants in parallel, on the pool shared by the build.
+     *
+     * @return the jars, in the order of the variants
+     * @throws MojoExecutionException if a jar could not be built
+     */
+    private List<File> generateVariants() throws MojoExecutionException {
+        List<Future<File>> jars = new ArrayList<>();
+        try {
+            ForkJoinPool pool = executor.getPool();
+            getLog().debug("Building " + variants.size() + " variants with " + pool.getParallelism()
+                    + " threads shared by the build");
+            for (EjbVariant variant : variants) {
+                // the injected archiver is busy with the EJB jar, so every variant gets its own
+                JarArchiver variantArchiver = (JarArchiver) archiverManager.getArchiver("jar");
+                jars.add(pool.submit(() -> generateEjb(variantArchiver, variant.getClassifier(), variant)));
+            }
+            List<File> jarFiles = new ArrayList<>();
+            for (Future<File> jar : jars) {
+                jarFiles.add(jar.get());
+            }
+            return jarFiles;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException(
+                    "There was a problem creating the EJB variants: "
+                            + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (NoSuchArchiverException e) {
+            throw new MojoExecutionException("There is no jar archiver for the EJB variants: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while creating the EJB variants", e);
+        } finally {
+            for (Future<File> jar : jars) {
+                jar.cancel(true);
+            }
+        }
+    }
+
+    private void validateVariants() throws MojoExecutionException {
+        if (!hasVariants()) {
+            return;
+        }
+        Set<String> classifiers = new HashSet<>();
+        classifiers.add(hasClassifier() ? getClassifier() : "");
+        if (generateClient) {
+            classifiers.add(getClientClassifier());
+        }
+        for (EjbVariant variant : variants) {
+            String variantClassifier = variant.getClassifier();
+            String message = null;
+            if (!EjbHelper.hasClassifier(variantClassifier)) {
+                message = "Every EJB variant needs a classifier.";
+            } else if (!EjbHelper.isClassifierValid(variantClassifier)) {
+                message = "The given variant classifier '" + variantClassifier + "' is not valid.";
+            } else if (!classifiers.add(variantClassifier)) {
+                message = "The variant classifier '" + variantClassifier + "' is already used by another jar.";
+            }
+            if (message != null) {
+                getLog().error(message);
+                throw new MojoExecutionException(message);
+            }
+        }
+    }
+
+    /**
+     * @return the deployment descriptors of the variants, which are left out of every jar
+     */
+    private List<String> variantDescriptors() {
+        List<String> descriptors = new ArrayList<>();
+        if (hasVariants()) {
+            for (EjbVariant variant : variants) {
+                if (variant.getEjbJar() != null) {
+                    descriptors.add(variant.getEjbJar());
+                }
+            }
+        }
+        return descriptors;
+    }
+
+    private boolean hasVariants() {
+        return variants != null && !variants.isEmpty();
+    }
+
     private File generateEjbClient() throws MojoExecutionException {
         File clientJarFile = EjbHelper.getJarFile(outputDirectory, jarName, getClientClassifier());
 
         getLog().info("Building EJB client " + clientJarFile.getPath());
 
-        MavenArchiver clientArchiver = new MavenArchiver();
+        MavenArchiver clientArchiver = sharedManifestCache.newArchiver();
 
-        clientArchiver.setArchiver(clientJarArchiver);
+        clientArchiver.setArchiver(
+                selectArchiver(clientJarArchiver, getClientClassifier(), clientBackend, clientTransformers));
 
         clientArchiver.setCreatedBy("Maven EJB Plugin", "org.apache.maven.plugins", "maven-ejb-plugin");
 
@@ -401,6 +1069,13 @@ public class EjbMojo extends AbstractMojo {
         // configure for Reproducible Builds based on outputTimestamp value
         clientArchiver.configureReproducible(outputTimestamp);
 
+        if (entryOrder != null) {
+            clientArchiver.getArchiver().setFilenameComparator(entryOrder);
+        }
+
+        clientArchiver.getArchiver().setFilesonly(compactJars);
+        clientArchiver.getArchiver().setIncludeEmptyDirs(!compactJars);
+
         try {
             List<String> defaultExcludes = DEFAULT_CLIENT_EXCLUDES_LIST;
             List<String> defaultIncludes = DEFAULT_INCLUDES_LIST;
@@ -408,9 +1083,13 @@ public class EjbMojo extends AbstractMojo {
             IncludesExcludes ie =
                     new IncludesExcludes(clientIncludes, clientExcludes, defaultIncludes, defaultExcludes);
 
-            clientArchiver.getArchiver().addDirectory(sourceDirectory, ie.resultingIncludes(), ie.resultingExcludes());
+            addSourceDirectory(clientArchiver.getArchiver(), ie);
 
+            PackagingPhase compression =
+                    PackagingPhase.begin(PackagingPhase.Kind.ARCHIVE, getClientClassifier(), profile);
             clientArchiver.createArchive(session, project, archive);
+            endArchive(compression, getClientClassifier(), clientJarFile);
+            logCentralDirectory(clientJarFile);
 
         } catch (ArchiverException | ManifestException | IOException | DependencyResolutionRequiredException e) {
             throw new MojoExecutionException(
@@ -420,6 +1099,239 @@ public class EjbMojo extends AbstractMojo {
         return clientJarFile;
     }
 
+    /**
+     * @param injectedArchiver the plexus archiver injected for the archive
+     * @param classifier the classifier of the archive, recorded with its events
+     * @param backend the archiver selected for the archive
+     * @param transformers the transformers of the entries of the archive
+     * @return the archiver which should write the archive
+     */
+    private JarArchiver selectArchiver(
+            JarArchiver injectedArchiver,
+            String classifier,
+            ArchiverBackend backend,
+            List<EntryTransformer> transformers) {
+        getLog().debug("Writing the " + (classifier != null ? classifier + " " : "") + "jar with the "
+                + backend.getName() + " archiver");
+        if (backend == ArchiverBackend.PLEXUS) {
+            return injectedArchiver;
+        }
+        NioJarArchiver nioArchiver = new NioJarArchiver();
+        nioArchiver.setPlexusLayout(plexusEntryLayout);
+        nioArchiver.setClassifier(classifier);
+        nioArchiver.setProfile(profile);
+        if (storedEntryAlignment != 0) {
+            nioArchiver.setAlignment(storedEntryAlignment);
+        }
+        nioArchiver.setReadAheadBytes(readAheadSize * BYTES_PER_MIB);
+        nioArchiver.setExecutor(executor);
+        nioArchiver.setDeflateCache(sharedDeflateCache);
+        if (signingDigests) {
+            nioArchiver.setSignature(
+                    signatureDigestAlgorithm, signatureName.toUpperCase(Locale.ROOT), signatureBlockSigner);
+        }
+        nioArchiver.setTransformers(transformers);
+        return nioArchiver;
+    }
+
+    /**
+     * @param name the configured name of the backend, or <code>null</code> to choose it by the options
+     * @param parameter the parameter the name was configured with
+     * @param nioOptions the configured options only the NIO archiver supports
+     * @return the archiver backend for an archive
+     */
+    private ArchiverBackend selectBackend(String name, String parameter, List<String> nioOptions)
+            throws MojoExecutionException {
+        if (name == null) {
+            return nioOptions.isEmpty() ? ArchiverBackend.PLEXUS : ArchiverBackend.NIO;
+        }
+        ArchiverBackend backend = ArchiverBackend.of(name);
+        String message = null;
+        if (backend == null) {
+            message = "The given " + parameter + " '" + name + "' is not one of " + ArchiverBackend.names() + ".";
+        } else if (backend == ArchiverBackend.PLEXUS && !nioOptions.isEmpty()) {
+            message = "The plexus archiver does not support " + nioOptions + ", set the " + parameter + " to "
+                    + ArchiverBackend.NIO.getName() + ".";
+        }
+        if (message != null) {
+            getLog().error(message);
+            throw new MojoExecutionException(message);
+        }
+        return backend;
+    }
+
+    /**
+     * @param client whether the options of the client jar are wanted, else those of the EJB jar
+     * @return the names of the configured parameters which only the NIO archiver supports
+     */
+    private List<String> nioOptions(boolean client) {
+        List<String> options = new ArrayList<>();
+        if (storedEntryAlignment != 0) {
+            options.add("storedEntryAlignment");
+        }
+        if (streamingPackaging) {
+            options.add("streamingPackaging");
+        }
+        if (readAheadSize > 0) {
+            options.add("readAheadSize");
+        }
+        if (deflateCache != null) {
+            options.add("deflateCache");
+        }
+        if (signingDigests) {
+            options.add("signingDigests");
+        }
+        if (jakartaTransform) {
+            options.add("jakartaTransform");
+        }
+        List<String> stripped = client ? clientStrippedClassAttributes : strippedClassAttributes;
+        if (stripped != null && !stripped.isEmpty()) {
+            options.add(client ? "clientStrippedClassAttributes" : "strippedClassAttributes");
+        }
+        List<String> transformers = client ? clientEntryTransformers : entryTransformers;
+        if (transformers != null && !transformers.isEmpty()) {
+            options.add(client ? "clientEntryTransformers" : "entryTransformers");
+        }
+        return options;
+    }
+
+    /**
+     * Finds the classes of the EJB jar which no entry point reaches, and lists them in a report.
+     *
+     * @param ie the files of the EJB jar
+     * @param deploymentDescriptor the deployment descriptor as it is added to the jar, or <code>null</code> if there is
+     *            none
+     * @return the entry names of the classes no entry point reaches, which are left out of the EJB jar
+     * @throws IOException if a file could not be read or is not a valid class file
+     */
+    private Set<String> shrink(IncludesExcludes ie, File deploymentDescriptor) throws IOException {
+        PackagingPhase phase = PackagingPhase.begin(PackagingPhase.Kind.SHRINK, getClassifier(), profile);
+        StreamedDirectory files =
+                new StreamedDirectory(sourceDirectory.toPath(), ie.resultingIncludes(), ie.resultingExcludes());
+        StreamedDirectory kept = keepClasses != null && !keepClasses.isEmpty()
+                ? new StreamedDirectory(sourceDirectory.toPath(), keepClasses.toArray(new String[0]), new String[0])
+                : null;
+        ClassShrinker shrinker = new ClassShrinker(jakartaTransform || ejbVersion.startsWith("4."));
+        long[] bytesRead = {0};
+        files.walk(new StreamedDirectory.Visitor() {
+            @Override
+            public void directory(String name, BasicFileAttributes attributes) {
+                // directories are kept
+            }
+
+            @Override
+            public void file(String name, Path file, BasicFileAttributes attributes) throws IOException {
+                if (name.endsWith(".class")) {
+                    shrinker.addClass(name, Files.readAllBytes(file), kept != null && kept.selects(name));
+                } else if (ClassShrinker.isDescriptor(name)) {
+                    shrinker.addResource(name, Files.readAllBytes(file));
+                } else {
+                    return;
+                }
+                bytesRead[0] += attributes.size();
+            }
+        });
+        if (deploymentDescriptor != null) {
+            shrinker.addResource(ejbJar, Files.readAllBytes(deploymentDescriptor.toPath()));
+        }
+
+        SortedSet<String> dropped = shrinker.unreachable();
+        String classifierSuffix = hasClassifier() ? "-" + getClassifier() : "";
+        Path report = outputDirectory.toPath().resolve("ejb-dropped-classes" + classifierSuffix + ".txt");
+        Files.createDirectories(report.getParent());
+        Files.write(report, dropped, StandardCharsets.UTF_8);
+        if (shrinker.isKeepingAll()) {
+            getLog().warn("The META-INF/beans.xml discovers all classes as CDI beans, so the EJB jar keeps all "
+                    + shrinker.size() + " classes.");
+        } else {
+            getLog().info("Left " + dropped.size() + " of " + shrinker.size()
+                    + " classes out of the EJB jar which no entry point reaches, listed in " + report);
+        }
+        if (getLog().isDebugEnabled()) {
+            for (String name : dropped) {
+                getLog().debug("Left out " + name);
+            }
+        }
+        if (phase.isRecording()) {
+            phase.end(sourceDirectory.getName(), shrinker.size(), bytesRead[0], 0);
+        }
+        return dropped;
+    }
+
+    private void addSourceDirectory(Archiver archiver, IncludesExcludes ie) throws IOException {
+        addSourceDirectory(archiver, ie, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param skipped the entry names of the files left out besides the excludes, looked up rather than matched as
+     *            patterns
+     */
+    private void addSourceDirectory(Archiver archiver, IncludesExcludes ie, Set<String> skipped) throws IOException {
+        if (hasVariants() && !streamingPackaging && sourceScan == null) {
+            // the first archive scans for all, the archives are configured alike
+            PackagingPhase scan = PackagingPhase.begin(PackagingPhase.Kind.SCAN, getClassifier(), profile);
+            sourceScan = SourceScan.scan(sourceDirectory, (AbstractArchiver) archiver);
+            scan.end(sourceDirectory.getName(), sourceScan.size(), 0, 0);
+        }
+        if (streamingPackaging) {
+            ((NioJarArchiver) archiver)
+                    .setStreamedDirectory(new StreamedDirectory(
+                            sourceDirectory.toPath(), ie.resultingIncludes(), ie.resultingExcludes(), skipped));
+        } else if (sourceScan != null) {
+            archiver.addResources(sourceScan.select(ie.resultingIncludes(), ie.resultingExcludes(), skipped));
+        } else if (skipped.isEmpty()) {
+            archiver.addDirectory(sourceDirectory, ie.resultingIncludes(), ie.resultingExcludes());
+        } else {
+            // the file set of addDirectory, with a selector for the skipped files
+            DefaultFileSet fileSet = DefaultFileSet.fileSet(sourceDirectory)
+                    .prefixed("")
+                    .includeExclude(ie.resultingIncludes(), ie.resultingExcludes())
+                    .includeEmptyDirs(archiver.getIncludeEmptyDirs());
+            fileSet.setFileSelectors(
+                    new FileSelector[] {file -> !skipped.contains(file.getName().replace('\\', '/'))});
+            archiver.addFileSet(fileSet);
+        }
+    }
+
+    private void endArchive(PackagingPhase compression, String archiveClassifier, File jarFile) throws IOException {
+        if (compression.isRecording()) {
+            CentralDirectory centralDirectory = CentralDirectory.read(jarFile.toPath());
+            if (profile != null) {
+                profile.addArchive(archiveClassifier, jarFile, centralDirectory);
+            }
+            compression.end(
+                    jarFile.getName(),
+                    centralDirectory.getEntryCount(),
+                    centralDirectory.getUncompressedSize(),
+                    jarFile.length());
+        }
+    }
+
+    private void logCentralDirectory(File jarFile) throws IOException {
+        if (!compactJars) {
+            return;
+        }
+        CentralDirectory centralDirectory = CentralDirectory.read(jarFile.toPath());
+        long size = centralDirectory.getSize();
+        long uncompactedSize = size + centralDirectory.getMissingDirectorySize();
+        getLog().info("Left out " + centralDirectory.getMissingDirectoryCount() + " directory entries of "
+                + jarFile.getName() + ", its central directory of " + centralDirectory.getEntryCount() + " entries is "
+                + size + " bytes instead of " + uncompactedSize + " ("
+                + NumberFormat.getPercentInstance(Locale.ROOT).format(1 - (double) size / uncompactedSize)
+                + " smaller)");
+    }
+
+    private Comparator<String> readEntryOrder(File profile) throws MojoExecutionException {
+        try {
+            ClassLoadProfile classes = ClassLoadProfile.read(profile.toPath());
+            getLog().debug("Ordering entries by " + classes.size() + " entries of the class-load profile " + profile);
+            return classes.entryOrder(Collections.singletonList(ejbJar));
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "There was a problem reading the class-load profile " + profile + ": " + e.getMessage(), e);
+        }
+    }
+
     static void validateEjbVersion(String ejbVersion) throws MojoExecutionException {
         if (!ejbVersion.matches("\\A[2-4]\\.[0-9]\\z")) {
             throw new MojoExecutionException(
@@ -427,32 +1339,137 @@ public class EjbMojo extends AbstractMojo {
         }
     }
 
-    private void checkEJBVersionCompliance(File deploymentDescriptor) throws MojoExecutionException {
+    private void validateSigning() throws MojoExecutionException {
+        if (!JarSignature.DIGEST_ALGORITHMS.contains(signatureDigestAlgorithm)) {
+            throw new MojoExecutionException("The given signatureDigestAlgorithm '" + signatureDigestAlgorithm
+                    + "' is not one of " + JarSignature.DIGEST_ALGORITHMS + ".");
+        }
+        if (signatureName == null || !signatureName.matches("[A-Za-z0-9_-]{1,8}")) {
+            throw new MojoExecutionException(
+                    "The given signatureName '" + signatureName + "' is not 1 to 8 letters, digits, '-' or '_'.");
+        }
+        if (signer == null) {
+            return;
+        }
+        signatureBlockSigner = newExtension(signer, SignatureBlockSigner.class, "signer");
+        try {
+            signatureBlockSigner.configure(signerProperties != null ? signerProperties : new Properties());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not configure the signer " + signer + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param strippedAttributes the class file attributes to strip, or <code>null</code>
+     * @param strippedParameter the parameter the attributes were configured with
+     * @param classNames the class names of the configured transformers, or <code>null</code>
+     * @return the transformers of the entries of an archive, in the order they are applied
+     */
+    private List<EntryTransformer> newTransformers(
+            List<String> strippedAttributes, String strippedParameter, List<String> classNames)
+            throws MojoExecutionException {
+        List<EntryTransformer> transformers = new ArrayList<>();
+        if (jakartaTransform) {
+            transformers.add(new JakartaTransformer());
+        }
+        if (strippedAttributes != null && !strippedAttributes.isEmpty()) {
+            if (!DebugInfoStripper.ATTRIBUTES.containsAll(strippedAttributes)) {
+                String message = "The given " + strippedParameter + " " + strippedAttributes + " are not all in "
+                        + DebugInfoStripper.ATTRIBUTES + ".";
+                getLog().error(message);
+                throw new MojoExecutionException(message);
+            }
+            transformers.add(new DebugInfoStripper(strippedAttributes));
+        }
+        if (classNames == null) {
+            return transformers;
+        }
+        Properties properties = entryTransformerProperties != null ? entryTransformerProperties : new Properties();
+        for (String className : classNames) {
+            EntryTransformer transformer = newExtension(className, EntryTransformer.class, "entry transformer");
+            try {
+                transformer.configure(properties);
+            } catch (IOException e) {
+                throw new MojoExecutionException(
+                        "Could not configure the entry transformer " + className + ": " + e.getMessage(), e);
+            }
+            transformers.add(transformer);
+        }
+        return transformers;
+    }
+
+    /**
+     * Creates an extension added as a dependency of the plugin.
+     *
+     * @param className the configured class name
+     * @param type the interface the class implements
+     * @param role what the extension is, for the error message
+     * @return a new instance of the class
+     */
+    private <T> T newExtension(String className, Class<T> type, String role) throws MojoExecutionException {
+        try {
+            return Class.forName(className, true, getClass().getClassLoader())
+                    .asSubclass(type)
+                    .getConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new MojoExecutionException("Could not create the " + role + " " + className + ": " + e, e);
+        }
+    }
+
+    private void checkEJBVersionCompliance(boolean descriptorExists, String descriptor) throws MojoExecutionException {
         validateEjbVersion(ejbVersion);
 
-        if (ejbVersion.matches("\\A2\\.[0-9]\\z") && !deploymentDescriptor.exists()) {
-            throw new MojoExecutionException("Error assembling EJB: " + ejbJar + " is required for ejbVersion 2.x");
+        if (ejbVersion.matches("\\A2\\.[0-9]\\z") && !descriptorExists) {
+            throw new MojoExecutionException("Error assembling EJB: " + descriptor + " is required for ejbVersion 2.x");
         }
     }
 
-    private void filterDeploymentDescriptor(File deploymentDescriptor) throws MavenFilteringException, IOException {
+    void filterDeploymentDescriptor(File deploymentDescriptor) throws MavenFilteringException, IOException {
         getLog().debug("Filtering deployment descriptor.");
         MavenResourcesExecution mavenResourcesExecution = new MavenResourcesExecution();
         mavenResourcesExecution.setEscapeString(escapeString);
         List<FilterWrapper> filterWrappers = mavenFileFilter.getDefaultFilterWrappers(
                 project, filters, escapeBackslashesInFilePath, this.session, mavenResourcesExecution);
 
-        // Create a temporary file that we can copy-and-filter
-        File unfilteredDeploymentDescriptor = new File(sourceDirectory, ejbJar + ".unfiltered");
-        FileUtils.copyFile(deploymentDescriptor, unfilteredDeploymentDescriptor);
+        // Filter into a temporary file outside of sourceDirectory, which the archives are made from, and replace the
+        // descriptor at once, so concurrent builds reading it never see it half written
+        outputDirectory.mkdirs();
+        File filteringDirectory = Files.createTempDirectory(outputDirectory.toPath(), "ejb-filtering")
+                .toFile();
+        try {
+            // the filter does not write into an existing empty file, so the file is left to it to create
+            File filteredDeploymentDescriptor = new File(filteringDirectory, deploymentDescriptor.getName());
+            mavenFileFilter.copyFile(
+                    deploymentDescriptor,
+                    filteredDeploymentDescriptor,
+                    true,
+                    filterWrappers,
+                    getEncoding(deploymentDescriptor.toPath()));
+            EjbHelper.replaceFile(filteredDeploymentDescriptor, deploymentDescriptor);
+        } finally {
+            FileUtils.deleteDirectory(filteringDirectory);
+        }
+    }
+
+    /**
+     * Filters a deployment descriptor into another file.
+     */
+    private void filterDeploymentDescriptor(File deploymentDescriptor, File filteredDeploymentDescriptor)
+            throws MavenFilteringException, IOException {
+        getLog().debug("Filtering deployment descriptor " + deploymentDescriptor + ".");
+        MavenResourcesExecution mavenResourcesExecution = new MavenResourcesExecution();
+        mavenResourcesExecution.setEscapeString(escapeString);
+        List<FilterWrapper> filterWrappers = mavenFileFilter.getDefaultFilterWrappers(
+                project, filters, escapeBackslashesInFilePath, this.session, mavenResourcesExecution);
+
+        filteredDeploymentDescriptor.getParentFile().mkdirs();
         mavenFileFilter.copyFile(
-                unfilteredDeploymentDescriptor,
                 deploymentDescriptor,
+                filteredDeploymentDescriptor,
                 true,
                 filterWrappers,
-                getEncoding(unfilteredDeploymentDescriptor));
-        // Remove the temporary file
-        FileUtils.forceDelete(unfilteredDeploymentDescriptor);
+                getEncoding(deploymentDescriptor.toPath()));
     }
 
     /**
@@ -478,6 +1495,19 @@ public class EjbMojo extends AbstractMojo {
         return EjbHelper.isClassifierValid(getClientClassifier());
     }
 
+    /**
+     * @return the attributes of the file, or <code>null</code> if it does not exist
+     */
+    private static BasicFileAttributes readAttributes(Path file) throws MojoExecutionException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not read the attributes of " + file + ": " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Get the encoding from an XML-file.
      *
@@ -485,8 +1515,8 @@ public class EjbMojo extends AbstractMojo {
      * @return The encoding of the XML file, or UTF-8 if it's not specified in the file
      * @throws IOException if an error occurred while reading the file
      */
-    private String getEncoding(File xmlFile) throws IOException {
-        try (XmlStreamReader xmlReader = new XmlStreamReader(xmlFile)) {
+    private String getEncoding(Path xmlFile) throws IOException {
+        try (XmlStreamReader xmlReader = new XmlStreamReader(Files.newInputStream(xmlFile))) {
             final String encoding = xmlReader.getEncoding();
             return encoding;
         }
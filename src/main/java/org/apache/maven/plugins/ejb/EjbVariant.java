@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.util.List;
+
+/**
+ * A classified EJB jar which is built by the same execution as the main EJB jar, with its own excludes and deployment
+ * descriptor. Usage:
+ * <p/>
+ *
+ * <pre>
+ * &lt;variants&gt;
+ * &nbsp;&nbsp;&lt;variant&gt;
+ * &nbsp;&nbsp;&nbsp;&nbsp;&lt;classifier&gt;wildfly&lt;&#47;classifier&gt;
+ * &nbsp;&nbsp;&nbsp;&nbsp;&lt;ejbJar&gt;META-INF&#47;wildfly&#47;ejb-jar.xml&lt;&#47;ejbJar&gt;
+ * &nbsp;&nbsp;&nbsp;&nbsp;&lt;excludes&gt;
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&lt;exclude&gt;**&#47;weblogic&#47;**&lt;&#47;exclude&gt;
+ * &nbsp;&nbsp;&nbsp;&nbsp;&lt;&#47;excludes&gt;
+ * &nbsp;&nbsp;&lt;&#47;variant&gt;
+ * &lt;&#47;variants&gt;
+ * </pre>
+ *
+ * @since 3.2.2
+ */
+public class EjbVariant {
+    /**
+     * The classifier of the jar, which is attached to the project with it.
+     */
+    private String classifier;
+
+    /**
+     * The files and directories to exclude from the jar. The <code>excludes</code> of the goal are used when none are
+     * given.
+     */
+    private List<String> excludes;
+
+    /**
+     * The deployment descriptor of the jar, relative to <code>sourceDirectory</code>. It is written to the jar as
+     * <code>ejbJar</code> of the goal, which is also the default.
+     */
+    private String ejbJar;
+
+    /**
+     * Whether the deployment descriptor should be filtered, <code>filterDeploymentDescriptor</code> of the goal by
+     * default. The filtered copy is written to the build directory, <code>sourceDirectory</code> is left unchanged.
+     */
+    private Boolean filterDeploymentDescriptor;
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public void setClassifier(String classifier) {
+        this.classifier = classifier;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    public String getEjbJar() {
+        return ejbJar;
+    }
+
+    public void setEjbJar(String ejbJar) {
+        this.ejbJar = ejbJar;
+    }
+
+    public Boolean getFilterDeploymentDescriptor() {
+        return filterDeploymentDescriptor;
+    }
+
+    public void setFilterDeploymentDescriptor(Boolean filterDeploymentDescriptor) {
+        this.filterDeploymentDescriptor = filterDeploymentDescriptor;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Transforms the entries of a jar while it is written, see the <code>entryTransformers</code> and
+ * <code>clientEntryTransformers</code> parameters of the <code>ejb</code> goal. The transformers of a jar form a
+ * chain: each one is given the name and content the previous one produced. Implementations are added as a dependency
+ * of the plugin and named by their class. They need a public constructor without arguments and must be safe for
+ * concurrent use, since the content of entries which are read ahead is transformed on several threads, and the jars
+ * of an execution may be written in parallel.
+ * <p/>
+ * The names of the entries are decided before their content is read, so {@link #rename(String)} may only depend on
+ * the name. The manifest, the package index and the signature files are written by the archiver and are not
+ * transformed.
+ *
+ * @since 3.2.2
+ */
+public interface EntryTransformer {
+    /**
+     * Configures the transformer before the first jar is written.
+     *
+     * @param properties the <code>entryTransformerProperties</code> of the plugin configuration, never
+     *            <code>null</code>
+     * @throws IOException if the transformer could not be configured
+     */
+    default void configure(Properties properties) throws IOException {
+        // nothing to configure
+    }
+
+    /**
+     * @param name the name of a file entry
+     * @return the name the entry is written with, the given name to keep it
+     */
+    default String rename(String name) {
+        return name;
+    }
+
+    /**
+     * Tells whether the content of an entry is transformed. Only the content of these entries is read into the heap,
+     * the others are copied from their files as they are.
+     *
+     * @param name the name of a file entry, before {@link #rename(String)}
+     * @return whether {@link #transform(String, long, byte[])} should be called for the entry
+     */
+    boolean transforms(String name);
+
+    /**
+     * Transforms the content of an entry.
+     *
+     * @param name the name of the entry, before {@link #rename(String)}
+     * @param lastModified the time the entry is written with, in milliseconds since the epoch
+     * @param content the content of the entry, which may be returned as it is but must not be changed
+     * @return the content to write
+     * @throws IOException if the content could not be transformed
+     */
+    byte[] transform(String name, long lastModified, byte[] content) throws IOException;
+}
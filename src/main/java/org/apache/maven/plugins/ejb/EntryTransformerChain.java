@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link EntryTransformer}s of an archive, applied in order. Entries are identified by the name they are added to
+ * the archive with; the chain passes each transformer the name the previous ones renamed the entry to.
+ *
+ * @since 3.2.2
+ */
+final class EntryTransformerChain {
+    private final List<EntryTransformer> transformers;
+
+    private final AtomicInteger transformed = new AtomicInteger();
+
+    /**
+     * @param transformers the transformers, in the order they are applied
+     */
+    EntryTransformerChain(List<EntryTransformer> transformers) {
+        this.transformers = new ArrayList<>(transformers);
+    }
+
+    /**
+     * @param name the name a file is added with
+     * @return the name of the entry in the archive
+     */
+    String rename(String name) {
+        for (EntryTransformer transformer : transformers) {
+            name = transformer.rename(name);
+        }
+        return name;
+    }
+
+    /**
+     * @param name the name a file is added with
+     * @return whether a transformer transforms the content, so it has to be read into the heap
+     */
+    boolean transforms(String name) {
+        for (EntryTransformer transformer : transformers) {
+            if (transformer.transforms(name)) {
+                return true;
+            }
+            name = transformer.rename(name);
+        }
+        return false;
+    }
+
+    /**
+     * Passes the content of an entry through the transformers which transform it, on any thread.
+     *
+     * @param name the name the file is added with
+     * @param lastModified the time the entry is written with
+     * @param content the content of the file
+     * @return the content of the entry
+     * @throws IOException if a transformer failed
+     */
+    byte[] transform(String name, long lastModified, byte[] content) throws IOException {
+        byte[] result = content;
+        for (EntryTransformer transformer : transformers) {
+            if (transformer.transforms(name)) {
+                byte[] transformedContent = transformer.transform(name, lastModified, result);
+                if (transformedContent == null) {
+                    throw new IOException(transformer.getClass().getName() + " returned no content for " + name);
+                }
+                result = transformedContent;
+            }
+            name = transformer.rename(name);
+        }
+        if (result != content) {
+            transformed.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of entries whose content was changed so far
+     */
+    int getTransformedCount() {
+        return transformed.get();
+    }
+}
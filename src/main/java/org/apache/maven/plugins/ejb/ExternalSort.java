@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts more strings than should be held in memory: they are sorted in chunks of a fixed size, every full chunk is
+ * written to a temporary file as a sorted run, and the runs are merged while the result is read. So the memory
+ * needed is one chunk plus a buffer per run, whatever the number of strings.
+ *
+ * @since 3.2.2
+ */
+final class ExternalSort implements Closeable {
+    /**
+     * The number of strings sorted in memory before they are written to a run, a few MiB of entry names.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+    private static final int RUN_BUFFER_SIZE = 16 * 1024;
+
+    private final Comparator<String> order;
+
+    private final int chunkSize;
+
+    private final Path directory;
+
+    private final List<String> chunk = new ArrayList<>();
+
+    private final List<Run> runs = new ArrayList<>();
+
+    private final List<Closeable> readers = new ArrayList<>();
+
+    /**
+     * @param order the order of the result
+     * @param chunkSize the number of strings sorted in memory
+     * @param directory the directory of the temporary run files
+     */
+    ExternalSort(Comparator<String> order, int chunkSize, Path directory) {
+        this.order = order;
+        this.chunkSize = chunkSize;
+        this.directory = directory;
+    }
+
+    /**
+     * Adds a string, which may write the current chunk to a run.
+     *
+     * @param value the string to add, at most 65535 bytes in modified UTF-8 like every zip entry name
+     * @throws IOException if the run could not be written
+     */
+    void add(String value) throws IOException {
+        chunk.add(value);
+        if (chunk.size() >= chunkSize) {
+            writeRun();
+        }
+    }
+
+    /**
+     * @return whether any run has been written, so the result is merged from temporary files
+     */
+    boolean isSpilled() {
+        return !runs.isEmpty();
+    }
+
+    /**
+     * Reads the sorted strings. No more strings can be added afterwards.
+     *
+     * @return the cursor over the sorted strings
+     * @throws IOException if the runs could not be read
+     */
+    Cursor sorted() throws IOException {
+        chunk.sort(order);
+        if (runs.isEmpty()) {
+            return new ChunkCursor(chunk);
+        }
+        if (!chunk.isEmpty()) {
+            writeRun();
+        }
+        PriorityQueue<RunCursor> heads =
+                new PriorityQueue<>(runs.size(), (first, second) -> order.compare(first.head, second.head));
+        for (Run run : runs) {
+            RunCursor cursor = new RunCursor(run);
+            readers.add(cursor);
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return () -> {
+            RunCursor smallest = heads.poll();
+            if (smallest == null) {
+                return null;
+            }
+            String next = smallest.head;
+            if (smallest.advance()) {
+                heads.add(smallest);
+            }
+            return next;
+        };
+    }
+
+    /**
+     * Deletes the runs.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable reader : readers) {
+            reader.close();
+        }
+        for (Run run : runs) {
+            Files.deleteIfExists(run.file);
+        }
+    }
+
+    private void writeRun() throws IOException {
+        chunk.sort(order);
+        Path file = Files.createTempFile(directory, "ejb-sort", ".run");
+        runs.add(new Run(file, chunk.size()));
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), RUN_BUFFER_SIZE))) {
+            for (String value : chunk) {
+                out.writeUTF(value);
+            }
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Reads the sorted strings one by one.
+     */
+    interface Cursor {
+        /**
+         * @return the next string, or <code>null</code> at the end
+         * @throws IOException if a run could not be read
+         */
+        String next() throws IOException;
+    }
+
+    private static final class Run {
+        private final Path file;
+
+        private final int size;
+
+        Run(Path file, int size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private static final class ChunkCursor implements Cursor {
+        private final List<String> chunk;
+
+        private int index;
+
+        ChunkCursor(List<String> chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public String next() {
+            return index < chunk.size() ? chunk.get(index++) : null;
+        }
+    }
+
+    private static final class RunCursor implements Closeable {
+        private final DataInputStream in;
+
+        private int remaining;
+
+        private String head;
+
+        RunCursor(Run run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file), RUN_BUFFER_SIZE));
+            this.remaining = run.size;
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            head = in.readUTF();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Moves the references to the Java EE APIs of an EJB jar from the <code>javax</code> to the <code>jakarta</code>
+ * namespace of Jakarta EE 9 and later, while the entries are written to the jar. It rewrites
+ * <ul>
+ * <li>the constant pool of class files, which holds the names and descriptors of the classes, fields and methods
+ * used, the signatures, annotations and string constants;</li>
+ * <li>the class names in deployment descriptors and other XML files, in properties files and in service files;</li>
+ * <li>the names of the service files in <code>META-INF/services</code>.</li>
+ * </ul>
+ * Packages and classes of the Java SE platform in the <code>javax</code> namespace, like
+ * <code>javax.transaction.xa</code> or <code>javax.annotation.processing</code>, keep their names, and so do the
+ * annotations of other libraries in <code>javax.annotation</code>, like the ones of JSR 305. The XML namespaces and
+ * schema versions of the descriptors are not changed.
+ * <p/>
+ * Text files are rewritten byte by byte, which works for the encodings compatible with ASCII, like UTF-8 and
+ * ISO-8859-1. Text in UTF-16, recognized by its byte order mark or by the <code>&lt;?</code> of an XML declaration, is
+ * decoded and written again in the same byte order. Text in other encodings, and UTF-16 which does not decode, is left
+ * as it is.
+ * <p/>
+ * The transformer is stateless, so it can be used by several threads at once. It is the first of the
+ * {@link EntryTransformer}s of the jars when the <code>jakartaTransform</code> parameter is set.
+ *
+ * @since 3.2.2
+ */
+final class JakartaTransformer implements EntryTransformer {
+    /**
+     * The packages moved to the <code>jakarta</code> namespace, including their subpackages.
+     */
+    static final List<String> PACKAGES = Arrays.asList(
+            "javax.activation",
+            "javax.annotation.security",
+            "javax.annotation.sql",
+            "javax.batch",
+            "javax.decorator",
+            "javax.ejb",
+            "javax.el",
+            "javax.enterprise",
+            "javax.faces",
+            "javax.inject",
+            "javax.interceptor",
+            "javax.jms",
+            "javax.json",
+            "javax.jws",
+            "javax.mail",
+            "javax.persistence",
+            "javax.resource",
+            "javax.security.auth.message",
+            "javax.security.enterprise",
+            "javax.security.jacc",
+            "javax.servlet",
+            "javax.transaction",
+            "javax.validation",
+            "javax.websocket",
+            "javax.ws.rs",
+            "javax.xml.bind",
+            "javax.xml.soap",
+            "javax.xml.ws");
+
+    /**
+     * The classes of Jakarta Annotations moved to the <code>jakarta</code> namespace, their package
+     * <code>javax.annotation</code> is shared with Java SE and other libraries.
+     */
+    static final List<String> CLASSES = Arrays.asList(
+            "javax.annotation.Generated",
+            "javax.annotation.ManagedBean",
+            "javax.annotation.PostConstruct",
+            "javax.annotation.PreDestroy",
+            "javax.annotation.Priority",
+            "javax.annotation.Resource",
+            "javax.annotation.Resources");
+
+    /**
+     * The subpackages of {@link #PACKAGES} which belong to Java SE and keep their names.
+     */
+    static final List<String> KEPT_PACKAGES = Collections.singletonList("javax.transaction.xa");
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final List<String> TEXT_SUFFIXES = Arrays.asList(".xml", ".properties", ".tld");
+
+    private static final int MAX_UTF8_LENGTH = 0xFFFF;
+
+    private static final byte[] JAVAX = "javax".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final String PRIMITIVE_TYPES = "BCDFIJSZ";
+
+    private static final int BOM_FIRST = 0xFE;
+
+    private static final int BOM_SECOND = 0xFF;
+
+    /**
+     * The packages and classes to rename and to keep, with the longest first so the most specific one matches.
+     */
+    private final List<Rule> rules = new ArrayList<>();
+
+    JakartaTransformer() {
+        for (String name : PACKAGES) {
+            rules.add(new Rule(name, "jakarta" + name.substring("javax".length())));
+        }
+        for (String name : CLASSES) {
+            rules.add(new Rule(name, "jakarta" + name.substring("javax".length())));
+        }
+        for (String name : KEPT_PACKAGES) {
+            rules.add(new Rule(name, name));
+        }
+        rules.sort(Comparator.comparingInt((Rule rule) -> rule.from.length).reversed());
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return whether the entry is a class, a service file or a text file which may refer to a moved API
+     */
+    @Override
+    public boolean transforms(String name) {
+        if (name.endsWith(CLASS_SUFFIX) || name.startsWith(SERVICES)) {
+            return true;
+        }
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        for (String suffix : TEXT_SUFFIXES) {
+            if (lowerCase.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return the name of the entry in the jar, which differs for service files of moved APIs
+     */
+    @Override
+    public String rename(String name) {
+        if (!name.startsWith(SERVICES) || name.indexOf('/', SERVICES.length()) >= 0) {
+            return name;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] renamed = replace(bytes, 0, bytes.length);
+        return renamed != null ? new String(renamed, StandardCharsets.UTF_8) : name;
+    }
+
+    /**
+     * @return the transformed content, or the given content if nothing refers to a moved API
+     * @throws IOException if the content of a class file is not valid
+     */
+    @Override
+    public byte[] transform(String name, long lastModified, byte[] content) throws IOException {
+        byte[] result;
+        if (name.endsWith(CLASS_SUFFIX)) {
+            result = transformClass(name, content);
+        } else {
+            result = transformText(content);
+        }
+        return result != null ? result : content;
+    }
+
+    /**
+     * Rewrites the UTF-8 constants of a class file, everything else is copied as it is. The constants are in modified
+     * UTF-8, in which the bytes of the ASCII package names never occur within another character.
+     *
+     * @return the transformed class, or <code>null</code> if no constant changed
+     */
+    private byte[] transformClass(String name, byte[] content) throws IOException {
+        ConstantPool pool = ConstantPool.read(name, content);
+        ByteArrayOutputStream out = null;
+        int copied = 0;
+        for (int index = 1; index < pool.count(); index++) {
+            int offset = pool.utf8Offset(index);
+            if (offset < 0) {
+                continue;
+            }
+            int length = ConstantPool.readUnsignedShort(content, offset + 1);
+            int start = offset + 3;
+            byte[] replaced = replace(content, start, length);
+            if (replaced == null) {
+                continue;
+            }
+            if (replaced.length > MAX_UTF8_LENGTH) {
+                throw new IOException("A constant of " + name + " is too long once transformed");
+            }
+            if (out == null) {
+                out = new ByteArrayOutputStream(content.length + content.length / 16);
+            }
+            out.write(content, copied, offset + 1 - copied);
+            out.write(replaced.length >> 8);
+            out.write(replaced.length);
+            out.write(replaced, 0, replaced.length);
+            copied = start + length;
+        }
+        if (out == null) {
+            return null;
+        }
+        out.write(content, copied, content.length - copied);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rewrites a text file, in its own encoding when it is UTF-16.
+     *
+     * @return the transformed text, or <code>null</code> if nothing changed or UTF-16 text does not decode
+     */
+    private byte[] transformText(byte[] content) {
+        Charset charset = utf16Charset(content);
+        if (charset == null) {
+            return replace(content, 0, content.length);
+        }
+        String text;
+        try {
+            // the decoder keeps a byte order mark as a character, so it is written again
+            text = charset.newDecoder().decode(ByteBuffer.wrap(content)).toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] replaced = replace(utf8, 0, utf8.length);
+        return replaced != null ? new String(replaced, StandardCharsets.UTF_8).getBytes(charset) : null;
+    }
+
+    /**
+     * @return UTF-16 in the byte order given by the byte order mark or by the first character, which is a
+     *         <code>&lt;</code> in XML, or <code>null</code> for other text
+     */
+    private static Charset utf16Charset(byte[] text) {
+        if (text.length < 2) {
+            return null;
+        }
+        int first = text[0] & BYTE_MASK;
+        int second = text[1] & BYTE_MASK;
+        if (first == BOM_FIRST && second == BOM_SECOND || first == 0 && second == '<') {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (first == BOM_SECOND && second == BOM_FIRST || first == '<' && second == 0) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the names of the moved packages, with dots or slashes, in a range of ASCII compatible text.
+     *
+     * @return the text with the names replaced, or <code>null</code> if there was none
+     */
+    private byte[] replace(byte[] text, int offset, int length) {
+        ByteArrayOutputStream out = null;
+        int end = offset + length;
+        int copied = offset;
+        int position = indexOfJavax(text, offset, offset, end);
+        while (position >= 0) {
+            Rule rule = match(text, position, end);
+            if (rule == null) {
+                position = indexOfJavax(text, offset, position + 1, end);
+                continue;
+            }
+            if (rule.to != rule.from) {
+                if (out == null) {
+                    out = new ByteArrayOutputStream(length + length / 8);
+                }
+                out.write(text, copied, position - copied);
+                byte separator = text[position + JAVAX.length];
+                for (byte b : rule.to) {
+                    out.write(b == '.' ? separator : b);
+                }
+                copied = position + rule.from.length;
+            }
+            position = indexOfJavax(text, offset, position + rule.from.length, end);
+        }
+        if (out == null) {
+            return null;
+        }
+        out.write(text, copied, end - copied);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the most specific rule for the package name at the position, or <code>null</code>
+     */
+    private Rule match(byte[] text, int position, int end) {
+        if (position + JAVAX.length >= end) {
+            return null;
+        }
+        byte separator = text[position + JAVAX.length];
+        if (separator != '.' && separator != '/') {
+            return null;
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(text, position, end, separator)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param start the start of the text, where a name may begin
+     * @return the position of the next <code>javax</code> which begins a name, or -1
+     */
+    private static int indexOfJavax(byte[] text, int start, int from, int end) {
+        for (int i = from; i <= end - JAVAX.length; i++) {
+            if (text[i] == 'j'
+                    && text[i + 1] == 'a'
+                    && text[i + 2] == 'v'
+                    && text[i + 3] == 'a'
+                    && text[i + 4] == 'x'
+                    && beginsName(text, start, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether a name begins at the position: at the start of the text, after a character which is not part of
+     *         a Java identifier, or after the <code>L</code> of a class type in a descriptor or signature
+     */
+    private static boolean beginsName(byte[] text, int start, int position) {
+        if (position == start || !isIdentifierPart(text[position - 1])) {
+            return true;
+        }
+        if (text[position - 1] != 'L') {
+            return false;
+        }
+        // the L may follow the primitive and array types of the parameters before it
+        int i = position - 2;
+        while (i >= start && PRIMITIVE_TYPES.indexOf(text[i]) >= 0) {
+            i--;
+        }
+        return i < start || !isIdentifierPart(text[i]);
+    }
+
+    private static boolean isIdentifierPart(byte b) {
+        return Character.isJavaIdentifierPart((char) (b & BYTE_MASK));
+    }
+
+    /**
+     * A package name and the name it gets, the same for packages which are kept.
+     */
+    private static final class Rule {
+        private final byte[] from;
+
+        private final byte[] to;
+
+        Rule(String from, String to) {
+            this.from = from.getBytes(StandardCharsets.US_ASCII);
+            this.to = from.equals(to) ? this.from : to.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * @return whether the name is at the position, with the given separator, and not followed by more of a Java
+         *         identifier than the name of a nested class
+         */
+        boolean matches(byte[] text, int position, int end, byte separator) {
+            if (position + from.length > end) {
+                return false;
+            }
+            for (int i = 0; i < from.length; i++) {
+                byte expected = from[i] == '.' ? separator : from[i];
+                if (text[position + i] != expected) {
+                    return false;
+                }
+            }
+            int next = position + from.length;
+            return next == end || text[next] == '$' || !isIdentifierPart(text[next]);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Collects the digests of the entries of a jar while they are written, and builds from them the manifest and the
+ * signature file of a jar signature, as <code>jarsigner</code> writes them. The digests of an entry are computed from
+ * the content which is compressed and written anyway, so signing needs no further pass over the jar: only the
+ * signature block, the signed digest of the signature file, is left to a {@link SignatureBlockSigner}.
+ * <p/>
+ * The manifest lists the digest of every entry, so it can only be written after them. It is written to the end of
+ * the jar along with the signature file, where {@link java.util.jar.JarFile}, the class loaders and
+ * <code>jarsigner</code> find it through the central directory. A {@link java.util.jar.JarInputStream} only looks
+ * for the manifest at the start of the jar and sees neither it nor the signature.
+ *
+ * @since 3.2.2
+ */
+final class JarSignature {
+    /**
+     * The digest algorithms which may be used, the ones the JDK accepts for signed jars.
+     */
+    static final List<String> DIGEST_ALGORITHMS = Arrays.asList("SHA-256", "SHA-384", "SHA-512");
+
+    private static final String META_INF_NAME = "META-INF/";
+
+    /**
+     * The longest line of a manifest, without the line break.
+     */
+    private static final int MAX_LINE_LENGTH = 72;
+
+    private static final byte[] LINE_BREAK = {'\r', '\n'};
+
+    private final String digestAlgorithm;
+
+    private final Map<String, byte[]> entryDigests = new LinkedHashMap<>();
+
+    private final Map<String, byte[]> sectionDigests = new LinkedHashMap<>();
+
+    private byte[] manifest;
+
+    private byte[] mainAttributesDigest;
+
+    /**
+     * @param digestAlgorithm one of {@link #DIGEST_ALGORITHMS}
+     */
+    JarSignature(String digestAlgorithm) {
+        if (!DIGEST_ALGORITHMS.contains(digestAlgorithm)) {
+            throw new IllegalArgumentException(
+                    "The digest algorithm " + digestAlgorithm + " is not one of " + DIGEST_ALGORITHMS);
+        }
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return whether the entry belongs to the signature itself, and is not signed
+     */
+    static boolean isSignatureRelated(String name) {
+        String upperCase = name.toUpperCase(Locale.ROOT);
+        if (!upperCase.startsWith(META_INF_NAME) || upperCase.indexOf('/', META_INF_NAME.length()) >= 0) {
+            return false;
+        }
+        String fileName = upperCase.substring(META_INF_NAME.length());
+        return fileName.equals("MANIFEST.MF")
+                || fileName.startsWith("SIG-")
+                || fileName.endsWith(".SF")
+                || fileName.endsWith(".RSA")
+                || fileName.endsWith(".DSA")
+                || fileName.endsWith(".EC");
+    }
+
+    /**
+     * @param name the name of the entry which is about to be written
+     * @return a digest for the content of the entry, or <code>null</code> if the entry is not signed
+     */
+    MessageDigest newDigest(String name) {
+        if (isSignatureRelated(name)) {
+            return null;
+        }
+        return newDigest();
+    }
+
+    /**
+     * Computes the digest of the content of an entry, on any thread.
+     *
+     * @param content the uncompressed content
+     * @return the digest to pass to {@link #add(String, byte[])}
+     */
+    byte[] digest(byte[] content) {
+        return newDigest().digest(content);
+    }
+
+    /**
+     * Records the digest of an entry written to the jar. Entries which belong to the signature are ignored.
+     *
+     * @param name the name of the entry
+     * @param digest the digest of its uncompressed content
+     */
+    void add(String name, byte[] digest) {
+        if (!isSignatureRelated(name)) {
+            entryDigests.put(name, digest);
+        }
+    }
+
+    /**
+     * @return the number of entries recorded so far
+     */
+    int size() {
+        return entryDigests.size();
+    }
+
+    /**
+     * Builds the manifest of the signed jar: the main attributes of the given manifest, followed by a section for each
+     * entry recorded, in the order they were written, holding the digest of the entry and the attributes the given
+     * manifest has for it. Sections of the given manifest for names which are no entries, like packages, come first,
+     * sorted by name.
+     *
+     * @param base the manifest created by the archiver
+     * @return the content of <code>META-INF/MANIFEST.MF</code>
+     * @throws IOException if the main attributes could not be written
+     */
+    byte[] manifest(Manifest base) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Manifest mainAttributes = new Manifest();
+        mainAttributes.getMainAttributes().putAll(base.getMainAttributes());
+        mainAttributes.write(content);
+        mainAttributesDigest = newDigest().digest(content.toByteArray());
+
+        String digestName = digestAlgorithm + "-Digest";
+        Map<String, Attributes> otherSections = new TreeMap<>(base.getEntries());
+        otherSections.keySet().removeAll(entryDigests.keySet());
+        for (Map.Entry<String, Attributes> section : otherSections.entrySet()) {
+            writeSection(content, section.getKey(), section.getValue(), null, null);
+        }
+        for (Map.Entry<String, byte[]> entry : entryDigests.entrySet()) {
+            writeSection(content, entry.getKey(), base.getEntries().get(entry.getKey()), digestName, entry.getValue());
+        }
+        manifest = content.toByteArray();
+        return manifest;
+    }
+
+    /**
+     * Builds the signature file, from the digests of the manifest built by {@link #manifest(Manifest)} and of each of
+     * its sections. This is the content the signature block signs.
+     *
+     * @param createdBy the value of the <code>Created-By</code> attribute
+     * @return the content of <code>META-INF/&lt;name&gt;.SF</code>
+     */
+    byte[] signatureFile(String createdBy) {
+        if (manifest == null) {
+            throw new IllegalStateException("The manifest has not been built");
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writeLine(content, "Signature-Version: 1.0");
+        writeLine(content, "Created-By: " + createdBy);
+        writeLine(
+                content,
+                digestAlgorithm + "-Digest-Manifest: " + encode(newDigest().digest(manifest)));
+        writeLine(content, digestAlgorithm + "-Digest-Manifest-Main-Attributes: " + encode(mainAttributesDigest));
+        content.write(LINE_BREAK, 0, LINE_BREAK.length);
+
+        String digestName = digestAlgorithm + "-Digest";
+        for (Map.Entry<String, byte[]> section : sectionDigests.entrySet()) {
+            writeLine(content, "Name: " + section.getKey());
+            writeLine(content, digestName + ": " + encode(section.getValue()));
+            content.write(LINE_BREAK, 0, LINE_BREAK.length);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Writes a section of the manifest and records its digest for the signature file.
+     */
+    private void writeSection(
+            ByteArrayOutputStream manifest, String name, Attributes attributes, String digestName, byte[] digest) {
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        writeLine(section, "Name: " + name);
+        if (attributes != null) {
+            for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+                if (!attribute.getKey().toString().equalsIgnoreCase(digestName)) {
+                    writeLine(section, attribute.getKey() + ": " + attribute.getValue());
+                }
+            }
+        }
+        if (digest != null) {
+            writeLine(section, digestName + ": " + encode(digest));
+        }
+        section.write(LINE_BREAK, 0, LINE_BREAK.length);
+
+        byte[] bytes = section.toByteArray();
+        sectionDigests.put(name, newDigest().digest(bytes));
+        manifest.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a line broken into lines of at most 72 bytes, continued by a space, like {@link Manifest#write} does.
+     */
+    private static void writeLine(ByteArrayOutputStream out, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_LINE_LENGTH);
+        out.write(bytes, 0, length);
+        for (int position = length; position < bytes.length; position += length) {
+            out.write(LINE_BREAK, 0, LINE_BREAK.length);
+            out.write(' ');
+            length = Math.min(bytes.length - position, MAX_LINE_LENGTH - 1);
+            out.write(bytes, position, length);
+        }
+        out.write(LINE_BREAK, 0, LINE_BREAK.length);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(digestAlgorithm + " is not available", e);
+        }
+    }
+
+    private static String encode(byte[] digest) {
+        return Base64.getEncoder().encodeToString(digest);
+    }
+}
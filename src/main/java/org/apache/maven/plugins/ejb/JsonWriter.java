@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * A minimal streaming writer for the JSON reports of the plugin, which keeps the plugin free of a JSON library.
+ *
+ * @since 3.2.2
+ */
+final class JsonWriter implements Closeable {
+    private static final String INDENT = "  ";
+
+    private final Writer out;
+
+    /**
+     * Whether the current object or array already has a member, one element per nesting level.
+     */
+    private final Deque<Boolean> hasMembers = new ArrayDeque<>();
+
+    private boolean afterName;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        out.write(": ");
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            out.write("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a decimal with three fraction digits, which is enough for the millisecond times and ratios of the
+     * reports.
+     */
+    JsonWriter value(double value) throws IOException {
+        separate();
+        out.write(Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%.3f", value));
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.write('\n');
+        out.close();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        out.write(bracket);
+        hasMembers.push(Boolean.FALSE);
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        boolean empty = !hasMembers.pop();
+        if (!empty) {
+            newLine();
+        }
+        out.write(bracket);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (hasMembers.isEmpty()) {
+            return;
+        }
+        if (hasMembers.pop()) {
+            out.write(',');
+        }
+        hasMembers.push(Boolean.TRUE);
+        newLine();
+    }
+
+    private void newLine() throws IOException {
+        out.write('\n');
+        for (int i = 0; i < hasMembers.size(); i++) {
+            out.write(INDENT);
+        }
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        out.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
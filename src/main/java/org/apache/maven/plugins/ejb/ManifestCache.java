@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+
+import org.apache.maven.archiver.ManifestConfiguration;
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.archiver.MavenArchiver;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.codehaus.plexus.archiver.jar.ManifestException;
+
+/**
+ * Computes the manifest of the archives of an execution once: the archivers it creates return a copy of the first
+ * manifest built, since all archives of an execution share the project and the <code>archive</code> configuration.
+ * <p/>
+ * The <code>Class-Path</code> generated from the dependencies is also kept in a file across builds, keyed by the
+ * resolved dependencies and the class path settings of the configuration. When the key matches, the manifest is
+ * built without the class path and the kept <code>Class-Path</code> is put back where it was, so the manifest is the
+ * same as the one built from the dependencies. The configuration without the class path is a copy, the one of the
+ * execution is not changed.
+ *
+ * @since 3.2.2
+ */
+final class ManifestCache {
+    /**
+     * The name of the cache in the packaging profile.
+     */
+    static final String NAME = "manifestClassPath";
+
+    private static final String CLASS_PATH = "Class-Path";
+
+    private static final String KEY = "key";
+
+    private static final String VALUE = "classPath";
+
+    private static final String AFTER = "after";
+
+    private final Path file;
+
+    private final PackagingProfile profile;
+
+    private byte[] manifest;
+
+    /**
+     * @param file the file keeping the class path across builds, or <code>null</code> to build it every time
+     * @param profile the profile recording the lookups, or <code>null</code>
+     */
+    ManifestCache(Path file, PackagingProfile profile) {
+        this.file = file;
+        this.profile = profile;
+    }
+
+    /**
+     * @return a new archiver getting its manifest from this cache
+     */
+    MavenArchiver newArchiver() {
+        return new MavenArchiver() {
+            @Override
+            public Manifest getManifest(
+                    MavenSession session, MavenProject project, MavenArchiveConfiguration configuration)
+                    throws ManifestException, DependencyResolutionRequiredException {
+                return ManifestCache.this.getManifest(
+                        configuration, built -> super.getManifest(session, project, built), project);
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the manifest of the execution, which the archiver is free to change
+     */
+    synchronized Manifest getManifest(MavenArchiveConfiguration configuration, Builder builder, MavenProject project)
+            throws ManifestException, DependencyResolutionRequiredException {
+        try {
+            if (manifest == null) {
+                manifest = toBytes(build(configuration, builder, project));
+            }
+            return new Manifest(new ByteArrayInputStream(manifest));
+        } catch (IOException e) {
+            throw new ManifestException("Could not copy the manifest: " + e.getMessage());
+        }
+    }
+
+    private Manifest build(MavenArchiveConfiguration configuration, Builder builder, MavenProject project)
+            throws ManifestException, DependencyResolutionRequiredException, IOException {
+        ManifestConfiguration manifestConfiguration = configuration.getManifest();
+        if (file == null
+                || !manifestConfiguration.isAddClasspath()
+                || configuration.getManifestEntries().containsKey(CLASS_PATH)) {
+            return builder.build(configuration);
+        }
+
+        String key = key(manifestConfiguration, project);
+        Properties kept = load();
+        if (key.equals(kept.getProperty(KEY))) {
+            Manifest withoutClassPath = builder.build(withoutClassPath(configuration));
+            if (putClassPath(withoutClassPath, kept.getProperty(VALUE), kept.getProperty(AFTER))) {
+                addLookup(true);
+                return withoutClassPath;
+            }
+        }
+
+        addLookup(false);
+        Manifest built = builder.build(configuration);
+        Properties classPath = new Properties();
+        classPath.setProperty(KEY, key);
+        String previous = null;
+        for (Object name : built.getMainAttributes().keySet()) {
+            if (CLASS_PATH.equalsIgnoreCase(name.toString())) {
+                classPath.setProperty(VALUE, built.getMainAttributes().getValue(CLASS_PATH));
+                if (previous != null) {
+                    classPath.setProperty(AFTER, previous);
+                }
+                break;
+            }
+            previous = name.toString();
+        }
+        store(classPath);
+        return built;
+    }
+
+    /**
+     * @return a copy of the configuration which does not add the class path
+     */
+    private static MavenArchiveConfiguration withoutClassPath(MavenArchiveConfiguration configuration) {
+        ManifestConfiguration manifest = configuration.getManifest();
+        ManifestConfiguration copiedManifest = new ManifestConfiguration();
+        copiedManifest.setMainClass(manifest.getMainClass());
+        copiedManifest.setPackageName(manifest.getPackageName());
+        copiedManifest.setAddClasspath(false);
+        copiedManifest.setAddDefaultEntries(manifest.isAddDefaultEntries());
+        copiedManifest.setAddBuildEnvironmentEntries(manifest.isAddBuildEnvironmentEntries());
+        copiedManifest.setAddDefaultImplementationEntries(manifest.isAddDefaultImplementationEntries());
+        copiedManifest.setAddDefaultSpecificationEntries(manifest.isAddDefaultSpecificationEntries());
+        copiedManifest.setAddExtensions(manifest.isAddExtensions());
+        copiedManifest.setClasspathPrefix(manifest.getClasspathPrefix());
+        copiedManifest.setClasspathLayoutType(manifest.getClasspathLayoutType());
+        copiedManifest.setCustomClasspathLayout(manifest.getCustomClasspathLayout());
+        copiedManifest.setUseUniqueVersions(manifest.isUseUniqueVersions());
+
+        MavenArchiveConfiguration copy = new MavenArchiveConfiguration();
+        copy.setCompress(configuration.isCompress());
+        copy.setRecompressAddedZips(configuration.isRecompressAddedZips());
+        copy.setIndex(configuration.isIndex());
+        copy.setAddMavenDescriptor(configuration.isAddMavenDescriptor());
+        copy.setManifestFile(configuration.getManifestFile());
+        copy.setManifest(copiedManifest);
+        copy.setManifestEntries(configuration.getManifestEntries());
+        copy.setManifestSections(configuration.getManifestSections());
+        copy.setForced(configuration.isForced());
+        copy.setPomPropertiesFile(configuration.getPomPropertiesFile());
+        return copy;
+    }
+
+    /**
+     * Puts the class path into the main attributes after the given attribute.
+     *
+     * @return whether the attribute to put the class path after was found
+     */
+    private static boolean putClassPath(Manifest manifest, String classPath, String after) {
+        if (classPath == null) {
+            return true;
+        }
+        Attributes attributes = manifest.getMainAttributes();
+        List<Map.Entry<Object, Object>> entries = new ArrayList<>(attributes.entrySet());
+        if (after != null && !attributes.containsKey(new Attributes.Name(after))) {
+            return false;
+        }
+        attributes.clear();
+        if (after == null) {
+            attributes.putValue(CLASS_PATH, classPath);
+        }
+        for (Map.Entry<Object, Object> entry : entries) {
+            attributes.put(entry.getKey(), entry.getValue());
+            if (entry.getKey().toString().equalsIgnoreCase(after)) {
+                attributes.putValue(CLASS_PATH, classPath);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a digest of everything the generated class path depends on, including the resolved version and the file
+     *         of each snapshot
+     */
+    static String key(ManifestConfiguration configuration, MavenProject project) {
+        StringBuilder key = new StringBuilder();
+        key.append(configuration.getClasspathPrefix())
+                .append('\n')
+                .append(configuration.getClasspathLayoutType())
+                .append('\n')
+                .append(configuration.getCustomClasspathLayout())
+                .append('\n')
+                .append(configuration.isUseUniqueVersions())
+                .append('\n');
+        for (Artifact artifact : project.getArtifacts()) {
+            // a re-resolved snapshot changes the version and the file, but neither its base version nor its path
+            File file = artifact.getFile();
+            key.append(artifact.getId())
+                    .append(' ')
+                    .append(artifact.getVersion())
+                    .append(' ')
+                    .append(artifact.getBaseVersion())
+                    .append(' ')
+                    .append(artifact.getScope())
+                    .append(' ')
+                    .append(file)
+                    .append(' ')
+                    .append(file != null ? file.length() : -1)
+                    .append(' ')
+                    .append(file != null ? file.lastModified() : -1)
+                    .append('\n');
+        }
+        try {
+            byte[] digest =
+                    MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void addLookup(boolean hit) {
+        if (profile != null) {
+            profile.addCacheLookup(NAME, hit);
+        }
+    }
+
+    private Properties load() {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            // a missing or broken cache is rebuilt
+            properties.clear();
+        }
+        return properties;
+    }
+
+    private void store(Properties properties) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        // executions sharing the output directory may read the file while it is written
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, "Class-Path of the EJB manifest");
+            }
+            EjbHelper.replaceFile(temporary, file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static byte[] toBytes(Manifest manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Builds the manifest from the project.
+     */
+    interface Builder {
+        /**
+         * @param configuration the configuration to build the manifest with
+         * @return the manifest
+         */
+        Manifest build(MavenArchiveConfiguration configuration)
+                throws ManifestException, DependencyResolutionRequiredException;
+    }
+}
@@ -0,0 +1,910 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.UnixStat;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A {@link JarArchiver} which writes the archive through a {@link ZipChannelWriter} instead of the commons-compress
+ * stream used by plexus. Entries, manifest and settings are still collected by the plexus archiver, so the
+ * {@link org.apache.maven.archiver.MavenArchiver} configures it like any other jar archiver.
+ * <p/>
+ * A {@link StreamedDirectory} is written while it is walked, with the central directory spilled to a temporary file,
+ * so the memory needed does not grow with the number of its files. When the entries are ordered, its names go
+ * through an {@link ExternalSort} instead.
+ * <p/>
+ * With a read-ahead budget, the files added to the archiver are read and deflated by a {@link ReadAhead} while the
+ * entries before them are written.
+ * <p/>
+ * By default the entries are written in the configured order, each directory right before its first entry. With the
+ * plexus layout they are laid out like the plexus archiver does, so with the same reproducible settings both write
+ * the same bytes.
+ *
+ * @since 3.2.2
+ */
+class NioJarArchiver extends JarArchiver {
+    private static final String META_INF_NAME = "META-INF/";
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final String INDEX_NAME = "META-INF/INDEX.LIST";
+
+    private static final int ZIP_SIGNATURE = 0x504b0304;
+
+    /**
+     * Separates the fields of the records of the sorted streamed entries, no entry name contains it.
+     */
+    private static final char SORT_RECORD_SEPARATOR = '\0';
+
+    private boolean index;
+
+    private int alignment = 1;
+
+    private String classifier;
+
+    private PackagingProfile profile;
+
+    private StreamedDirectory streamedDirectory;
+
+    private long readAheadBytes;
+
+    private PackagingExecutor executor = PackagingExecutor.lease(null);
+
+    private DeflateCache deflateCache;
+
+    private String signatureDigestAlgorithm;
+
+    private String signatureName;
+
+    private SignatureBlockSigner signer;
+
+    private EntryTransformerChain transformers;
+
+    private boolean plexusLayout;
+
+    /**
+     * The signature of the archive being written, collecting the digests of its entries.
+     */
+    private JarSignature signature;
+
+    /**
+     * The deflater of the files looked up in the deflate cache, created on the first miss.
+     */
+    private Deflater deflater;
+
+    private final List<File> indexJars = new ArrayList<>();
+
+    /**
+     * The directories holding files, collected while the entries are written, for {@code META-INF/INDEX.LIST}.
+     */
+    private final SortedSet<String> indexDirectories = new TreeSet<>();
+
+    /**
+     * The files in the root of the archive, for {@code META-INF/INDEX.LIST}.
+     */
+    private final SortedSet<String> indexRootFiles = new TreeSet<>();
+
+    /**
+     * @param alignment the boundary on which the data of stored entries starts, see
+     *            {@link ZipChannelWriter#setAlignment(int)}
+     */
+    void setAlignment(int alignment) {
+        this.alignment = alignment;
+    }
+
+    /**
+     * @param classifier the classifier of the archive, recorded with the scan event
+     */
+    void setClassifier(String classifier) {
+        this.classifier = classifier;
+    }
+
+    /**
+     * @param profile the profile which gets the scan and the deflate times, or <code>null</code>
+     */
+    void setProfile(PackagingProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * @param directory the directory which is written while it is walked, or <code>null</code>
+     */
+    void setStreamedDirectory(StreamedDirectory directory) {
+        this.streamedDirectory = directory;
+    }
+
+    /**
+     * @param bytes the number of bytes of file content which may be read ahead of the writer, <code>0</code> to read
+     *            each file when it is written
+     */
+    void setReadAheadBytes(long bytes) {
+        this.readAheadBytes = bytes;
+    }
+
+    /**
+     * @param executor the lease of the pool walking the streamed directory and deflating the files read ahead, which
+     *            acquires the pool only if this archiver runs work on it
+     */
+    void setExecutor(PackagingExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param cache the cache of deflated file content, or <code>null</code> to deflate every file
+     */
+    void setDeflateCache(DeflateCache cache) {
+        this.deflateCache = cache;
+    }
+
+    /**
+     * Computes the digests of a jar signature while the entries are written, and writes the manifest with the digests
+     * of the entries and the signature file after them, see {@link JarSignature}.
+     *
+     * @param digestAlgorithm one of {@link JarSignature#DIGEST_ALGORITHMS}, or <code>null</code> to write no digests
+     * @param name the name of the signature file in <code>META-INF</code>, without extension
+     * @param signer the signer of the signature file, or <code>null</code> to leave the jar without signature block
+     */
+    void setSignature(String digestAlgorithm, String name, SignatureBlockSigner signer) {
+        this.signatureDigestAlgorithm = digestAlgorithm;
+        this.signatureName = name;
+        this.signer = signer;
+    }
+
+    /**
+     * @param transformers the transformers of the entries, in the order they are applied
+     */
+    void setTransformers(List<EntryTransformer> transformers) {
+        this.transformers = transformers.isEmpty() ? null : new EntryTransformerChain(transformers);
+    }
+
+    /**
+     * Lays the entries out like the plexus archiver: the <code>META-INF/</code> directory and the manifest, then all
+     * directories, then the files in the order they were added, which the configured order only sorts within each
+     * added directory. A streamed directory is not supported.
+     *
+     * @param plexusLayout whether the entries are laid out like the plexus archiver does
+     */
+    void setPlexusLayout(boolean plexusLayout) {
+        this.plexusLayout = plexusLayout;
+    }
+
+    @Override
+    public void setIndex(boolean flag) {
+        super.setIndex(flag);
+        index = flag;
+    }
+
+    @Override
+    public void addConfiguredIndexJars(File indexJar) {
+        super.addConfiguredIndexJars(indexJar);
+        indexJars.add(indexJar);
+    }
+
+    @Override
+    protected void execute() throws ArchiverException, IOException {
+        if (!checkForced()) {
+            return;
+        }
+
+        Path destination = getDestFile().toPath();
+        if (destination.getParent() != null) {
+            Files.createDirectories(destination.getParent());
+        }
+
+        boolean success = false;
+        Path spill = streamedDirectory != null ? createTempFile(destination, ".cd") : null;
+        try (ZipChannelWriter writer = new ZipChannelWriter(FileChannel.open(
+                        destination,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE));
+                FileChannel spillChannel = spill != null
+                        ? FileChannel.open(spill, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : null) {
+            writer.setAlignment(alignment);
+            signature = signatureDigestAlgorithm != null ? new JarSignature(signatureDigestAlgorithm) : null;
+            writer.setSignature(signature);
+            if (spillChannel != null) {
+                writer.setCentralDirectorySpill(spillChannel);
+            }
+            if (profile != null) {
+                String archiveName = destination.getFileName().toString();
+                writer.setDeflateListener((name, size, compressedSize, nanos) ->
+                        profile.addDeflate(archiveName, name, size, compressedSize, nanos));
+            }
+            Set<String> written = new HashSet<>();
+            Manifest manifest = writeManifest(writer, written);
+            if (streamedDirectory == null) {
+                writeEntries(writer, orderedEntries(), written);
+            } else if (getFilenameComparator() == null) {
+                writeStreamedEntries(writer, written);
+            } else {
+                writeSortedStreamedEntries(writer, written, destination.getParent());
+            }
+            if (index) {
+                writeIndexList(writer, manifest);
+            }
+            if (signature != null) {
+                writeSignature(writer, manifest);
+            }
+            writer.finish();
+            success = true;
+            if (transformers != null) {
+                getLogger()
+                        .info("Transformed " + transformers.getTransformedCount() + " entries of "
+                                + destination.getFileName());
+            }
+        } finally {
+            signature = null;
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+            if (spill != null) {
+                Files.deleteIfExists(spill);
+            }
+            if (!success) {
+                Files.deleteIfExists(destination);
+            }
+        }
+    }
+
+    /**
+     * The incomplete archive has already been deleted by {@link #execute()}, there is no plexus zip file to revert.
+     */
+    @Override
+    protected boolean revert(StringBuffer messageBuffer) {
+        return true;
+    }
+
+    private static Path createTempFile(Path destination, String suffix) throws IOException {
+        Path directory = destination.toAbsolutePath().getParent();
+        return Files.createTempFile(directory, destination.getFileName().toString(), suffix);
+    }
+
+    /**
+     * Writes the manifest, unless the jar is signed: its manifest lists the digests of the entries, so it is written
+     * by {@link #writeSignature(ZipChannelWriter, Manifest)} after them.
+     */
+    private Manifest writeManifest(ZipChannelWriter writer, Set<String> written) throws ArchiverException, IOException {
+        Manifest manifest = createManifest();
+
+        long time = entryTime(System.currentTimeMillis());
+        // plexus always writes the directory, it marks the file as a jar
+        if (!isFilesonly() || plexusLayout) {
+            writer.putDirectory(META_INF_NAME, time, UnixStat.DIR_FLAG | UnixStat.DEFAULT_DIR_PERM);
+            written.add(META_INF_NAME);
+        }
+        written.add(MANIFEST_NAME);
+        if (signature != null) {
+            return manifest;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        manifest.write(content);
+        writer.putStream(
+                MANIFEST_NAME,
+                new ByteArrayInputStream(content.toByteArray()),
+                isCompress(),
+                time,
+                UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest with the digests of the entries written before, the signature file and, with a signer, the
+     * signature block.
+     */
+    private void writeSignature(ZipChannelWriter writer, Manifest manifest) throws IOException {
+        long time = entryTime(System.currentTimeMillis());
+        int mode = UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM;
+        String signatureFileName = META_INF_NAME + signatureName + ".SF";
+        getLogger()
+                .debug("Writing the digests of " + signature.size() + " entries to " + MANIFEST_NAME + " and "
+                        + signatureFileName);
+
+        byte[] signedManifest = signature.manifest(manifest);
+        writer.putStream(MANIFEST_NAME, new ByteArrayInputStream(signedManifest), isCompress(), time, mode);
+
+        String createdBy = manifest.getMainAttributes().getValue("Created-By");
+        byte[] signatureFile = signature.signatureFile(createdBy != null ? createdBy : "Apache Maven");
+        writer.putStream(signatureFileName, new ByteArrayInputStream(signatureFile), isCompress(), time, mode);
+        if (signer != null) {
+            byte[] block = signer.sign(signatureFile);
+            writer.putStream(
+                    META_INF_NAME + signatureName + "." + signer.getBlockExtension(),
+                    new ByteArrayInputStream(block),
+                    isCompress(),
+                    time,
+                    mode);
+        }
+    }
+
+    private void writeEntries(ZipChannelWriter writer, List<ArchiveEntry> entries, Set<String> written)
+            throws ArchiverException, IOException {
+        if (plexusLayout) {
+            writeDirectories(writer, entries, written);
+        }
+        if (readAheadBytes <= 0) {
+            for (ArchiveEntry entry : entries) {
+                writeEntry(writer, entry, written, null);
+            }
+            return;
+        }
+        try (ReadAhead readAhead =
+                new ReadAhead(readAheadBytes, executor.getPool(), deflateCache, signature, transformers)) {
+            int next = 0;
+            for (ArchiveEntry entry : entries) {
+                // keep the budget filled with the files which follow
+                while (next < entries.size()) {
+                    ArchiveEntry following = entries.get(next);
+                    long size = following.getResource().getSize();
+                    if (!canReadAhead(following, size)) {
+                        next++;
+                    } else if (readAhead.canSchedule(size)) {
+                        readAhead.schedule(
+                                following,
+                                following.getName().replace('\\', '/'),
+                                entryTime(following.getResource().getLastModified()),
+                                following.getFile().toPath(),
+                                size,
+                                isCompress(),
+                                isRecompressAddedZips());
+                        next++;
+                    } else {
+                        break;
+                    }
+                }
+                writeEntry(writer, entry, written, readAhead);
+                readAhead.discard(entry);
+            }
+        }
+    }
+
+    /**
+     * @return whether the entry is a file which is written from memory anyway, not transferred from its file
+     */
+    private boolean canReadAhead(ArchiveEntry entry, long size) {
+        return entry.getType() == ArchiveEntry.FILE
+                && entry.getFile() != null
+                && size >= 0
+                && size <= readAheadBytes
+                && (isCompress() || size <= ZipChannelWriter.TRANSFER_THRESHOLD);
+    }
+
+    /**
+     * Writes the directories of the entries ahead of the files, like the plexus archiver does: the added directories
+     * and the parents of the added files, in the order they are met.
+     */
+    private void writeDirectories(ZipChannelWriter writer, List<ArchiveEntry> entries, Set<String> written)
+            throws IOException {
+        for (ArchiveEntry entry : entries) {
+            String name = entry.getName().replace('\\', '/');
+            if (entry.getType() == ArchiveEntry.DIRECTORY) {
+                writeDirectory(writer, entry, name, written);
+            } else if (!isFilesonly()) {
+                writeParentDirectories(writer, rename(name), entry.getResource().getLastModified(), written);
+            }
+        }
+    }
+
+    private void writeDirectory(ZipChannelWriter writer, ArchiveEntry entry, String name, Set<String> written)
+            throws IOException {
+        String directory = name.endsWith("/") ? name : name + "/";
+        if (!isFilesonly() && directory.length() > 1 && written.add(directory)) {
+            writer.putDirectory(
+                    directory,
+                    entryTime(entry.getResource().getLastModified()),
+                    withType(entry.getMode(), UnixStat.DIR_FLAG));
+        }
+    }
+
+    private void writeEntry(ZipChannelWriter writer, ArchiveEntry entry, Set<String> written, ReadAhead readAhead)
+            throws ArchiverException, IOException {
+        String name = entry.getName().replace('\\', '/');
+
+        if (entry.getType() == ArchiveEntry.DIRECTORY) {
+            writeDirectory(writer, entry, name, written);
+            return;
+        }
+
+        String added = name;
+        name = rename(added);
+        if (isGenerated(name)) {
+            return;
+        }
+        if (!written.add(name)) {
+            getLogger().debug(name + " already added, skipping");
+            return;
+        }
+        if (!isFilesonly()) {
+            writeParentDirectories(writer, name, entry.getResource().getLastModified(), written);
+        }
+        ZipChannelWriter.PreparedContent content = readAhead != null ? readAhead.take(entry) : null;
+        if (content != null) {
+            writer.putPrepared(
+                    name,
+                    content,
+                    entryTime(entry.getResource().getLastModified()),
+                    withType(entry.getMode(), UnixStat.FILE_FLAG));
+        } else {
+            writeFile(writer, entry, added, name);
+        }
+        addToIndex(name);
+    }
+
+    /**
+     * @return whether the entry is created by the archiver itself, so the selected file is skipped
+     */
+    private boolean isGenerated(String name) {
+        if (MANIFEST_NAME.equalsIgnoreCase(name)) {
+            getLogger().debug("Skipping " + name + ", the manifest is created by the archiver");
+            return true;
+        }
+        if (signature != null && JarSignature.isSignatureRelated(name)) {
+            getLogger()
+                    .warn("Warning: skipping " + name + ", the signature files are created by the " + getArchiveType()
+                            + " archiver.");
+            return true;
+        }
+        if (index && INDEX_NAME.equalsIgnoreCase(name)) {
+            getLogger()
+                    .warn("Warning: selected " + getArchiveType() + " files include a " + INDEX_NAME
+                            + " which will be replaced by a newly generated one.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the resources added to the archiver, then the streamed directory while it is walked. Only the names of
+     * directories and of the added resources are kept, a streamed file which has the name of a resource is skipped.
+     */
+    private void writeStreamedEntries(ZipChannelWriter writer, Set<String> written)
+            throws ArchiverException, IOException {
+        for (ArchiveEntry entry : orderedEntries()) {
+            writeEntry(writer, entry, written, null);
+        }
+        streamedDirectory.walk(new StreamedDirectory.Visitor() {
+            @Override
+            public void directory(String name, BasicFileAttributes attributes) throws IOException {
+                writeStreamedDirectory(
+                        writer,
+                        name,
+                        attributes.lastModifiedTime().toMillis(),
+                        StreamedDirectory.permissions(streamedDirectory.resolve(name), attributes),
+                        written);
+            }
+
+            @Override
+            public void file(String name, Path file, BasicFileAttributes attributes) throws IOException {
+                writeStreamedFile(
+                        writer,
+                        name,
+                        file,
+                        attributes.lastModifiedTime().toMillis(),
+                        StreamedDirectory.permissions(file, attributes),
+                        written);
+            }
+        });
+    }
+
+    /**
+     * Sorts the names of the streamed directory with an external merge sort and merges them with the resources added
+     * to the archiver, which are few and sorted in memory. Like plexus, directories are ordered by their name without
+     * the trailing slash. The time and permissions read by the walk are sorted along with each name, in a
+     * {@link #sortRecord(String, long, int) record}, so the files are not read again before they are opened.
+     */
+    private void writeSortedStreamedEntries(ZipChannelWriter writer, Set<String> written, Path temporaryDirectory)
+            throws ArchiverException, IOException {
+        Comparator<String> order =
+                Comparator.comparing(record -> withoutTrailingSlash(sortRecordName(record)), getFilenameComparator());
+        List<ArchiveEntry> entries = orderedEntries();
+        try (ExternalSort sort =
+                new ExternalSort(order, ExternalSort.DEFAULT_CHUNK_SIZE, temporaryDirectory.toAbsolutePath())) {
+            PackagingPhase scan = PackagingPhase.begin(PackagingPhase.Kind.SCAN, classifier, profile);
+            long[] counts = new long[2];
+            // the names are sorted anyway, so the subdirectories are listed in parallel
+            streamedDirectory.walkParallel(
+                    new StreamedDirectory.Visitor() {
+                        @Override
+                        public void directory(String name, BasicFileAttributes attributes) throws IOException {
+                            if (writesDirectories()) {
+                                sort.add(sortRecord(
+                                        name,
+                                        attributes.lastModifiedTime().toMillis(),
+                                        StreamedDirectory.permissions(streamedDirectory.resolve(name), attributes)));
+                            }
+                        }
+
+                        @Override
+                        public void file(String name, Path file, BasicFileAttributes attributes) throws IOException {
+                            sort.add(sortRecord(
+                                    name,
+                                    attributes.lastModifiedTime().toMillis(),
+                                    StreamedDirectory.permissions(file, attributes)));
+                            counts[0]++;
+                            counts[1] += attributes.size();
+                        }
+                    },
+                    executor.getPool());
+            scan.end(getDestFile().getName(), counts[0], counts[1], 0);
+            if (sort.isSpilled()) {
+                getLogger()
+                        .debug("Merging the sorted runs of the entry names of "
+                                + getDestFile().getName());
+            }
+
+            ExternalSort.Cursor cursor = sort.sorted();
+            int next = 0;
+            String record = cursor.next();
+            while (next < entries.size() || record != null) {
+                if (record == null
+                        || next < entries.size()
+                                && order.compare(entries.get(next).getName(), record) <= 0) {
+                    writeEntry(writer, entries.get(next++), written, null);
+                } else {
+                    String name = sortRecordName(record);
+                    int timeEnd = record.indexOf(SORT_RECORD_SEPARATOR, name.length() + 1);
+                    long lastModified = Long.parseLong(record.substring(name.length() + 1, timeEnd));
+                    int permissions = Integer.parseInt(record.substring(timeEnd + 1));
+                    if (name.endsWith("/")) {
+                        writeStreamedDirectory(writer, name, lastModified, permissions, written);
+                    } else {
+                        writeStreamedFile(
+                                writer, name, streamedDirectory.resolve(name), lastModified, permissions, written);
+                    }
+                    record = cursor.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name, the time and the permissions of a streamed entry, separated by a character which no name
+     *         contains, so the records sort like their names
+     */
+    private static String sortRecord(String name, long lastModified, int permissions) {
+        return name + SORT_RECORD_SEPARATOR + lastModified + SORT_RECORD_SEPARATOR + permissions;
+    }
+
+    /**
+     * @param record a {@link #sortRecord(String, long, int) record}, or the name of an added resource
+     * @return the entry name
+     */
+    private static String sortRecordName(String record) {
+        int end = record.indexOf(SORT_RECORD_SEPARATOR);
+        return end != -1 ? record.substring(0, end) : record;
+    }
+
+    private static String withoutTrailingSlash(String name) {
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    private boolean writesDirectories() {
+        return !isFilesonly() && getIncludeEmptyDirs();
+    }
+
+    private void writeStreamedDirectory(
+            ZipChannelWriter writer, String name, long lastModified, int permissions, Set<String> written)
+            throws IOException {
+        if (writesDirectories() && written.add(name)) {
+            writer.putDirectory(
+                    name,
+                    entryTime(lastModified),
+                    UnixStat.DIR_FLAG
+                            | streamedMode(
+                                    permissions,
+                                    getOverrideDirectoryMode(),
+                                    getDefaultDirectoryMode(),
+                                    UnixStat.DEFAULT_DIR_PERM));
+        }
+    }
+
+    private void writeStreamedFile(
+            ZipChannelWriter writer,
+            String streamedName,
+            Path file,
+            long lastModified,
+            int permissions,
+            Set<String> written)
+            throws IOException {
+        String name = rename(streamedName);
+        if (isGenerated(name)) {
+            return;
+        }
+        if (written.contains(name)) {
+            getLogger().debug(name + " already added, skipping");
+            return;
+        }
+        if (!isFilesonly()) {
+            writeParentDirectories(writer, name, lastModified, written);
+        }
+        int mode = UnixStat.FILE_FLAG
+                | streamedMode(permissions, getOverrideFileMode(), getDefaultFileMode(), UnixStat.DEFAULT_FILE_PERM);
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            putFile(writer, streamedName, name, source, entryTime(lastModified), mode);
+        }
+        addToIndex(name);
+    }
+
+    /**
+     * @param permissions the permissions of the file, <code>-1</code> if the file system has none
+     * @return the permissions of a streamed file or directory, chosen like plexus does for added resources: the
+     *         forced mode without the umask, else the permissions of the file, else the default mode
+     */
+    private int streamedMode(int permissions, int overrideMode, int defaultMode, int fallbackMode) {
+        if (overrideMode != -1) {
+            return (getUmask() > 0 ? overrideMode & ~getUmask() : overrideMode) & UnixStat.PERM_MASK;
+        }
+        if (permissions != -1) {
+            return permissions & UnixStat.PERM_MASK;
+        }
+        return (defaultMode != -1 ? defaultMode : fallbackMode) & UnixStat.PERM_MASK;
+    }
+
+    private void addToIndex(String name) {
+        int separator = name.lastIndexOf('/');
+        if (separator < 0) {
+            indexRootFiles.add(name);
+        } else if (!name.startsWith(META_INF_NAME)) {
+            indexDirectories.add(name.substring(0, separator + 1));
+        }
+    }
+
+    /**
+     * Writes {@code META-INF/INDEX.LIST} from the entries written before, followed by the index of the jars in the
+     * {@code Class-Path}, in the same format as {@link JarArchiver}.
+     */
+    private void writeIndexList(ZipChannelWriter writer, Manifest manifest) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (PrintWriter out = new UnixPrintWriter(new OutputStreamWriter(content, StandardCharsets.UTF_8))) {
+            out.println("JarIndex-Version: 1.0");
+            out.println();
+            out.println(getDestFile().getName());
+            writeIndexLikeList(new ArrayList<>(indexDirectories), new ArrayList<>(indexRootFiles), out);
+            out.println();
+
+            String classPath = manifest.getMainAttributes().getValue("Class-Path");
+            if (classPath != null && !indexJars.isEmpty()) {
+                String[] classPathElements = classPath.trim().split("\\s+");
+                for (File indexJar : indexJars) {
+                    String jarName = findJarName(indexJar.getAbsolutePath(), classPathElements);
+                    if (jarName != null && indexJar.isFile()) {
+                        writeIndexedJar(out, jarName, indexJar);
+                    }
+                }
+            }
+        }
+
+        writer.putStream(
+                INDEX_NAME,
+                new ByteArrayInputStream(content.toByteArray()),
+                isCompress(),
+                entryTime(System.currentTimeMillis()),
+                UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+    }
+
+    private void writeIndexedJar(PrintWriter out, String jarName, File indexJar) throws IOException {
+        SortedSet<String> directories = new TreeSet<>();
+        SortedSet<String> rootFiles = new TreeSet<>();
+        try (ZipFile zipFile = new ZipFile(indexJar)) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                String name = entry.getName();
+                if (name.startsWith(META_INF_NAME) || name.equals("META-INF")) {
+                    continue;
+                }
+                int separator = name.lastIndexOf('/');
+                if (entry.isDirectory()) {
+                    directories.add(name);
+                } else if (separator < 0) {
+                    rootFiles.add(name);
+                } else {
+                    directories.add(name.substring(0, separator + 1));
+                }
+            }
+        }
+        if (!directories.isEmpty() || !rootFiles.isEmpty()) {
+            out.println(jarName);
+            writeIndexLikeList(new ArrayList<>(directories), new ArrayList<>(rootFiles), out);
+            out.println();
+        }
+    }
+
+    /**
+     * Plexus only orders the entries within each added resource collection. When an order is configured, it is
+     * applied across all entries here, so for example a separately added deployment descriptor can lead the archive,
+     * unless the entries are laid out like plexus does.
+     */
+    private List<ArchiveEntry> orderedEntries() throws ArchiverException {
+        PackagingPhase scan = PackagingPhase.begin(PackagingPhase.Kind.SCAN, classifier, profile);
+        List<ArchiveEntry> entries = new ArrayList<>();
+        ResourceIterator resources = getResources();
+        while (resources.hasNext()) {
+            entries.add(resources.next());
+        }
+        if (scan.isRecording()) {
+            long bytes = 0;
+            for (ArchiveEntry entry : entries) {
+                bytes += Math.max(0, entry.getResource().getSize());
+            }
+            scan.end(getDestFile().getName(), entries.size(), bytes, 0);
+        }
+
+        Comparator<String> order = getFilenameComparator();
+        if (order != null && !plexusLayout) {
+            entries.sort((first, second) -> order.compare(first.getName(), second.getName()));
+        }
+        return entries;
+    }
+
+    /**
+     * @param added the name the entry was added with
+     * @param name the name of the entry in the archive
+     */
+    private void writeFile(ZipChannelWriter writer, ArchiveEntry entry, String added, String name) throws IOException {
+        long time = entryTime(entry.getResource().getLastModified());
+        int mode = withType(entry.getMode(), UnixStat.FILE_FLAG);
+        File file = entry.getFile();
+
+        if (file != null && file.isFile()) {
+            try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                putFile(writer, added, name, source, time, mode);
+            }
+        } else if (transforms(added)) {
+            byte[] content;
+            try (InputStream in = entry.getInputStream()) {
+                content = transformers.transform(added, time, IOUtil.toByteArray(in));
+            }
+            writer.putStream(name, new ByteArrayInputStream(content), isCompress(), time, mode);
+        } else {
+            try (InputStream in = entry.getInputStream()) {
+                writer.putStream(name, in, isCompress(), time, mode);
+            }
+        }
+    }
+
+    private boolean transforms(String added) {
+        return transformers != null && transformers.transforms(added);
+    }
+
+    private String rename(String added) {
+        return transformers != null ? transformers.rename(added) : added;
+    }
+
+    /**
+     * Writes a file, deflated unless it is an archive which is not recompressed. The deflated content of the file is
+     * taken from the deflate cache, if there is one and the file is not too large. A file which is transformed is read
+     * into the heap first.
+     *
+     * @param added the name the file was added with
+     * @param name the name of the entry in the archive
+     */
+    private void putFile(ZipChannelWriter writer, String added, String name, FileChannel source, long time, int mode)
+            throws IOException {
+        boolean compress = isCompress() && (isRecompressAddedZips() || !isZip(source));
+        boolean transform = transforms(added);
+        boolean cached = compress && deflateCache != null && source.size() <= DeflateCache.MAX_ENTRY_SIZE;
+        if (!transform && !cached) {
+            writer.putFile(name, source, compress, time, mode);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) source.size());
+        while (buffer.hasRemaining() && source.read(buffer, buffer.position()) >= 0) {
+            // keep reading until the file is in memory
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected end of file while reading " + name);
+        }
+        byte[] content = transform ? transformers.transform(added, time, buffer.array()) : buffer.array();
+        if (!cached || content.length > DeflateCache.MAX_ENTRY_SIZE) {
+            writer.putStream(name, new ByteArrayInputStream(content), compress, time, mode);
+            return;
+        }
+        if (deflater == null) {
+            deflater = ZipChannelWriter.newDeflater();
+        }
+        ZipChannelWriter.PreparedContent prepared = deflateCache.deflate(content, deflater);
+        if (signature != null) {
+            prepared = prepared.withDigest(signature.digest(content));
+        }
+        writer.putPrepared(name, prepared, time, mode);
+    }
+
+    private void writeParentDirectories(ZipChannelWriter writer, String name, long time, Set<String> written)
+            throws IOException {
+        int separator = name.indexOf('/');
+        while (separator > 0) {
+            String directory = name.substring(0, separator + 1);
+            if (written.add(directory)) {
+                writer.putDirectory(
+                        directory, entryTime(time), UnixStat.DIR_FLAG | (getDirectoryMode() & UnixStat.PERM_MASK));
+            }
+            separator = name.indexOf('/', separator + 1);
+        }
+    }
+
+    /**
+     * @return the reproducible timestamp if one is configured, otherwise the given time
+     */
+    private long entryTime(long time) {
+        return getLastModifiedTime() != null ? getLastModifiedTime().toMillis() : time;
+    }
+
+    private static int withType(int mode, int typeFlag) {
+        return (mode & ~UnixStat.PERM_MASK) == 0 ? typeFlag | mode : mode;
+    }
+
+    /**
+     * A {@link PrintWriter} using unix line endings, so the generated files do not depend on the platform.
+     */
+    private static final class UnixPrintWriter extends PrintWriter {
+        UnixPrintWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void println() {
+            write('\n');
+        }
+    }
+
+    /**
+     * Checks for the local file header signature, like plexus does to decide whether an added archive is recompressed.
+     */
+    private static boolean isZip(FileChannel source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (header.hasRemaining() && source.read(header, header.position()) > 0) {
+            // keep reading until the signature is complete or the file ends
+        }
+        return !header.hasRemaining() && header.getInt(0) == ZIP_SIGNATURE;
+    }
+}
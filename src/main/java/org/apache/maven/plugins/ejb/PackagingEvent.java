@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of the EJB packaging phases. This class is only loaded through
+ * {@link PackagingPhase} when the JFR API is available, so the plugin still runs on JDKs without it.
+ *
+ * @since 3.2.2
+ */
+@Category({"Maven", "EJB Plugin"})
+@StackTrace(false)
+abstract class PackagingEvent extends Event {
+    @Label("Classifier")
+    String classifier;
+
+    @Label("Archive")
+    @Description("The archive or file the phase worked on")
+    String archive;
+
+    @Label("File Count")
+    long fileCount;
+
+    @Label("Bytes In")
+    @Description("The bytes read, uncompressed")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @Description("The bytes written")
+    @DataAmount
+    long bytesOut;
+
+    static PackagingEvent begin(PackagingPhase.Kind kind, String classifier) {
+        PackagingEvent event = create(kind);
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.classifier = classifier;
+        event.begin();
+        return event;
+    }
+
+    private static PackagingEvent create(PackagingPhase.Kind kind) {
+        switch (kind) {
+            case DESCRIPTOR_VALIDATION:
+                return new DescriptorValidation();
+            case FILTERING:
+                return new Filtering();
+            case SCAN:
+                return new Scan();
+            case SHRINK:
+                return new Shrink();
+            case ARCHIVE:
+                return new Archive();
+            case ATTACH:
+                return new Attach();
+            default:
+                throw new IllegalArgumentException("Unknown packaging phase " + kind);
+        }
+    }
+
+    @Name("org.apache.maven.plugins.ejb.DescriptorValidation")
+    @Label("EJB Descriptor Validation")
+    @Description("Checks the deployment descriptor against the EJB version")
+    static final class DescriptorValidation extends PackagingEvent {}
+
+    @Name("org.apache.maven.plugins.ejb.Filtering")
+    @Label("EJB Descriptor Filtering")
+    @Description("Filters the deployment descriptor")
+    static final class Filtering extends PackagingEvent {}
+
+    @Name("org.apache.maven.plugins.ejb.Scan")
+    @Label("EJB Directory Scan")
+    @Description("Collects the files of the archive from the source directory")
+    static final class Scan extends PackagingEvent {}
+
+    @Name("org.apache.maven.plugins.ejb.Shrink")
+    @Label("EJB Shrink")
+    @Description("Finds the classes of the EJB jar which no entry point reaches")
+    static final class Shrink extends PackagingEvent {}
+
+    @Name("org.apache.maven.plugins.ejb.Archive")
+    @Label("EJB Archive")
+    @Description("Compresses and writes an EJB or EJB client archive")
+    static final class Archive extends PackagingEvent {}
+
+    @Name("org.apache.maven.plugins.ejb.Attach")
+    @Label("EJB Attach")
+    @Description("Attaches an archive to the project")
+    static final class Attach extends PackagingEvent {}
+}
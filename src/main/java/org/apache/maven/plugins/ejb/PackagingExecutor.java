@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * The work-stealing pool which runs the parallel work of the packaging: walking directories, deflating entries read
+ * ahead and building variants. Like the {@link ReactorProfile} it lives in the data of the repository session, so the
+ * EJB modules of a parallel build share one pool instead of starting one each and oversubscribing the processors.
+ * <p/>
+ * A parallel build gets as many threads as modules are built at the same time (<code>-T</code>), which is the
+ * number of processors the build was given. A sequential build gets one thread per processor, as its single module
+ * competes with no other.
+ * <p/>
+ * Every execution takes a lease and closes it when it is done. The lease acquires the pool the first time it is
+ * used, so an execution with nothing to run in parallel neither creates a pool nor keeps one alive. The last lease
+ * to close shuts the pool down and removes it from the session, so no threads outlive the build in a JVM which runs
+ * several builds, like the Maven daemon. An execution starting later gets a new pool.
+ *
+ * @since 3.2.2
+ */
+final class PackagingExecutor implements AutoCloseable {
+    private static final String KEY = PackagingExecutor.class.getName();
+
+    private final MavenSession session;
+
+    private SessionData data;
+
+    private SharedPool shared;
+
+    private ForkJoinPool pool;
+
+    private boolean closed;
+
+    private PackagingExecutor(MavenSession session) {
+        this.session = session;
+    }
+
+    /**
+     * @param session the Maven session, may be <code>null</code>
+     * @return a lease of the pool of the session, or of the common pool if the session can not hold one, which
+     *         acquires the pool when it is first used
+     */
+    static PackagingExecutor lease(MavenSession session) {
+        return new PackagingExecutor(session);
+    }
+
+    /**
+     * @return the pool, acquired by the first call
+     * @throws IllegalStateException if the lease is closed
+     */
+    synchronized ForkJoinPool getPool() {
+        if (closed) {
+            throw new IllegalStateException("The lease of the packaging pool is closed");
+        }
+        if (pool == null) {
+            pool = acquire();
+        }
+        return pool;
+    }
+
+    private ForkJoinPool acquire() {
+        if (session == null || session.getRepositorySession() == null) {
+            return ForkJoinPool.commonPool();
+        }
+        SessionData sessionData = session.getRepositorySession().getData();
+        while (true) {
+            Object current = sessionData.get(KEY);
+            if (current == null) {
+                SharedPool created = new SharedPool(new ForkJoinPool(parallelism(session)));
+                if (!sessionData.set(KEY, null, created)) {
+                    created.pool.shutdown();
+                }
+                continue;
+            }
+            SharedPool currentPool = (SharedPool) current;
+            synchronized (currentPool) {
+                if (!currentPool.shutDown) {
+                    currentPool.users++;
+                    data = sessionData;
+                    shared = currentPool;
+                    return currentPool.pool;
+                }
+            }
+            // the last lease was closed meanwhile, the pool is shut down
+            sessionData.set(KEY, currentPool, null);
+        }
+    }
+
+    /**
+     * Closes the lease, and shuts the pool down if it was the last one.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (shared == null) {
+            return;
+        }
+        synchronized (shared) {
+            if (--shared.users > 0) {
+                return;
+            }
+            shared.shutDown = true;
+            shared.pool.shutdown();
+        }
+        data.set(KEY, shared, null);
+    }
+
+    /**
+     * @param session the Maven session
+     * @return the number of threads of the pool of the session
+     */
+    static int parallelism(MavenSession session) {
+        int degreeOfConcurrency =
+                session.getRequest() != null ? session.getRequest().getDegreeOfConcurrency() : 1;
+        return degreeOfConcurrency > 1
+                ? degreeOfConcurrency
+                : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The pool of a session and the number of open leases, guarded by the instance. A pool without leases is shut
+     * down and no longer handed out.
+     */
+    private static final class SharedPool {
+        private final ForkJoinPool pool;
+
+        private int users;
+
+        private boolean shutDown;
+
+        SharedPool(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+    }
+}
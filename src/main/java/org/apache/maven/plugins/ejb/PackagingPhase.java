@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+/**
+ * A phase of the EJB packaging, recorded as a Java Flight Recorder event when a recording with the event enabled is
+ * running, and added to the {@link PackagingProfile} when a profile report is written. Otherwise a phase costs no
+ * more than a check of the event settings, so the file and byte counts should only be computed when
+ * {@link #isRecording()} returns <code>true</code>.
+ * <p/>
+ * The JFR API is only touched when it exists, so the plugin keeps working on JDKs without it.
+ *
+ * @since 3.2.2
+ */
+final class PackagingPhase {
+    /**
+     * The recorded phases.
+     */
+    enum Kind {
+        DESCRIPTOR_VALIDATION("descriptorValidation"),
+        FILTERING("filtering"),
+        SCAN("scan"),
+        SHRINK("shrink"),
+        ARCHIVE("archive"),
+        ATTACH("attach");
+
+        private final String name;
+
+        Kind(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name of the phase in the profile report
+         */
+        String getName() {
+            return name;
+        }
+    }
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private static final PackagingPhase NOT_RECORDED = new PackagingPhase(null, null, null, null, 0);
+
+    private final Kind kind;
+
+    private final String classifier;
+
+    private final PackagingEvent event;
+
+    private final PackagingProfile profile;
+
+    private final long start;
+
+    private PackagingPhase(Kind kind, String classifier, PackagingEvent event, PackagingProfile profile, long start) {
+        this.kind = kind;
+        this.classifier = classifier;
+        this.event = event;
+        this.profile = profile;
+        this.start = start;
+    }
+
+    /**
+     * Starts a phase.
+     *
+     * @param kind the phase
+     * @param classifier the classifier of the archive, may be <code>null</code>
+     * @param profile the profile which gets the phase, or <code>null</code> if no profile is written
+     * @return the started phase
+     */
+    static PackagingPhase begin(Kind kind, String classifier, PackagingProfile profile) {
+        PackagingEvent event = JFR_AVAILABLE ? PackagingEvent.begin(kind, classifier) : null;
+        if (event == null && profile == null) {
+            return NOT_RECORDED;
+        }
+        return new PackagingPhase(kind, classifier, event, profile, profile != null ? System.nanoTime() : 0);
+    }
+
+    /**
+     * @return whether a recording or a profile is interested in the phase
+     */
+    boolean isRecording() {
+        return profile != null || event != null && event.isEnabled();
+    }
+
+    /**
+     * Ends the phase and records it if a recording is interested in it.
+     *
+     * @param archive the archive or file the phase worked on
+     * @param fileCount the number of files
+     * @param bytesIn the bytes read, uncompressed
+     * @param bytesOut the bytes written
+     */
+    void end(String archive, long fileCount, long bytesIn, long bytesOut) {
+        if (profile != null) {
+            profile.addPhase(kind, classifier, archive, System.nanoTime() - start, fileCount, bytesIn, bytesOut);
+        }
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.archive = archive;
+            event.fileCount = fileCount;
+            event.bytesIn = bytesIn;
+            event.bytesOut = bytesOut;
+            event.commit();
+        }
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PackagingPhase.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
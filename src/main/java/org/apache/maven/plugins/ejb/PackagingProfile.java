@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The profile of one execution of the EJB packaging: wall time per phase, entries and bytes of each archive, the
+ * largest entries, the entries which took longest to deflate and cache hits. It is written as JSON to the build
+ * directory and summarized over the reactor by {@link ReactorProfile}.
+ *
+ * @since 3.2.2
+ */
+final class PackagingProfile {
+    /**
+     * How many of the largest and the slowest entries are reported per archive.
+     */
+    static final int TOP_ENTRIES = 10;
+
+    private static final Comparator<Deflate> BY_DEFLATE_TIME = Comparator.comparingLong(deflate -> deflate.nanos);
+
+    private final String module;
+
+    private final String version;
+
+    private final String classifier;
+
+    private final long start = System.nanoTime();
+
+    private long wallTimeNanos;
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    private final List<Archive> archives = new ArrayList<>();
+
+    /**
+     * The slowest deflated entries per archive, the fastest at the head, so it can be dropped when the queue is full.
+     */
+    private final Map<String, PriorityQueue<Deflate>> slowestDeflates = new HashMap<>();
+
+    private final Map<String, long[]> cacheLookups = new TreeMap<>();
+
+    PackagingProfile(String module, String version, String classifier) {
+        this.module = module;
+        this.version = version;
+        this.classifier = classifier;
+    }
+
+    synchronized void addPhase(
+            PackagingPhase.Kind kind,
+            String phaseClassifier,
+            String archive,
+            long nanos,
+            long fileCount,
+            long bytesIn,
+            long bytesOut) {
+        phases.add(new Phase(kind, phaseClassifier, archive, nanos, fileCount, bytesIn, bytesOut));
+    }
+
+    /**
+     * Adds the sizes of a written archive.
+     *
+     * @param archiveClassifier the classifier of the archive
+     * @param archive the archive file
+     * @param centralDirectory the central directory read back from the archive
+     */
+    synchronized void addArchive(String archiveClassifier, File archive, CentralDirectory centralDirectory) {
+        List<CentralDirectory.Entry> largest = new ArrayList<>(centralDirectory.getEntries());
+        largest.sort(Comparator.comparingLong(CentralDirectory.Entry::getSize)
+                .reversed()
+                .thenComparing(CentralDirectory.Entry::getName));
+        archives.add(new Archive(
+                archive.getName(),
+                archiveClassifier,
+                centralDirectory.getEntryCount(),
+                centralDirectory.getUncompressedSize(),
+                centralDirectory.getCompressedSize(),
+                archive.length(),
+                new ArrayList<>(largest.subList(0, Math.min(TOP_ENTRIES, largest.size())))));
+    }
+
+    /**
+     * Adds the time an entry took to deflate, including reading it.
+     *
+     * @param archive the name of the archive file
+     * @param name the entry name
+     * @param size the uncompressed size
+     * @param compressedSize the compressed size
+     * @param nanos the time in nanoseconds
+     */
+    synchronized void addDeflate(String archive, String name, long size, long compressedSize, long nanos) {
+        PriorityQueue<Deflate> slowest =
+                slowestDeflates.computeIfAbsent(archive, key -> new PriorityQueue<>(TOP_ENTRIES + 1, BY_DEFLATE_TIME));
+        slowest.add(new Deflate(name, size, compressedSize, nanos));
+        if (slowest.size() > TOP_ENTRIES) {
+            slowest.poll();
+        }
+    }
+
+    /**
+     * Counts a lookup in one of the caches of the plugin.
+     *
+     * @param cache the name of the cache
+     * @param hit whether the lookup was a hit
+     */
+    synchronized void addCacheLookup(String cache, boolean hit) {
+        cacheLookups.computeIfAbsent(cache, key -> new long[2])[hit ? 0 : 1]++;
+    }
+
+    /**
+     * Ends the wall time of the execution.
+     */
+    synchronized void finish() {
+        wallTimeNanos = System.nanoTime() - start;
+    }
+
+    String getModule() {
+        return module;
+    }
+
+    String getClassifier() {
+        return classifier;
+    }
+
+    synchronized long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    synchronized int getArchiveCount() {
+        return archives.size();
+    }
+
+    synchronized long getEntryCount() {
+        long entries = 0;
+        for (Archive archive : archives) {
+            entries += archive.entryCount;
+        }
+        return entries;
+    }
+
+    synchronized long getBytesIn() {
+        long bytes = 0;
+        for (Archive archive : archives) {
+            bytes += archive.bytesIn;
+        }
+        return bytes;
+    }
+
+    synchronized long getCompressedBytes() {
+        long bytes = 0;
+        for (Archive archive : archives) {
+            bytes += archive.compressedBytes;
+        }
+        return bytes;
+    }
+
+    synchronized long getBytesOut() {
+        long bytes = 0;
+        for (Archive archive : archives) {
+            bytes += archive.bytesOut;
+        }
+        return bytes;
+    }
+
+    synchronized long getCacheHits(String cache) {
+        long[] lookups = cacheLookups.get(cache);
+        return lookups != null ? lookups[0] : 0;
+    }
+
+    /**
+     * Writes the profile as JSON.
+     *
+     * @param file the report file
+     * @throws IOException if the file could not be written
+     */
+    synchronized void write(File file) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        try (JsonWriter json =
+                new JsonWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            json.beginObject();
+            json.name("module").value(module);
+            json.name("version").value(version);
+            json.name("classifier").value(classifier);
+            json.name("wallTimeMs").value(millis(wallTimeNanos));
+
+            json.name("phases").beginArray();
+            for (Phase phase : phases) {
+                json.beginObject();
+                json.name("phase").value(phase.kind.getName());
+                json.name("classifier").value(phase.classifier);
+                json.name("archive").value(phase.archive);
+                json.name("wallTimeMs").value(millis(phase.nanos));
+                json.name("files").value(phase.fileCount);
+                json.name("bytesIn").value(phase.bytesIn);
+                json.name("bytesOut").value(phase.bytesOut);
+                json.endObject();
+            }
+            json.endArray();
+
+            json.name("archives").beginArray();
+            for (Archive archive : archives) {
+                writeArchive(json, archive);
+            }
+            json.endArray();
+
+            json.name("cacheHits").beginObject();
+            for (Map.Entry<String, long[]> cache : cacheLookups.entrySet()) {
+                json.name(cache.getKey()).beginObject();
+                json.name("hits").value(cache.getValue()[0]);
+                json.name("misses").value(cache.getValue()[1]);
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+        }
+    }
+
+    private void writeArchive(JsonWriter json, Archive archive) throws IOException {
+        json.beginObject();
+        json.name("archive").value(archive.name);
+        json.name("classifier").value(archive.classifier);
+        json.name("entries").value(archive.entryCount);
+        json.name("bytesIn").value(archive.bytesIn);
+        json.name("compressedBytes").value(archive.compressedBytes);
+        json.name("bytesOut").value(archive.bytesOut);
+        json.name("compressionRatio").value(ratio(archive.compressedBytes, archive.bytesIn));
+
+        json.name("largestEntries").beginArray();
+        for (CentralDirectory.Entry entry : archive.largestEntries) {
+            json.beginObject();
+            json.name("name").value(entry.getName());
+            json.name("size").value(entry.getSize());
+            json.name("compressedSize").value(entry.getCompressedSize());
+            json.endObject();
+        }
+        json.endArray();
+
+        json.name("slowestDeflates").beginArray();
+        PriorityQueue<Deflate> slowest = slowestDeflates.get(archive.name);
+        List<Deflate> deflates = slowest != null ? new ArrayList<>(slowest) : Collections.<Deflate>emptyList();
+        deflates.sort(BY_DEFLATE_TIME.reversed());
+        for (Deflate deflate : deflates) {
+            json.beginObject();
+            json.name("name").value(deflate.name);
+            json.name("wallTimeMs").value(millis(deflate.nanos));
+            json.name("size").value(deflate.size);
+            json.name("compressedSize").value(deflate.compressedSize);
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    static double millis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the compressed size relative to the uncompressed size, <code>1</code> for empty archives
+     */
+    static double ratio(long compressedBytes, long bytesIn) {
+        return bytesIn == 0 ? 1 : (double) compressedBytes / bytesIn;
+    }
+
+    private static final class Phase {
+        private final PackagingPhase.Kind kind;
+
+        private final String classifier;
+
+        private final String archive;
+
+        private final long nanos;
+
+        private final long fileCount;
+
+        private final long bytesIn;
+
+        private final long bytesOut;
+
+        Phase(
+                PackagingPhase.Kind kind,
+                String classifier,
+                String archive,
+                long nanos,
+                long fileCount,
+                long bytesIn,
+                long bytesOut) {
+            this.kind = kind;
+            this.classifier = classifier;
+            this.archive = archive;
+            this.nanos = nanos;
+            this.fileCount = fileCount;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+        }
+    }
+
+    private static final class Archive {
+        private final String name;
+
+        private final String classifier;
+
+        private final int entryCount;
+
+        private final long bytesIn;
+
+        private final long compressedBytes;
+
+        private final long bytesOut;
+
+        private final List<CentralDirectory.Entry> largestEntries;
+
+        Archive(
+                String name,
+                String classifier,
+                int entryCount,
+                long bytesIn,
+                long compressedBytes,
+                long bytesOut,
+                List<CentralDirectory.Entry> largestEntries) {
+            this.name = name;
+            this.classifier = classifier;
+            this.entryCount = entryCount;
+            this.bytesIn = bytesIn;
+            this.compressedBytes = compressedBytes;
+            this.bytesOut = bytesOut;
+            this.largestEntries = largestEntries;
+        }
+    }
+
+    private static final class Deflate {
+        private final String name;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        private final long nanos;
+
+        Deflate(String name, long size, long compressedSize, long nanos) {
+            this.name = name;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * The summary of the {@link PackagingProfile}s of all EJB modules of a reactor build. It lives in the data of the
+ * repository session, so it is shared by the executions of all modules, also in parallel builds.
+ *
+ * @since 3.2.2
+ */
+final class ReactorProfile {
+    private static final String KEY = ReactorProfile.class.getName();
+
+    private final List<PackagingProfile> profiles = new ArrayList<>();
+
+    /**
+     * @param session the Maven session
+     * @return the reactor profile of the session, or <code>null</code> if the session can not hold one
+     */
+    static ReactorProfile of(MavenSession session) {
+        if (session == null || session.getRepositorySession() == null) {
+            return null;
+        }
+        SessionData data = session.getRepositorySession().getData();
+        Object profile = data.get(KEY);
+        while (profile == null) {
+            ReactorProfile created = new ReactorProfile();
+            profile = data.set(KEY, null, created) ? created : data.get(KEY);
+        }
+        // another version of the plugin may have stored its own class
+        return profile instanceof ReactorProfile ? (ReactorProfile) profile : null;
+    }
+
+    synchronized void add(PackagingProfile profile) {
+        profiles.add(profile);
+    }
+
+    /**
+     * Writes the summary of the profiles added so far as JSON.
+     *
+     * @param file the report file
+     * @throws IOException if the file could not be written
+     */
+    synchronized void write(File file) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        long wallTimeNanos = 0;
+        long entryCount = 0;
+        long bytesIn = 0;
+        long compressedBytes = 0;
+        long bytesOut = 0;
+        try (JsonWriter json =
+                new JsonWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            json.beginObject();
+            json.name("modules").beginArray();
+            for (PackagingProfile profile : profiles) {
+                json.beginObject();
+                json.name("module").value(profile.getModule());
+                json.name("classifier").value(profile.getClassifier());
+                json.name("wallTimeMs").value(PackagingProfile.millis(profile.getWallTimeNanos()));
+                json.name("archives").value(profile.getArchiveCount());
+                json.name("entries").value(profile.getEntryCount());
+                json.name("bytesIn").value(profile.getBytesIn());
+                json.name("bytesOut").value(profile.getBytesOut());
+                json.name("compressionRatio")
+                        .value(PackagingProfile.ratio(profile.getCompressedBytes(), profile.getBytesIn()));
+                json.endObject();
+
+                wallTimeNanos += profile.getWallTimeNanos();
+                entryCount += profile.getEntryCount();
+                bytesIn += profile.getBytesIn();
+                compressedBytes += profile.getCompressedBytes();
+                bytesOut += profile.getBytesOut();
+            }
+            json.endArray();
+
+            json.name("total").beginObject();
+            json.name("modules").value(profiles.size());
+            json.name("wallTimeMs").value(PackagingProfile.millis(wallTimeNanos));
+            json.name("entries").value(entryCount);
+            json.name("bytesIn").value(bytesIn);
+            json.name("bytesOut").value(bytesOut);
+            json.name("compressionRatio").value(PackagingProfile.ratio(compressedBytes, bytesIn));
+            json.endObject();
+            json.endObject();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Reads and deflates the files of the entries of an archive ahead of the single thread which writes them, so reading
+ * files, deflating and writing overlap. Files are read by virtual threads on Java 21 and later, by a pool of platform
+ * threads otherwise, and deflated by the given pool, which is shared with the other archives of the build.
+ * <p/>
+ * The writer schedules the entries in the order it will write them and takes their content in the same order. It
+ * only schedules an entry while the sizes of the files scheduled but not taken yet fit into the budget, so the memory
+ * held by the read-ahead is bounded by the budget plus the deflated copies.
+ *
+ * @since 3.2.2
+ */
+final class ReadAhead implements Closeable {
+    private static final int READERS_PER_PROCESSOR = 4;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Every file is charged at least this many bytes, so no end of empty files is scheduled.
+     */
+    private static final long MIN_CHARGE = 1024;
+
+    private final long budget;
+
+    private final ExecutorService readers;
+
+    private final Executor compressors;
+
+    private final DeflateCache deflateCache;
+
+    private final JarSignature signature;
+
+    private final EntryTransformerChain transformers;
+
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private final Map<Object, Pending> pending = new IdentityHashMap<>();
+
+    private long scheduledBytes;
+
+    private volatile boolean closed;
+
+    /**
+     * @param budget the number of bytes of file content which may be scheduled and not taken yet
+     * @param compressors the executor deflating the files, which is not shut down with the read-ahead
+     * @param deflateCache the cache of deflated content, or <code>null</code> to deflate every file
+     * @param signature the signature of the archive, whose digests are computed along with the deflating, or
+     *            <code>null</code>
+     * @param transformers the transformers of the content before it is deflated, or <code>null</code>
+     */
+    ReadAhead(
+            long budget,
+            Executor compressors,
+            DeflateCache deflateCache,
+            JarSignature signature,
+            EntryTransformerChain transformers) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.budget = budget;
+        this.readers = newReaderExecutor(READERS_PER_PROCESSOR * processors);
+        this.compressors = compressors;
+        this.deflateCache = deflateCache;
+        this.signature = signature;
+        this.transformers = transformers;
+    }
+
+    /**
+     * @param size the size of the file
+     * @return whether a file of this size can be scheduled now, which is always the case when nothing is scheduled
+     */
+    boolean canSchedule(long size) {
+        return pending.isEmpty() || scheduledBytes + charge(size) <= budget;
+    }
+
+    /**
+     * Starts reading and deflating a file.
+     *
+     * @param key the key with which the content is taken, compared by identity
+     * @param name the name the file is added with, which decides whether its content is transformed
+     * @param time the time the entry is written with
+     * @param file the file
+     * @param size the size of the file
+     * @param compress whether the content should be deflated
+     * @param recompressZips whether the content should be deflated even if it is a zip file
+     */
+    void schedule(Object key, String name, long time, Path file, long size, boolean compress, boolean recompressZips) {
+        CompletableFuture<ZipChannelWriter.PreparedContent> content = CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return Files.readAllBytes(file);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        },
+                        readers)
+                .thenApplyAsync(bytes -> prepare(name, time, bytes, compress, recompressZips), compressors);
+        pending.put(key, new Pending(content, charge(size)));
+        scheduledBytes += charge(size);
+    }
+
+    /**
+     * Waits for the content of a scheduled file.
+     *
+     * @param key the key the file was scheduled with
+     * @return the content, or <code>null</code> if nothing was scheduled with the key
+     * @throws IOException if the file could not be read
+     */
+    ZipChannelWriter.PreparedContent take(Object key) throws IOException {
+        Pending taken = pending.remove(key);
+        if (taken == null) {
+            return null;
+        }
+        scheduledBytes -= taken.charge;
+        try {
+            return taken.content.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the content of a file which is not written after all.
+     *
+     * @param key the key the file was scheduled with
+     */
+    void discard(Object key) {
+        Pending discarded = pending.remove(key);
+        if (discarded != null) {
+            scheduledBytes -= discarded.charge;
+            discarded.content.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the readers once the scheduled files are read and releases the deflaters. A file still being deflated
+     * releases its deflater when it is done.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Pending discarded : pending.values()) {
+            discarded.content.cancel(false);
+        }
+        pending.clear();
+        readers.shutdown();
+        try {
+            readers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            endDeflaters();
+        }
+    }
+
+    private void endDeflaters() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private static long charge(long size) {
+        return Math.max(MIN_CHARGE, size);
+    }
+
+    private ZipChannelWriter.PreparedContent prepare(
+            String name, long time, byte[] original, boolean compressFiles, boolean recompressZips) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = ZipChannelWriter.newDeflater();
+        }
+        try {
+            byte[] content = transformers != null && transformers.transforms(name)
+                    ? transformers.transform(name, time, original)
+                    : original;
+            boolean compress = compressFiles && (recompressZips || !isZip(content));
+            ZipChannelWriter.PreparedContent prepared =
+                    compress && deflateCache != null && content.length <= DeflateCache.MAX_ENTRY_SIZE
+                            ? deflateCache.deflate(content, deflater)
+                            : ZipChannelWriter.prepare(content, compress, deflater);
+            return signature != null ? prepared.withDigest(signature.digest(content)) : prepared;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflaters.add(deflater);
+            if (closed) {
+                endDeflaters();
+            }
+        }
+    }
+
+    /**
+     * Checks for the local file header signature, like plexus does to decide whether an added archive is recompressed.
+     */
+    private static boolean isZip(byte[] content) {
+        return content.length >= 4 && content[0] == 'P' && content[1] == 'K' && content[2] == 3 && content[3] == 4;
+    }
+
+    /**
+     * @return an executor starting a virtual thread per file when the runtime has them, a fixed pool otherwise
+     */
+    private static ExecutorService newReaderExecutor(int platformThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads, daemonThreads("ejb-read-"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Pending {
+        private final CompletableFuture<ZipChannelWriter.PreparedContent> content;
+
+        private final long charge;
+
+        Pending(CompletableFuture<ZipChannelWriter.PreparedContent> content, long charge) {
+            this.content = content;
+            this.charge = charge;
+        }
+    }
+}
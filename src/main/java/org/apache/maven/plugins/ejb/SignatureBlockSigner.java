@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Signs the signature file of a jar whose digests were computed while the jar was written, see the
+ * <code>signingDigests</code> parameter of the <code>ejb</code> goal. Implementations are added as a dependency of
+ * the plugin and named by the <code>signer</code> parameter. They need a public constructor without arguments and
+ * must be safe for concurrent use, the jars of an execution may be signed in parallel.
+ *
+ * @since 3.2.2
+ */
+public interface SignatureBlockSigner {
+    /**
+     * Configures the signer, for example with the location of the key store, before the first jar is signed.
+     *
+     * @param properties the <code>signerProperties</code> of the plugin configuration, never <code>null</code>
+     * @throws IOException if the signer could not be configured
+     */
+    default void configure(Properties properties) throws IOException {
+        // nothing to configure
+    }
+
+    /**
+     * @return the extension of the signature block, after the key algorithm: <code>RSA</code>, <code>DSA</code> or
+     *         <code>EC</code>
+     */
+    String getBlockExtension();
+
+    /**
+     * Signs a signature file.
+     *
+     * @param signatureFile the content of the <code>.SF</code> file
+     * @return the signature block, a detached PKCS #7 signature of the signature file
+     * @throws IOException if the signature file could not be signed
+     */
+    byte[] sign(byte[] signatureFile) throws IOException;
+}
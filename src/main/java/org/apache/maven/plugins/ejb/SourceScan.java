@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.codehaus.plexus.archiver.AbstractArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.components.io.resources.PlexusIoResourceCollection;
+import org.codehaus.plexus.components.io.resources.Stream;
+
+/**
+ * The files and directories of a directory, scanned once for several archives. The directory is scanned by the
+ * resource collection the plexus archiver itself creates for
+ * {@link org.codehaus.plexus.archiver.Archiver#addDirectory(File)}, so the resources have the same names and
+ * attributes. Each archive then adds a collection which selects its resources from the scan with its own includes and
+ * excludes, instead of listing the directory and reading the attributes of every file again.
+ *
+ * @since 3.2.2
+ */
+final class SourceScan {
+    private final File directory;
+
+    private final PlexusIoResourceCollection collection;
+
+    private final List<PlexusIoResource> resources;
+
+    private SourceScan(File directory, PlexusIoResourceCollection collection, List<PlexusIoResource> resources) {
+        this.directory = directory;
+        this.collection = collection;
+        this.resources = resources;
+    }
+
+    /**
+     * Scans a directory with the default excludes, like the given archiver would. The order of the file names and the
+     * owners and modes it overrides are fixed by the scan, so the scan can only be shared by archivers configured
+     * alike.
+     *
+     * @param directory the directory
+     * @param settings the archiver whose settings are used
+     * @return the scan
+     * @throws ArchiverException if the directory is not a directory
+     * @throws IOException if the directory could not be scanned
+     */
+    static SourceScan scan(File directory, AbstractArchiver settings) throws ArchiverException, IOException {
+        List<PlexusIoResourceCollection> collections = new ArrayList<>();
+        JarArchiver archiver = new JarArchiver() {
+            @Override
+            public void addResources(PlexusIoResourceCollection added) {
+                collections.add(added);
+            }
+        };
+        archiver.setIncludeEmptyDirs(settings.getIncludeEmptyDirs());
+        archiver.setFilenameComparator(settings.getFilenameComparator());
+        archiver.setOverrideUid(settings.getOverrideUid());
+        archiver.setOverrideUserName(settings.getOverrideUserName());
+        archiver.setOverrideGid(settings.getOverrideGid());
+        archiver.setOverrideGroupName(settings.getOverrideGroupName());
+        archiver.setUmask(settings.getUmask());
+        if (settings.getOverrideFileMode() != -1) {
+            archiver.setFileMode(settings.getOverrideFileMode());
+        }
+        if (settings.getOverrideDirectoryMode() != -1) {
+            archiver.setDirectoryMode(settings.getOverrideDirectoryMode());
+        }
+        archiver.addDirectory(directory);
+
+        PlexusIoResourceCollection collection = collections.get(0);
+        List<PlexusIoResource> resources = new ArrayList<>();
+        for (Iterator<PlexusIoResource> it = collection.getResources(); it.hasNext(); ) {
+            resources.add(it.next());
+        }
+        return new SourceScan(directory, collection, Collections.unmodifiableList(resources));
+    }
+
+    /**
+     * @return the number of files and directories scanned
+     */
+    int size() {
+        return resources.size();
+    }
+
+    /**
+     * @param includes the include patterns, all files if empty
+     * @param excludes the exclude patterns, added to the default excludes
+     * @param skipped the entry names of further files to leave out
+     * @return the resources of the scan selected by the patterns, in the order of the scan
+     */
+    PlexusIoResourceCollection select(String[] includes, String[] excludes, Set<String> skipped) {
+        StreamedDirectory selection = new StreamedDirectory(directory.toPath(), includes, excludes, skipped);
+        List<PlexusIoResource> selected = new ArrayList<>();
+        for (PlexusIoResource resource : resources) {
+            if (selection.selects(collection.getName(resource))) {
+                selected.add(resource);
+            }
+        }
+        return new Selection(selected);
+    }
+
+    /**
+     * Selected resources, read like the resources of the scanning collection.
+     */
+    private final class Selection implements PlexusIoResourceCollection {
+        private final List<PlexusIoResource> selected;
+
+        Selection(List<PlexusIoResource> selected) {
+            this.selected = selected;
+        }
+
+        @Override
+        public Iterator<PlexusIoResource> getResources() {
+            return selected.iterator();
+        }
+
+        @Override
+        public Iterator<PlexusIoResource> iterator() {
+            return getResources();
+        }
+
+        @Override
+        public Stream stream() {
+            return consumer -> {
+                for (PlexusIoResource resource : selected) {
+                    consumer.accept(resource);
+                }
+            };
+        }
+
+        @Override
+        public String getName(PlexusIoResource resource) {
+            return collection.getName(resource);
+        }
+
+        @Override
+        public long getLastModified() throws IOException {
+            return collection.getLastModified();
+        }
+
+        @Override
+        public InputStream getInputStream(PlexusIoResource resource) throws IOException {
+            return collection.getInputStream(resource);
+        }
+
+        @Override
+        public PlexusIoResource resolve(PlexusIoResource resource) throws IOException {
+            return collection.resolve(resource);
+        }
+
+        @Override
+        public boolean isConcurrentAccessSupported() {
+            return collection.isConcurrentAccessSupported();
+        }
+    }
+}
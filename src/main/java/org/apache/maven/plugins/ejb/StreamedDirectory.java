@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.MatchPatterns;
+
+/**
+ * A directory whose files are visited while an archive is written, instead of being collected by a plexus resource
+ * collection up front. Files and directories are selected like the {@link DirectoryScanner} of
+ * {@link org.codehaus.plexus.archiver.Archiver#addDirectory(File, String[], String[])} does, including its default
+ * excludes. Only the names of the directories on the current path are held while walking.
+ * <p/>
+ * When the order of the entries does not matter, the directory can be walked by a fork-join pool instead: every
+ * directory is listed by its own task, which reads the attributes of each child with a single stat and forks a task
+ * per selected subdirectory, so the latency of a network file system is spread over several threads. The attributes
+ * read are the {@link PosixFileAttributes} where the file system has them, so the permissions need no second stat.
+ *
+ * @since 3.2.2
+ */
+final class StreamedDirectory {
+    private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+
+    private final Path directory;
+
+    /**
+     * The attributes read by the parallel walk, with the permissions if the file system has them.
+     */
+    private final Class<? extends BasicFileAttributes> attributesType;
+
+    private final MatchPatterns includes;
+
+    private final MatchPatterns excludes;
+
+    /**
+     * The platform paths of the files left out besides the excludes, looked up instead of matched as patterns.
+     */
+    private final Set<String> skipped;
+
+    /**
+     * @param directory the directory
+     * @param includes the include patterns, all files if empty
+     * @param excludes the exclude patterns, added to the default excludes
+     */
+    StreamedDirectory(Path directory, String[] includes, String[] excludes) {
+        this(directory, includes, excludes, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param directory the directory
+     * @param includes the include patterns, all files if empty
+     * @param excludes the exclude patterns, added to the default excludes
+     * @param skipped the entry names of further files to leave out
+     */
+    StreamedDirectory(Path directory, String[] includes, String[] excludes, Set<String> skipped) {
+        this.directory = directory;
+        this.attributesType = hasPermissions(directory) ? PosixFileAttributes.class : BasicFileAttributes.class;
+        this.includes = MatchPatterns.from(normalize(includes.length > 0 ? Arrays.asList(includes) : null));
+        List<String> allExcludes = new ArrayList<>(Arrays.asList(excludes));
+        Collections.addAll(allExcludes, DirectoryScanner.DEFAULTEXCLUDES);
+        this.excludes = MatchPatterns.from(normalize(allExcludes));
+        if (File.separatorChar == '/' || skipped.isEmpty()) {
+            this.skipped = skipped;
+        } else {
+            this.skipped = new HashSet<>();
+            for (String name : skipped) {
+                this.skipped.add(toPlatformPath(name));
+            }
+        }
+    }
+
+    /**
+     * @param name an entry name
+     * @return the file of the entry
+     */
+    Path resolve(String name) {
+        return directory.resolve(name);
+    }
+
+    /**
+     * Visits the selected directories and files, parents before their children.
+     *
+     * @param visitor the visitor
+     * @throws IOException if the directory could not be read or the visitor failed
+     */
+    void walk(Visitor visitor) throws IOException {
+        Deque<String> prefixes = new ArrayDeque<>();
+        Files.walkFileTree(
+                directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+                            throws IOException {
+                        if (prefixes.isEmpty()) {
+                            prefixes.push("");
+                            return FileVisitResult.CONTINUE;
+                        }
+                        String name = prefixes.peek() + dir.getFileName();
+                        String path = toPlatformPath(name);
+                        if (!includes.matchesPatternStart(path, true)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        // the prefix is shared by the names of all files in the directory
+                        prefixes.push(name + '/');
+                        if (isSelected(path)) {
+                            visitor.directory(name + '/', attributes);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                        String name = prefixes.peek() + file.getFileName();
+                        if (isSelected(toPlatformPath(name))) {
+                            visitor.file(name, file, attributes);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                        if (e != null) {
+                            throw e;
+                        }
+                        prefixes.pop();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    /**
+     * Visits the selected directories and files in no particular order, walking the subdirectories in parallel. The
+     * visitor is called by one thread at a time, but not always the same one.
+     *
+     * @param visitor the visitor
+     * @param pool the pool listing the directories
+     * @throws IOException if the directory could not be read or the visitor failed
+     */
+    void walkParallel(Visitor visitor, ForkJoinPool pool) throws IOException {
+        try {
+            Object key = Files.readAttributes(directory, attributesType).fileKey();
+            Set<Object> ancestors = key != null ? Collections.singleton(key) : Collections.emptySet();
+            pool.invoke(new DirectoryTask(directory, "", ancestors, visitor));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param name an entry name, with or without the trailing slash of a directory
+     * @return whether the entry is selected by the patterns of this directory
+     */
+    boolean selects(String name) {
+        String path = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        return isSelected(toPlatformPath(path));
+    }
+
+    private boolean isSelected(String path) {
+        return includes.matches(path, true) && !skipped.contains(path) && !excludes.matches(path, true);
+    }
+
+    /**
+     * @param file a file or directory
+     * @param attributes the attributes of the file from a walk, which are read again only if they lack the
+     *            permissions the file system has
+     * @return the unix permissions of the file, or <code>-1</code> if the file system has none
+     * @throws IOException if the attributes could not be read
+     */
+    static int permissions(Path file, BasicFileAttributes attributes) throws IOException {
+        PosixFileAttributes posixAttributes;
+        if (attributes instanceof PosixFileAttributes) {
+            posixAttributes = (PosixFileAttributes) attributes;
+        } else if (hasPermissions(file)) {
+            posixAttributes = Files.readAttributes(file, PosixFileAttributes.class);
+        } else {
+            return -1;
+        }
+        int mode = 0;
+        for (PosixFilePermission permission : posixAttributes.permissions()) {
+            // OWNER_READ is 0400 and OTHERS_EXECUTE is 0001
+            mode |= 1 << (PERMISSIONS.length - 1 - permission.ordinal());
+        }
+        return mode;
+    }
+
+    private static boolean hasPermissions(Path file) {
+        return file.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * Normalizes the patterns like the plexus scanner does: platform separators, and a trailing separator matches
+     * everything below.
+     */
+    private static List<String> normalize(List<String> patterns) {
+        List<String> normalized = new ArrayList<>();
+        if (patterns == null) {
+            normalized.add("**");
+            return normalized;
+        }
+        for (String pattern : patterns) {
+            String path = toPlatformPath(pattern.trim().replace('\\', '/'));
+            normalized.add(path.endsWith(File.separator) ? path + "**" : path);
+        }
+        return normalized;
+    }
+
+    private static String toPlatformPath(String name) {
+        return File.separatorChar == '/' ? name : name.replace('/', File.separatorChar);
+    }
+
+    /**
+     * Lists a directory, visits its selected children and forks a task for each subdirectory which may contain selected
+     * files.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        private final String prefix;
+
+        /**
+         * The file keys of the directories above, to detect loops of symbolic links like {@link Files#walkFileTree}.
+         */
+        private final Set<Object> ancestors;
+
+        private final Visitor visitor;
+
+        DirectoryTask(Path directory, String prefix, Set<Object> ancestors, Visitor visitor) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.ancestors = ancestors;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (Path child : children) {
+                    // follows symbolic links like the plexus scanner
+                    BasicFileAttributes attributes = Files.readAttributes(child, attributesType);
+                    String name = prefix + child.getFileName();
+                    String path = toPlatformPath(name);
+                    if (!attributes.isDirectory()) {
+                        if (isSelected(path)) {
+                            synchronized (visitor) {
+                                visitor.file(name, child, attributes);
+                            }
+                        }
+                    } else if (includes.matchesPatternStart(path, true)) {
+                        if (isSelected(path)) {
+                            synchronized (visitor) {
+                                visitor.directory(name + '/', attributes);
+                            }
+                        }
+                        subdirectories.add(
+                                new DirectoryTask(child, name + '/', withAncestor(child, attributes), visitor));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subdirectories);
+        }
+
+        private Set<Object> withAncestor(Path child, BasicFileAttributes attributes) throws IOException {
+            Object key = attributes.fileKey();
+            if (key == null) {
+                return ancestors;
+            }
+            if (ancestors.contains(key)) {
+                throw new FileSystemLoopException(child.toString());
+            }
+            Set<Object> keys = new HashSet<>(ancestors);
+            keys.add(key);
+            return keys;
+        }
+    }
+
+    /**
+     * Gets the selected directories and files.
+     */
+    interface Visitor {
+        /**
+         * @param name the entry name of the directory, ending with a slash
+         * @param attributes the attributes of the directory
+         * @throws IOException if the directory could not be added
+         */
+        void directory(String name, BasicFileAttributes attributes) throws IOException;
+
+        /**
+         * @param name the entry name of the file
+         * @param file the file
+         * @param attributes the attributes of the file
+         * @throws IOException if the file could not be added
+         */
+        void file(String name, Path file, BasicFileAttributes attributes) throws IOException;
+    }
+}
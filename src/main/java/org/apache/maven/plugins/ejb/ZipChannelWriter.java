@@ -0,0 +1,965 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes a zip file sequentially to a {@link FileChannel}. File backed entries which are stored uncompressed are
+ * copied from the source channel with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * after their CRC has been computed over a mapped region of the source file, so their payload never passes through
+ * the Java heap.
+ * <p/>
+ * The central directory records are serialized as soon as an entry is complete, into memory or into a spill file, so
+ * no object is kept per entry.
+ * <p/>
+ * Zip64 extensions are written as needed: for more than 65535 entries, for entries or a central directory at offsets
+ * beyond 4 GiB, and for entries of 4 GiB or more. The local file header of an entry can only get its Zip64 extra
+ * field when the size is known in advance, so a stream of unknown size which grows that large fails instead of
+ * producing a corrupt archive.
+ *
+ * @since 3.2.2
+ */
+final class ZipChannelWriter implements Closeable {
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+    /**
+     * The offset of the CRC in the local file header, followed by the sizes.
+     */
+    private static final int LOCAL_FILE_HEADER_CRC_OFFSET = 14;
+
+    private static final int CENTRAL_FILE_HEADER_SIZE = 46;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+
+    /**
+     * The id of the extra field with the 64 bit sizes and offset of an entry.
+     */
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    /**
+     * The size of the Zip64 extra field in a local file header: id, data size, size and compressed size.
+     */
+    private static final int ZIP64_LOCAL_EXTRA_FIELD_SIZE = 20;
+
+    /**
+     * General purpose flag telling that the entry name is encoded in UTF-8.
+     */
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private static final int VERSION_STORED = 10;
+
+    private static final int VERSION_DEFLATED = 20;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int MADE_BY_UNIX = 3 << 8;
+
+    static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+
+    static final long MAX_UNSIGNED_INT = 0xFFFFFFFFL;
+
+    /**
+     * The id of the extra field which pads the local file header of aligned entries, as used by zipalign and
+     * commons-compress.
+     */
+    private static final int ALIGNMENT_EXTRA_FIELD_ID = 0xa11e;
+
+    /**
+     * The size of the alignment extra field without padding: id, data size and the alignment itself.
+     */
+    private static final int ALIGNMENT_EXTRA_FIELD_SIZE = 6;
+
+    /**
+     * The largest alignment which fits into the 15 bits the extra field reserves for it.
+     */
+    static final int MAX_ALIGNMENT = 0x8000;
+
+    /**
+     * Stored files up to this size are read into the heap, mapping them costs more than copying them.
+     */
+    static final long TRANSFER_THRESHOLD = 64 * 1024;
+
+    /**
+     * The size of the regions which are mapped to compute the CRC of a stored file.
+     */
+    private static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Deflating adds at most five bytes per block of 16 KiB to incompressible data, less than 1/2048 of its size.
+     */
+    private static final int DEFLATE_OVERHEAD_SHIFT = 11;
+
+    /**
+     * The compression level of the deflated entries.
+     */
+    static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private static final int DOS_EPOCH_YEAR = 1980;
+
+    private static final int DOS_YEAR_SHIFT = 25;
+
+    private static final int DOS_MONTH_SHIFT = 21;
+
+    /**
+     * 1980-01-01 00:00, the earliest time which can be represented in the MS-DOS format.
+     */
+    static final int DOS_EPOCH = 1 << DOS_MONTH_SHIFT | 1 << 16;
+
+    private final FileChannel channel;
+
+    private final Deflater deflater = newDeflater();
+
+    /**
+     * The central directory records written so far, unless they go to {@link #centralDirectorySpill}.
+     */
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+    private FileChannel centralDirectorySpill;
+
+    private ByteBuffer spillBuffer;
+
+    private int entryCount;
+
+    private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+
+    private final byte[] outputBuffer = new byte[BUFFER_SIZE];
+
+    private long centralDirectorySize;
+
+    private int alignment = 1;
+
+    private DeflateListener deflateListener;
+
+    private boolean forceZip64;
+
+    private JarSignature signature;
+
+    ZipChannelWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Sets the boundary on which the data of stored entries starts, so they can be memory-mapped straight out of
+     * the archive. The local file header of these entries is padded with an extra field, just like zipalign does.
+     * Deflated entries and directories are not aligned.
+     *
+     * @param alignment a power of two up to {@link #MAX_ALIGNMENT}, <code>1</code> disables the alignment
+     */
+    void setAlignment(int alignment) {
+        if (!isValidAlignment(alignment)) {
+            throw new IllegalArgumentException("The alignment must be a power of two up to " + MAX_ALIGNMENT);
+        }
+        this.alignment = alignment;
+    }
+
+    /**
+     * Writes the central directory records to a file while the entries are added, instead of keeping them in memory
+     * until {@link #finish()}. Must be set before the first entry.
+     *
+     * @param spill the readable and writable channel of an empty temporary file, which is not closed by this writer
+     */
+    void setCentralDirectorySpill(FileChannel spill) {
+        this.centralDirectorySpill = spill;
+        this.spillBuffer = allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the Zip64 extra fields of every entry and the Zip64 end of central directory, even if they are not needed,
+     * just like <code>Zip64Mode.Always</code> of commons-compress.
+     *
+     * @param forceZip64 whether Zip64 extensions are always written
+     */
+    void setForceZip64(boolean forceZip64) {
+        this.forceZip64 = forceZip64;
+    }
+
+    /**
+     * Computes the digest of the content of each file entry while it is written, and records it with the signature.
+     * Must be set before the first entry.
+     *
+     * @param signature the signature getting the digests, or <code>null</code>
+     */
+    void setSignature(JarSignature signature) {
+        this.signature = signature;
+    }
+
+    /**
+     * @param listener notified about the time each entry took to deflate, or <code>null</code>
+     */
+    void setDeflateListener(DeflateListener listener) {
+        this.deflateListener = listener;
+    }
+
+    /**
+     * @param alignment the alignment to check
+     * @return whether the alignment can be used for {@link #setAlignment(int)}
+     */
+    static boolean isValidAlignment(int alignment) {
+        return alignment > 0 && alignment <= MAX_ALIGNMENT && Integer.bitCount(alignment) == 1;
+    }
+
+    /**
+     * Adds a directory entry.
+     *
+     * @param name the entry name, ending with a slash
+     * @param time the modification time in milliseconds since the epoch
+     * @param unixMode the unix mode including the file type bits
+     * @throws IOException if the entry could not be written
+     */
+    void putDirectory(String name, long time, int unixMode) throws IOException {
+        Entry entry = new Entry(name, ZipEntryMethod.STORED, time, unixMode, true, channel.position());
+        entry.zip64 = forceZip64;
+        entry.crc = 0;
+        writeLocalFileHeader(entry);
+        addCentralFileHeader(entry);
+    }
+
+    /**
+     * Adds an entry with the content of a file. Uncompressed entries are transferred from the source channel into
+     * the archive.
+     *
+     * @param name the entry name
+     * @param source the channel of the file, positioned at its start
+     * @param compress whether the entry should be deflated
+     * @param time the modification time in milliseconds since the epoch
+     * @param unixMode the unix mode including the file type bits
+     * @throws IOException if the file could not be read or the entry could not be written
+     */
+    void putFile(String name, FileChannel source, boolean compress, long time, int unixMode) throws IOException {
+        long size = source.size();
+        if (compress || size <= TRANSFER_THRESHOLD) {
+            putStream(name, new ChannelInputStream(source), compress, time, unixMode, size);
+            return;
+        }
+
+        Entry entry = new Entry(name, ZipEntryMethod.STORED, time, unixMode, false, channel.position());
+        entry.zip64 = forceZip64 || size >= MAX_UNSIGNED_INT;
+        MessageDigest digest = signature != null ? signature.newDigest(name) : null;
+        entry.crc = crc(source, size, digest);
+        entry.compressedSize = size;
+        entry.size = size;
+        writeLocalFileHeader(entry);
+
+        long transferred = 0;
+        while (transferred < size) {
+            long count = source.transferTo(transferred, size - transferred, channel);
+            if (count <= 0) {
+                throw new IOException("Unexpected end of file while transferring " + name);
+            }
+            transferred += count;
+        }
+        addCentralFileHeader(entry);
+        if (digest != null) {
+            signature.add(name, digest.digest());
+        }
+    }
+
+    /**
+     * Adds an entry with the content of a stream.
+     *
+     * @param name the entry name
+     * @param in the content of the entry
+     * @param compress whether the entry should be deflated
+     * @param time the modification time in milliseconds since the epoch
+     * @param unixMode the unix mode including the file type bits
+     * @throws IOException if the stream could not be read or the entry could not be written
+     */
+    void putStream(String name, InputStream in, boolean compress, long time, int unixMode) throws IOException {
+        putStream(name, in, compress, time, unixMode, -1);
+    }
+
+    /**
+     * @param expectedSize the size of the content, or <code>-1</code> if it is not known
+     */
+    private void putStream(String name, InputStream in, boolean compress, long time, int unixMode, long expectedSize)
+            throws IOException {
+        Entry entry = new Entry(
+                name,
+                compress ? ZipEntryMethod.DEFLATED : ZipEntryMethod.STORED,
+                time,
+                unixMode,
+                false,
+                channel.position());
+        entry.zip64 = forceZip64 || mayNeedZip64(expectedSize);
+        writeLocalFileHeader(entry);
+
+        CRC32 crc = new CRC32();
+        MessageDigest digest = signature != null ? signature.newDigest(name) : null;
+        long size = 0;
+        long start = deflateListener != null ? System.nanoTime() : 0;
+        if (compress) {
+            deflater.reset();
+        }
+        int read;
+        while ((read = in.read(inputBuffer)) != -1) {
+            crc.update(inputBuffer, 0, read);
+            if (digest != null) {
+                digest.update(inputBuffer, 0, read);
+            }
+            size += read;
+            if (compress) {
+                deflater.setInput(inputBuffer, 0, read);
+                while (!deflater.needsInput()) {
+                    deflate();
+                }
+            } else {
+                write(ByteBuffer.wrap(inputBuffer, 0, read));
+            }
+        }
+        if (compress) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+        }
+
+        entry.crc = crc.getValue();
+        entry.size = size;
+        entry.compressedSize = compress ? deflater.getBytesWritten() : size;
+        patchLocalFileHeader(entry);
+        addCentralFileHeader(entry);
+        if (digest != null) {
+            signature.add(name, digest.digest());
+        }
+        if (compress && deflateListener != null) {
+            deflateListener.deflated(name, size, entry.compressedSize, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds an entry whose content has been read and deflated ahead, see {@link #prepare(byte[], boolean, Deflater)}.
+     * The entry is written exactly like {@link #putStream(String, InputStream, boolean, long, int)} would.
+     *
+     * @param name the entry name
+     * @param content the prepared content
+     * @param time the modification time in milliseconds since the epoch
+     * @param unixMode the unix mode including the file type bits
+     * @throws IOException if the entry could not be written
+     */
+    void putPrepared(String name, PreparedContent content, long time, int unixMode) throws IOException {
+        Entry entry = new Entry(
+                name,
+                content.deflated ? ZipEntryMethod.DEFLATED : ZipEntryMethod.STORED,
+                time,
+                unixMode,
+                false,
+                channel.position());
+        entry.zip64 = forceZip64 || mayNeedZip64(content.size);
+        entry.crc = content.crc;
+        entry.size = content.size;
+        entry.compressedSize = content.length;
+        writeLocalFileHeader(entry);
+        write(ByteBuffer.wrap(content.data, 0, content.length));
+        addCentralFileHeader(entry);
+        if (signature != null && !JarSignature.isSignatureRelated(name)) {
+            signature.add(name, content.digest != null ? content.digest : digest(content));
+        }
+        if (content.deflated && deflateListener != null) {
+            deflateListener.deflated(name, content.size, content.length, content.nanos);
+        }
+    }
+
+    /**
+     * Computes the CRC of the content of an entry and deflates it, on any thread.
+     *
+     * @param content the content of the entry
+     * @param compress whether the content should be deflated
+     * @param deflater a deflater from {@link #newDeflater()}, which is not used by another thread meanwhile
+     * @return the content as it is written to the archive
+     */
+    static PreparedContent prepare(byte[] content, boolean compress, Deflater deflater) {
+        long start = System.nanoTime();
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        if (!compress) {
+            return new PreparedContent(content, content.length, crc.getValue(), content.length, false, 0);
+        }
+        deflater.reset();
+        deflater.setInput(content);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(BUFFER_SIZE / 16, content.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return new PreparedContent(buffer, length, crc.getValue(), content.length, true, System.nanoTime() - start);
+    }
+
+    /**
+     * @return a deflater with the settings of the entries of this writer
+     */
+    static Deflater newDeflater() {
+        return new Deflater(COMPRESSION_LEVEL, true);
+    }
+
+    /**
+     * Writes the central directory. No entries can be added afterwards.
+     *
+     * @throws IOException if the central directory could not be written
+     */
+    void finish() throws IOException {
+        long centralDirectoryOffset = channel.position();
+        if (centralDirectorySpill != null) {
+            flushSpillBuffer();
+            long size = centralDirectorySpill.position();
+            long transferred = 0;
+            while (transferred < size) {
+                transferred += centralDirectorySpill.transferTo(transferred, size - transferred, channel);
+            }
+            channel.position(centralDirectoryOffset + size);
+        } else {
+            write(ByteBuffer.wrap(centralDirectory.toByteArray()));
+        }
+        centralDirectorySize = channel.position() - centralDirectoryOffset;
+
+        boolean zip64 = forceZip64
+                || entryCount >= MAX_UNSIGNED_SHORT
+                || centralDirectoryOffset >= MAX_UNSIGNED_INT
+                || centralDirectorySize >= MAX_UNSIGNED_INT;
+        if (zip64) {
+            writeZip64EndOfCentralDirectory(centralDirectoryOffset, channel.position());
+        }
+
+        ByteBuffer buffer = allocate(END_OF_CENTRAL_DIRECTORY_SIZE);
+        buffer.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        buffer.putShort((short) 0); // number of this disk
+        buffer.putShort((short) 0); // disk where the central directory starts
+        // the values are in the Zip64 end of central directory
+        buffer.putShort((short) (zip64 ? MAX_UNSIGNED_SHORT : entryCount));
+        buffer.putShort((short) (zip64 ? MAX_UNSIGNED_SHORT : entryCount));
+        buffer.putInt((int) (zip64 ? MAX_UNSIGNED_INT : centralDirectorySize));
+        buffer.putInt((int) (zip64 ? MAX_UNSIGNED_INT : centralDirectoryOffset));
+        buffer.putShort((short) 0); // comment length
+        // called on Buffer, the ByteBuffer overrides of Java 9 are missing on Java 8
+        ((Buffer) buffer).flip();
+        write(buffer);
+    }
+
+    /**
+     * Writes the Zip64 end of central directory record followed by its locator.
+     */
+    private void writeZip64EndOfCentralDirectory(long centralDirectoryOffset, long zip64EndOffset) throws IOException {
+        ByteBuffer buffer = allocate(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE + ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+        buffer.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        // the size of the remaining record
+        buffer.putLong(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE - 12);
+        buffer.putShort((short) (MADE_BY_UNIX | VERSION_ZIP64));
+        buffer.putShort((short) VERSION_ZIP64);
+        buffer.putInt(0); // number of this disk
+        buffer.putInt(0); // disk where the central directory starts
+        buffer.putLong(entryCount);
+        buffer.putLong(entryCount);
+        buffer.putLong(centralDirectorySize);
+        buffer.putLong(centralDirectoryOffset);
+
+        buffer.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+        buffer.putInt(0); // disk of the Zip64 end of central directory
+        buffer.putLong(zip64EndOffset);
+        buffer.putInt(1); // total number of disks
+        ((Buffer) buffer).flip();
+        write(buffer);
+    }
+
+    /**
+     * @return the number of entries written so far
+     */
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the size in bytes of the central directory, available after {@link #finish()}
+     */
+    long getCentralDirectorySize() {
+        return centralDirectorySize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        channel.close();
+    }
+
+    private void deflate() throws IOException {
+        int length = deflater.deflate(outputBuffer, 0, outputBuffer.length);
+        if (length > 0) {
+            write(ByteBuffer.wrap(outputBuffer, 0, length));
+        }
+    }
+
+    /**
+     * @param digest the digest which is updated with the content too, or <code>null</code>
+     */
+    private long crc(FileChannel source, long size, MessageDigest digest) throws IOException {
+        CRC32 crc = new CRC32();
+        try {
+            for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                MappedByteBuffer region = source.map(
+                        FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+                if (digest != null) {
+                    digest.update(region.duplicate());
+                }
+                crc.update(region);
+            }
+        } catch (UnsupportedOperationException e) {
+            // file systems other than the default one, like in-memory ones, may not map files
+            crc.reset();
+            if (digest != null) {
+                digest.reset();
+            }
+            long position = 0;
+            int read;
+            while (position < size
+                    && (read = source.read(
+                                    ByteBuffer.wrap(
+                                            inputBuffer, 0, (int) Math.min(inputBuffer.length, size - position)),
+                                    position))
+                            > 0) {
+                crc.update(inputBuffer, 0, read);
+                if (digest != null) {
+                    digest.update(inputBuffer, 0, read);
+                }
+                position += read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Computes the digest of prepared content which comes without one, inflating it if needed.
+     */
+    private byte[] digest(PreparedContent content) throws IOException {
+        if (!content.deflated) {
+            return signature.digest(Arrays.copyOf(content.data, content.length));
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(content.data, 0, content.length);
+            byte[] uncompressed = new byte[(int) content.size];
+            int length = 0;
+            while (length < uncompressed.length && !inflater.finished()) {
+                int inflated = inflater.inflate(uncompressed, length, uncompressed.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != uncompressed.length) {
+                throw new IOException("The prepared content is shorter than its size");
+            }
+            return signature.digest(uncompressed);
+        } catch (DataFormatException e) {
+            throw new IOException("The prepared content could not be inflated: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return whether an entry of the given size may need 64 bit sizes, including the few bytes deflating
+     *         incompressible data adds
+     */
+    private static boolean mayNeedZip64(long expectedSize) {
+        return expectedSize >= 0 && expectedSize + (expectedSize >>> DEFLATE_OVERHEAD_SHIFT) >= MAX_UNSIGNED_INT;
+    }
+
+    private void writeLocalFileHeader(Entry entry) throws IOException {
+        int zip64ExtraFieldLength = entry.zip64 ? ZIP64_LOCAL_EXTRA_FIELD_SIZE : 0;
+        int alignmentExtraFieldLength = alignmentExtraFieldLength(entry, zip64ExtraFieldLength);
+        int extraFieldLength = zip64ExtraFieldLength + alignmentExtraFieldLength;
+        ByteBuffer buffer = allocate(LOCAL_FILE_HEADER_SIZE + entry.name.length + extraFieldLength);
+        buffer.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        buffer.putShort((short) entry.versionNeeded());
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) entry.method.getCode());
+        buffer.putInt(entry.dosTime);
+        buffer.putInt((int) entry.crc);
+        buffer.putInt((int) (entry.zip64 ? MAX_UNSIGNED_INT : entry.compressedSize));
+        buffer.putInt((int) (entry.zip64 ? MAX_UNSIGNED_INT : entry.size));
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) extraFieldLength);
+        buffer.put(entry.name);
+        if (entry.zip64) {
+            buffer.putShort((short) ZIP64_EXTRA_FIELD_ID);
+            buffer.putShort((short) (ZIP64_LOCAL_EXTRA_FIELD_SIZE - 4));
+            buffer.putLong(entry.size);
+            buffer.putLong(entry.compressedSize);
+        }
+        if (alignmentExtraFieldLength > 0) {
+            buffer.putShort((short) ALIGNMENT_EXTRA_FIELD_ID);
+            buffer.putShort((short) (alignmentExtraFieldLength - 4));
+            buffer.putShort((short) alignment);
+            // the padding is left zeroed
+            ((Buffer) buffer).position(buffer.limit());
+        }
+        ((Buffer) buffer).flip();
+        write(buffer);
+    }
+
+    /**
+     * @return the length of the extra field which makes the data of the entry start on the alignment boundary, or
+     *         <code>0</code> if the entry is not aligned
+     */
+    private int alignmentExtraFieldLength(Entry entry, int precedingExtraFieldLength) {
+        if (alignment == 1 || entry.directory || entry.method != ZipEntryMethod.STORED) {
+            return 0;
+        }
+        long dataOffset = entry.offset
+                + LOCAL_FILE_HEADER_SIZE
+                + entry.name.length
+                + precedingExtraFieldLength
+                + ALIGNMENT_EXTRA_FIELD_SIZE;
+        int padding = (int) ((alignment - dataOffset % alignment) % alignment);
+        return ALIGNMENT_EXTRA_FIELD_SIZE + padding;
+    }
+
+    private void patchLocalFileHeader(Entry entry) throws IOException {
+        if (!entry.zip64 && (entry.size >= MAX_UNSIGNED_INT || entry.compressedSize >= MAX_UNSIGNED_INT)) {
+            throw new IOException("The entry " + entry.nameAsString()
+                    + " is 4 GiB or larger, but its size was not known when its header was written");
+        }
+        ByteBuffer crc = allocate(entry.zip64 ? 4 : 12);
+        crc.putInt((int) entry.crc);
+        if (!entry.zip64) {
+            crc.putInt((int) entry.compressedSize);
+            crc.putInt((int) entry.size);
+        }
+        ((Buffer) crc).flip();
+        patch(crc, entry.offset + LOCAL_FILE_HEADER_CRC_OFFSET);
+        if (entry.zip64) {
+            ByteBuffer sizes = allocate(16);
+            sizes.putLong(entry.size);
+            sizes.putLong(entry.compressedSize);
+            ((Buffer) sizes).flip();
+            // behind the id and data size of the Zip64 extra field
+            patch(sizes, entry.offset + LOCAL_FILE_HEADER_SIZE + entry.name.length + 4);
+        }
+    }
+
+    private void patch(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void addCentralFileHeader(Entry entry) throws IOException {
+        ByteBuffer header = centralFileHeader(entry);
+        entryCount++;
+        if (centralDirectorySpill == null) {
+            centralDirectory.write(header.array(), 0, header.limit());
+            return;
+        }
+        if (header.remaining() > spillBuffer.remaining()) {
+            flushSpillBuffer();
+        }
+        if (header.remaining() > spillBuffer.remaining()) {
+            // a name of almost 64 KiB
+            while (header.hasRemaining()) {
+                centralDirectorySpill.write(header);
+            }
+        } else {
+            spillBuffer.put(header);
+        }
+    }
+
+    private void flushSpillBuffer() throws IOException {
+        ((Buffer) spillBuffer).flip();
+        while (spillBuffer.hasRemaining()) {
+            centralDirectorySpill.write(spillBuffer);
+        }
+        ((Buffer) spillBuffer).clear();
+    }
+
+    private ByteBuffer centralFileHeader(Entry entry) {
+        // the sizes are 64 bit like in the local file header
+        boolean zip64Sizes = entry.zip64 || entry.size >= MAX_UNSIGNED_INT || entry.compressedSize >= MAX_UNSIGNED_INT;
+        boolean zip64Offset = forceZip64 || entry.offset >= MAX_UNSIGNED_INT;
+        int zip64DataSize = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+        int extraFieldLength = zip64DataSize > 0 ? 4 + zip64DataSize : 0;
+        int versionNeeded = zip64DataSize > 0 ? VERSION_ZIP64 : entry.versionNeeded();
+
+        ByteBuffer buffer = allocate(CENTRAL_FILE_HEADER_SIZE + entry.name.length + extraFieldLength);
+        buffer.putInt(CENTRAL_FILE_HEADER_SIGNATURE);
+        buffer.putShort((short) (MADE_BY_UNIX | Math.max(versionNeeded, VERSION_DEFLATED)));
+        buffer.putShort((short) versionNeeded);
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) entry.method.getCode());
+        buffer.putInt(entry.dosTime);
+        buffer.putInt((int) entry.crc);
+        buffer.putInt((int) (zip64Sizes ? MAX_UNSIGNED_INT : entry.compressedSize));
+        buffer.putInt((int) (zip64Sizes ? MAX_UNSIGNED_INT : entry.size));
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) extraFieldLength);
+        buffer.putShort((short) 0); // comment length
+        buffer.putShort((short) 0); // disk number start
+        buffer.putShort((short) 0); // internal attributes
+        buffer.putInt(entry.externalAttributes);
+        buffer.putInt((int) (zip64Offset ? MAX_UNSIGNED_INT : entry.offset));
+        buffer.put(entry.name);
+        if (zip64DataSize > 0) {
+            buffer.putShort((short) ZIP64_EXTRA_FIELD_ID);
+            buffer.putShort((short) zip64DataSize);
+            if (zip64Sizes) {
+                buffer.putLong(entry.size);
+                buffer.putLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                buffer.putLong(entry.offset);
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts a Java time to the MS-DOS date and time format used by zip headers, in the local time zone just like
+     * {@link java.util.zip.ZipEntry#setTime(long)}.
+     */
+    static int toDosTime(long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = dateTime.getYear();
+        if (year < DOS_EPOCH_YEAR) {
+            return DOS_EPOCH;
+        }
+        return (year - DOS_EPOCH_YEAR) << DOS_YEAR_SHIFT
+                | dateTime.getMonthValue() << DOS_MONTH_SHIFT
+                | dateTime.getDayOfMonth() << 16
+                | dateTime.getHour() << 11
+                | dateTime.getMinute() << 5
+                | dateTime.getSecond() >> 1;
+    }
+
+    /**
+     * Notified after an entry has been deflated.
+     */
+    interface DeflateListener {
+        /**
+         * @param name the entry name
+         * @param size the uncompressed size
+         * @param compressedSize the compressed size
+         * @param nanos the time spent reading and deflating the entry
+         */
+        void deflated(String name, long size, long compressedSize, long nanos);
+    }
+
+    /**
+     * The content of an entry read and deflated ahead of the writer.
+     */
+    static final class PreparedContent {
+        private final byte[] data;
+
+        private final int length;
+
+        private final long crc;
+
+        private final long size;
+
+        private final boolean deflated;
+
+        private final long nanos;
+
+        private final byte[] digest;
+
+        PreparedContent(byte[] data, int length, long crc, long size, boolean deflated, long nanos) {
+            this(data, length, crc, size, deflated, nanos, null);
+        }
+
+        private PreparedContent(
+                byte[] data, int length, long crc, long size, boolean deflated, long nanos, byte[] digest) {
+            this.data = data;
+            this.length = length;
+            this.crc = crc;
+            this.size = size;
+            this.deflated = deflated;
+            this.nanos = nanos;
+            this.digest = digest;
+        }
+
+        /**
+         * @param digest the digest of the uncompressed content for the signature, see
+         *            {@link JarSignature#digest(byte[])}
+         * @return this content with the digest
+         */
+        PreparedContent withDigest(byte[] digest) {
+            return new PreparedContent(data, length, crc, size, deflated, nanos, digest);
+        }
+
+        /**
+         * @return the buffer holding the content as it is written, from its start up to {@link #getLength()}
+         */
+        byte[] getData() {
+            return data;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        /**
+         * @return the uncompressed size
+         */
+        long getSize() {
+            return size;
+        }
+
+        boolean isDeflated() {
+            return deflated;
+        }
+    }
+
+    /**
+     * The compression methods written by this class.
+     */
+    enum ZipEntryMethod {
+        STORED(0),
+        DEFLATED(8);
+
+        private final int code;
+
+        ZipEntryMethod(int code) {
+            this.code = code;
+        }
+
+        int getCode() {
+            return code;
+        }
+    }
+
+    /**
+     * The data of an entry, until its central directory record is written.
+     */
+    private static final class Entry {
+        private final byte[] name;
+
+        private final ZipEntryMethod method;
+
+        private final int dosTime;
+
+        private final int externalAttributes;
+
+        private final boolean directory;
+
+        private final long offset;
+
+        private long crc;
+
+        private long compressedSize;
+
+        private long size;
+
+        /**
+         * Whether the local file header has a Zip64 extra field.
+         */
+        private boolean zip64;
+
+        Entry(String name, ZipEntryMethod method, long time, int unixMode, boolean directory, long offset) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.dosTime = toDosTime(time);
+            this.externalAttributes = unixMode << 16 | ((unixMode & 0200) == 0 ? 1 : 0) | (directory ? 0x10 : 0);
+            this.directory = directory;
+            this.offset = offset;
+        }
+
+        int versionNeeded() {
+            if (zip64) {
+                return VERSION_ZIP64;
+            }
+            return method == ZipEntryMethod.DEFLATED ? VERSION_DEFLATED : VERSION_STORED;
+        }
+
+        String nameAsString() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads a file channel from its current position without closing it.
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel source;
+
+        ChannelInputStream(FileChannel source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(single[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return source.read(ByteBuffer.wrap(b, off, len));
+        }
+    }
+}
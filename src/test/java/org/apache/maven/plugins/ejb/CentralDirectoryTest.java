@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CentralDirectoryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void missingDirectoriesShouldBeCounted() throws IOException {
+        File archive = temporaryFolder.newFile("compact.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.setComment("a comment before which the end of the central directory is found");
+            out.putNextEntry(new ZipEntry("org/"));
+            out.putNextEntry(new ZipEntry("org/sample/ejb/AppBean.class"));
+            out.putNextEntry(new ZipEntry("org/sample/ejb/AppSession.class"));
+            out.putNextEntry(new ZipEntry("Root.class"));
+        }
+
+        CentralDirectory centralDirectory = CentralDirectory.read(archive.toPath());
+        Assert.assertEquals(4, centralDirectory.getEntryCount());
+        // org/sample/ and org/sample/ejb/
+        Assert.assertEquals(2, centralDirectory.getMissingDirectoryCount());
+        Assert.assertEquals(46 + 11 + 46 + 15, centralDirectory.getMissingDirectorySize());
+    }
+
+    @Test
+    public void zip64EndShouldBeRead() throws IOException {
+        File archive = temporaryFolder.newFile("many.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < 70000; i++) {
+                out.putNextEntry(new ZipEntry("org/sample/Generated" + i + ".class"));
+            }
+        }
+
+        CentralDirectory centralDirectory = CentralDirectory.read(archive.toPath());
+        Assert.assertEquals(70000, centralDirectory.getEntryCount());
+        Assert.assertEquals(70000, centralDirectory.getEntries().size());
+    }
+
+    @Test
+    public void sizeShouldMatchWrittenCentralDirectory() throws IOException {
+        File archive = temporaryFolder.newFile("written.zip");
+        long writtenSize;
+        try (ZipChannelWriter writer =
+                new ZipChannelWriter(FileChannel.open(archive.toPath(), StandardOpenOption.WRITE))) {
+            writer.putStream(
+                    "a/b.txt", new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), true, 0L, 0100644);
+            writer.finish();
+            writtenSize = writer.getCentralDirectorySize();
+        }
+
+        CentralDirectory centralDirectory = CentralDirectory.read(archive.toPath());
+        Assert.assertEquals(writtenSize, centralDirectory.getSize());
+        Assert.assertEquals(1, centralDirectory.getMissingDirectoryCount());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassLoadProfileTest {
+
+    @Test
+    public void unifiedVerboseClassLogShouldBeParsed() throws IOException {
+        ClassLoadProfile profile =
+                ClassLoadProfile.read(Paths.get("src/test/resources/unit/classloadprofile/verbose-class.log"));
+
+        // java.lang.Object, AppSession and AppBean
+        Assert.assertEquals(3, profile.size());
+        assertOrder(
+                profile,
+                Arrays.asList("org/sample/ejb/AppBean.class", "org/sample/ejb/AppSession.class"),
+                "org/sample/ejb/AppSession.class",
+                "org/sample/ejb/AppBean.class");
+    }
+
+    @Test
+    public void legacyVerboseClassLogShouldBeParsed() throws IOException {
+        ClassLoadProfile profile = parse("[Opened /jdk/jre/lib/rt.jar]", "[Loaded org.sample.B from file:/app.jar]");
+
+        Assert.assertEquals(1, profile.size());
+    }
+
+    @Test
+    public void plainListShouldAcceptClassAndEntryNames() throws IOException {
+        ClassLoadProfile profile = parse("# hot classes", "org.sample.B", "", "org/sample/a.properties", "not a class");
+
+        Assert.assertEquals(2, profile.size());
+        assertOrder(
+                profile,
+                Arrays.asList("org/sample/A.class", "org/sample/a.properties", "org/sample/B.class"),
+                "org/sample/B.class",
+                "org/sample/a.properties",
+                "org/sample/A.class");
+    }
+
+    @Test
+    public void leadingEntriesShouldPrecedeProfile() throws IOException {
+        ClassLoadProfile profile = parse("org.sample.B");
+        Comparator<String> order = profile.entryOrder(Collections.singletonList("META-INF/ejb-jar.xml"));
+
+        List<String> entries = new ArrayList<>(
+                Arrays.asList("org/sample/C.class", "META-INF/ejb-jar.xml", "org/sample/B.class", "A.txt"));
+        entries.sort(order);
+
+        Assert.assertEquals(
+                Arrays.asList("META-INF/ejb-jar.xml", "org/sample/B.class", "A.txt", "org/sample/C.class"), entries);
+    }
+
+    private static ClassLoadProfile parse(String... lines) throws IOException {
+        return ClassLoadProfile.parse(new BufferedReader(new StringReader(String.join("\n", lines))));
+    }
+
+    private static void assertOrder(ClassLoadProfile profile, List<String> entries, String... expected) {
+        List<String> sorted = new ArrayList<>(entries);
+        sorted.sort(profile.entryOrder(Collections.<String>emptyList()));
+        Assert.assertEquals(Arrays.asList(expected), sorted);
+    }
+}
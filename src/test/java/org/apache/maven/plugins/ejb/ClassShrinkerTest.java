@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassShrinkerTest {
+    /**
+     * The sources of a small EJB module, with the EE annotations it uses.
+     */
+    static final Map<String, String> SOURCES = new LinkedHashMap<>();
+
+    static {
+        SOURCES.put(
+                "javax/ejb/Stateless",
+                "package javax.ejb;\n"
+                        + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                        + "public @interface Stateless {\n"
+                        + "    String description() default \"\";\n"
+                        + "}\n");
+        SOURCES.put(
+                "jakarta/enterprise/inject/Stereotype",
+                "package jakarta.enterprise.inject;\n"
+                        + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                        + "public @interface Stereotype {}\n");
+        SOURCES.put(
+                "org/sample/ejb/AppBean",
+                "package org.sample.ejb;\n"
+                        + "@javax.ejb.Stateless(description = \"app\")\n"
+                        + "public class AppBean {\n"
+                        + "    private final java.util.List<Helper> helpers = new java.util.ArrayList<>();\n"
+                        + "    public String loaded() throws Exception {\n"
+                        + "        return Class.forName(\"org.sample.ejb.Loaded\").getName();\n"
+                        + "    }\n"
+                        + "}\n");
+        SOURCES.put("org/sample/ejb/Helper", "package org.sample.ejb;\nclass Helper extends Base {}\n");
+        SOURCES.put("org/sample/ejb/Base", "package org.sample.ejb;\nclass Base {}\n");
+        SOURCES.put("org/sample/ejb/Loaded", "package org.sample.ejb;\nclass Loaded {}\n");
+        SOURCES.put("org/sample/ejb/Unused", "package org.sample.ejb;\nclass Unused {\n    Helper helper;\n}\n");
+        SOURCES.put("org/sample/ejb/Described", "package org.sample.ejb;\npublic class Described {}\n");
+        SOURCES.put("org/sample/ejb/spi/Plugin", "package org.sample.ejb.spi;\npublic class Plugin {}\n");
+        SOURCES.put(
+                "org/sample/ejb/Service",
+                "package org.sample.ejb;\n"
+                        + "@jakarta.enterprise.inject.Stereotype\n"
+                        + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                        + "public @interface Service {}\n");
+        SOURCES.put("org/sample/ejb/Registry", "package org.sample.ejb;\n@Service\npublic class Registry {}\n");
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path classes;
+
+    @Before
+    public void compileClasses() throws Exception {
+        classes = compile(folder.newFolder().toPath());
+    }
+
+    @Test
+    public void unreachableClassesShouldBeFound() throws Exception {
+        ClassShrinker shrinker = newShrinker(false);
+        shrinker.addResource(
+                "META-INF/ejb-jar.xml",
+                "<ejb-jar><ejb-class>org.sample.ejb.Described</ejb-class></ejb-jar>".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(SOURCES.size(), shrinker.size());
+        Assert.assertFalse(shrinker.isKeepingAll());
+        Assert.assertEquals(
+                new TreeSet<>(Arrays.asList("org/sample/ejb/Unused.class", "org/sample/ejb/spi/Plugin.class")),
+                shrinker.unreachable());
+    }
+
+    @Test
+    public void keptAndProvidedClassesShouldBeReached() throws Exception {
+        ClassShrinker shrinker = newShrinker(true);
+        shrinker.addResource("META-INF/services/org.sample.ejb.Described", "# none\n".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("org/sample/ejb/Unused.class")), shrinker.unreachable());
+    }
+
+    @Test
+    public void beansDiscoveringAllClassesShouldKeepAll() throws Exception {
+        ClassShrinker shrinker = newShrinker(false);
+        shrinker.addResource(
+                "META-INF/beans.xml",
+                "<beans bean-discovery-mode=\"all\" version=\"3.0\"/>".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertTrue(shrinker.isKeepingAll());
+        Assert.assertTrue(shrinker.unreachable().isEmpty());
+
+        ClassShrinker annotated = newShrinker(false);
+        annotated.addResource(
+                "META-INF/beans.xml",
+                "<beans bean-discovery-mode = \"annotated\" version=\"3.0\"/>".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(annotated.isKeepingAll());
+    }
+
+    @Test
+    public void beansWithoutDiscoveryModeShouldBeReadByVersion() throws Exception {
+        String javaee = "xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\"";
+        String jakartaee = "xmlns=\"https://jakarta.ee/xml/ns/jakartaee\"";
+        Assert.assertTrue(keepsAll("<beans " + javaee + " version=\"1.1\"/>", true));
+        Assert.assertTrue(keepsAll("<beans " + javaee + "/>", true));
+        Assert.assertTrue(keepsAll("<beans " + jakartaee + " version=\"3.0\"></beans>", true));
+        Assert.assertFalse(keepsAll("<beans " + jakartaee + " version=\"4.0\"/>", false));
+        Assert.assertFalse(keepsAll("<!-- <beans version=\"1.1\"/> -->\n<beans " + jakartaee + "/>", false));
+        Assert.assertFalse(keepsAll(
+                "<cdi:beans xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                        + " xmlns:cdi=\"https://jakarta.ee/xml/ns/jakartaee\"/>",
+                false));
+        Assert.assertTrue(keepsAll("<beans bean-discovery-mode='all' " + jakartaee + " version=\"4.0\"/>", true));
+
+        // an empty file is read by the namespace of the jar
+        Assert.assertTrue(keepsAll("", false));
+        Assert.assertTrue(keepsAll("<?xml version=\"1.0\"?>\n<beans/>", false));
+        Assert.assertFalse(keepsAll("", true));
+        Assert.assertFalse(keepsAll("<?xml version=\"1.0\"?>\n<beans/>", true));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidClassShouldBeRejected() throws Exception {
+        new ClassShrinker().addClass("org/sample/ejb/AppBean.class", new byte[] {1, 2, 3}, false);
+    }
+
+    /**
+     * @param keepPlugins whether the classes of the <code>spi</code> package are kept
+     */
+    private ClassShrinker newShrinker(boolean keepPlugins) throws IOException {
+        ClassShrinker shrinker = new ClassShrinker();
+        for (String name : classNames(classes)) {
+            shrinker.addClass(name, Files.readAllBytes(classes.resolve(name)), keepPlugins && name.contains("/spi/"));
+        }
+        return shrinker;
+    }
+
+    /**
+     * @param jakartaNamespace whether the jar is built for the <code>jakarta</code> namespace
+     * @return whether the <code>beans.xml</code> keeps all classes
+     */
+    private static boolean keepsAll(String beansXml, boolean jakartaNamespace) {
+        ClassShrinker shrinker = new ClassShrinker(jakartaNamespace);
+        shrinker.addResource("META-INF/beans.xml", beansXml.getBytes(StandardCharsets.UTF_8));
+        return shrinker.isKeepingAll();
+    }
+
+    /**
+     * Compiles {@link #SOURCES}.
+     *
+     * @param directory the directory to compile in
+     * @return the directory of the class files
+     */
+    static Path compile(Path directory) throws IOException {
+        Path sources = Files.createDirectories(directory.resolve("sources"));
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        List<String> arguments = new ArrayList<>(Arrays.asList("-d", classes.toString()));
+        for (Map.Entry<String, String> source : SOURCES.entrySet()) {
+            Path file = sources.resolve(source.getKey() + ".java");
+            Files.createDirectories(file.getParent());
+            Files.write(file, source.getValue().getBytes(StandardCharsets.UTF_8));
+            arguments.add(file.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        Assert.assertEquals(errors.toString(), 0, result);
+        return classes;
+    }
+
+    /**
+     * @return the entry names of the class files in the directory
+     */
+    static List<String> classNames(Path classes) throws IOException {
+        try (Stream<Path> files = Files.walk(classes)) {
+            return files.filter(file -> file.toString().endsWith(".class"))
+                    .map(file -> classes.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
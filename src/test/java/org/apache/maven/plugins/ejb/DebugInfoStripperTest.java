@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DebugInfoStripperTest {
+    static final String SOURCE = "package org.sample.ejb;\n"
+            + "public class AppStub implements java.util.function.Supplier<StackTraceElement> {\n"
+            + "    private final java.util.List<String> names = new java.util.ArrayList<>();\n"
+            + "    public StackTraceElement get() {\n"
+            + "        String name = \"stub\";\n"
+            + "        names.add(name);\n"
+            + "        try {\n"
+            + "            throw new IllegalStateException(name);\n"
+            + "        } catch (IllegalStateException e) {\n"
+            + "            return e.getStackTrace()[0];\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void allDebugAttributesShouldBeStripped() throws Exception {
+        byte[] original = compile(folder.newFolder().toPath());
+        byte[] stripped = new DebugInfoStripper(DebugInfoStripper.ATTRIBUTES)
+                .transform("org/sample/ejb/AppStub.class", 0L, original);
+
+        Assert.assertTrue(stripped.length < original.length);
+        StackTraceElement element = call(stripped);
+        Assert.assertNull(element.getFileName());
+        Assert.assertTrue(element.getLineNumber() < 0);
+        Assert.assertEquals("get", element.getMethodName());
+
+        StackTraceElement unstripped = call(original);
+        Assert.assertEquals("AppStub.java", unstripped.getFileName());
+        Assert.assertEquals(8, unstripped.getLineNumber());
+    }
+
+    @Test
+    public void selectedAttributesShouldBeStripped() throws Exception {
+        byte[] original = compile(folder.newFolder().toPath());
+        byte[] stripped = new DebugInfoStripper(Arrays.asList("LocalVariableTable", "LocalVariableTypeTable"))
+                .transform("org/sample/ejb/AppStub.class", 0L, original);
+
+        Assert.assertTrue(stripped.length < original.length);
+        StackTraceElement element = call(stripped);
+        Assert.assertEquals("AppStub.java", element.getFileName());
+        Assert.assertEquals(8, element.getLineNumber());
+    }
+
+    @Test
+    public void unchangedClassShouldBeReturnedAsItIs() throws Exception {
+        byte[] original = compile(folder.newFolder().toPath());
+        byte[] stripped = new DebugInfoStripper(DebugInfoStripper.ATTRIBUTES)
+                .transform("org/sample/ejb/AppStub.class", 0L, original);
+
+        Assert.assertSame(
+                stripped,
+                new DebugInfoStripper(DebugInfoStripper.ATTRIBUTES)
+                        .transform("org/sample/ejb/AppStub.class", 0L, stripped));
+        Assert.assertTrue(
+                new DebugInfoStripper(DebugInfoStripper.ATTRIBUTES).transforms("org/sample/ejb/AppStub.class"));
+        Assert.assertFalse(new DebugInfoStripper(DebugInfoStripper.ATTRIBUTES).transforms("META-INF/ejb-jar.xml"));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidClassShouldBeRejected() throws Exception {
+        new DebugInfoStripper(DebugInfoStripper.ATTRIBUTES)
+                .transform("org/sample/ejb/AppStub.class", 0L, "stub".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiredAttributeShouldBeRejected() {
+        new DebugInfoStripper(Collections.singletonList("StackMapTable"));
+    }
+
+    /**
+     * Compiles {@link #SOURCE} with all debug information.
+     *
+     * @param directory the directory to compile in
+     * @return the class file of <code>org.sample.ejb.AppStub</code>
+     */
+    static byte[] compile(Path directory) throws IOException {
+        Path source = directory.resolve("AppStub.java");
+        Files.write(source, SOURCE.getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, "-g", "-d", directory.toString(), source.toString());
+        Assert.assertEquals(errors.toString(), 0, result);
+        return Files.readAllBytes(directory.resolve("org/sample/ejb/AppStub.class"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StackTraceElement call(byte[] classFile) throws Exception {
+        Class<?> type = new ClassFileLoader().define(classFile);
+        return ((Supplier<StackTraceElement>) type.getConstructor().newInstance()).get();
+    }
+
+    private static final class ClassFileLoader extends ClassLoader {
+        Class<?> define(byte[] classFile) {
+            return defineClass(null, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeflateCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Deflater deflater = ZipChannelWriter.newDeflater();
+
+    private final List<String> warnings = new ArrayList<>();
+
+    private final Log log = new SystemStreamLog() {
+        @Override
+        public void warn(CharSequence content) {
+            warnings.add(content.toString());
+        }
+    };
+
+    @After
+    public void endDeflater() {
+        deflater.end();
+    }
+
+    @Test
+    public void cachedContentShouldBeDeflatedContent() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        byte[] content = content("shared DTO");
+        ZipChannelWriter.PreparedContent expected = ZipChannelWriter.prepare(content, true, deflater);
+
+        PackagingProfile profile = new PackagingProfile("org.sample:sample-ejb", "1.0", null);
+        for (int build = 0; build < 2; build++) {
+            DeflateCache cache = new DeflateCache(directory, Long.MAX_VALUE, profile, log);
+            ZipChannelWriter.PreparedContent deflated = cache.deflate(content, deflater);
+
+            Assert.assertTrue(deflated.isDeflated());
+            Assert.assertEquals(expected.getCrc(), deflated.getCrc());
+            Assert.assertEquals(expected.getSize(), deflated.getSize());
+            Assert.assertArrayEquals(
+                    Arrays.copyOf(expected.getData(), expected.getLength()),
+                    Arrays.copyOf(deflated.getData(), deflated.getLength()));
+        }
+        Assert.assertEquals(1, profile.getCacheHits(DeflateCache.NAME));
+        Assert.assertEquals(1, entries(directory).size());
+    }
+
+    @Test
+    public void cacheShouldWorkOnInMemoryFileSystem() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            Path directory = fileSystem.getPath("/cache");
+            byte[] content = content("in memory");
+            PackagingProfile profile = new PackagingProfile("org.sample:sample-ejb", "1.0", null);
+            new DeflateCache(directory, Long.MAX_VALUE, profile, log).deflate(content, deflater);
+            DeflateCache cache = new DeflateCache(directory, 0, profile, log);
+            cache.deflate(content, deflater);
+            Assert.assertEquals(1, profile.getCacheHits(DeflateCache.NAME));
+
+            cache.deflate(content("stored"), deflater);
+            cache.trim();
+            Assert.assertTrue(entries(directory).isEmpty());
+        }
+    }
+
+    @Test
+    public void brokenEntryShouldBeReplaced() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        byte[] content = content("generated resource");
+        new DeflateCache(directory, Long.MAX_VALUE, null, log).deflate(content, deflater);
+        Path entry = entries(directory).get(0);
+        Files.write(entry, new byte[] {1, 2, 3});
+
+        ZipChannelWriter.PreparedContent deflated =
+                new DeflateCache(directory, Long.MAX_VALUE, null, log).deflate(content, deflater);
+
+        ZipChannelWriter.PreparedContent expected = ZipChannelWriter.prepare(content, true, deflater);
+        Assert.assertArrayEquals(
+                Arrays.copyOf(expected.getData(), expected.getLength()),
+                Arrays.copyOf(deflated.getData(), deflated.getLength()));
+        Assert.assertTrue(Files.size(entry) > 3);
+    }
+
+    @Test
+    public void corruptedOrTruncatedEntryShouldBeMissed() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        byte[] content = content("corrupted resource");
+        ZipChannelWriter.PreparedContent expected = ZipChannelWriter.prepare(content, true, deflater);
+        new DeflateCache(directory, Long.MAX_VALUE, null, log).deflate(content, deflater);
+        Path entry = entries(directory).get(0);
+        byte[] stored = Files.readAllBytes(entry);
+
+        byte[] corrupted = stored.clone();
+        corrupted[corrupted.length - 1] ^= 1;
+        byte[] truncated = Arrays.copyOf(stored, stored.length - 1);
+        for (byte[] broken : Arrays.asList(corrupted, truncated)) {
+            Files.write(entry, broken);
+            PackagingProfile profile = new PackagingProfile("org.sample:sample-ejb", "1.0", null);
+            ZipChannelWriter.PreparedContent deflated =
+                    new DeflateCache(directory, Long.MAX_VALUE, profile, log).deflate(content, deflater);
+
+            Assert.assertEquals(0, profile.getCacheHits(DeflateCache.NAME));
+            Assert.assertArrayEquals(
+                    Arrays.copyOf(expected.getData(), expected.getLength()),
+                    Arrays.copyOf(deflated.getData(), deflated.getLength()));
+            Assert.assertArrayEquals(stored, Files.readAllBytes(entry));
+        }
+    }
+
+    @Test
+    public void entryShouldBeKeyedByDeflater() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        new DeflateCache(directory, Long.MAX_VALUE, null, log).deflate(content("keyed"), deflater);
+
+        Assert.assertEquals(16, DeflateCache.DEFLATER_IDENTITY.length());
+        String name = entries(directory).get(0).getFileName().toString();
+        Assert.assertTrue(name, name.endsWith("-" + DeflateCache.DEFLATER_IDENTITY + ".deflated"));
+    }
+
+    @Test
+    public void trimShouldRemoveLeastRecentlyUsedEntries() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        DeflateCache filling = new DeflateCache(directory, Long.MAX_VALUE, null, log);
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            byte[] content = content("class " + i);
+            contents.add(content);
+            filling.deflate(content, deflater);
+        }
+        List<Path> entries = entries(directory);
+        long entrySize = Files.size(entries.get(0));
+        long time = System.currentTimeMillis() - 60_000;
+        for (Path entry : entries) {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(time));
+        }
+
+        // using an entry makes it the most recently used
+        DeflateCache cache = new DeflateCache(directory, 2 * entrySize, null, log);
+        cache.deflate(contents.get(0), deflater);
+        cache.deflate(content("class 4"), deflater);
+        cache.trim();
+
+        List<Path> kept = entries(directory);
+        Assert.assertEquals(2, kept.size());
+        PackagingProfile profile = new PackagingProfile("org.sample:sample-ejb", "1.0", null);
+        DeflateCache trimmed = new DeflateCache(directory, Long.MAX_VALUE, profile, log);
+        trimmed.deflate(contents.get(0), deflater);
+        trimmed.deflate(content("class 4"), deflater);
+        Assert.assertEquals(2, profile.getCacheHits(DeflateCache.NAME));
+    }
+
+    @Test
+    public void readOnlyDirectoryShouldDeflateWithoutCache() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        Assume.assumeTrue(directory.setWritable(false, false));
+        try {
+            Assume.assumeFalse("permissions are not enforced for the user", Files.isWritable(directory.toPath()));
+            assertDeflatedWithoutCache(directory.toPath());
+            Assert.assertEquals(0, entries(directory.toPath()).size());
+        } finally {
+            directory.setWritable(true, false);
+        }
+    }
+
+    @Test
+    public void unwritableEntryShouldDeflateWithoutCache() throws Exception {
+        // a file in the way of the directory fails the writes like a read-only directory, also for the superuser
+        Path directory = temporaryFolder.newFile().toPath();
+        assertDeflatedWithoutCache(directory);
+        Assert.assertEquals(0, Files.size(directory));
+    }
+
+    private void assertDeflatedWithoutCache(Path directory) {
+        PackagingProfile profile = new PackagingProfile("org.sample:sample-ejb", "1.0", null);
+        DeflateCache cache = new DeflateCache(directory, Long.MAX_VALUE, profile, log);
+        for (String line : Arrays.asList("first", "second")) {
+            byte[] content = content(line);
+            ZipChannelWriter.PreparedContent expected = ZipChannelWriter.prepare(content, true, deflater);
+            ZipChannelWriter.PreparedContent deflated = cache.deflate(content, deflater);
+            Assert.assertArrayEquals(
+                    Arrays.copyOf(expected.getData(), expected.getLength()),
+                    Arrays.copyOf(deflated.getData(), deflated.getLength()));
+        }
+        Assert.assertEquals(0, profile.getCacheHits(DeflateCache.NAME));
+        Assert.assertEquals("the first failure is warned about", 1, warnings.size());
+        Assert.assertTrue(warnings.get(0), warnings.get(0).startsWith("Could not store "));
+    }
+
+    private static byte[] content(String line) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append(line).append('\n');
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> entries(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".deflated")).collect(Collectors.toList());
+        }
+    }
+}
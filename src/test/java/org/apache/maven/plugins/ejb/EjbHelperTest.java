@@ -19,11 +19,21 @@
 package org.apache.maven.plugins.ejb;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class EjbHelperTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Test
     public void validClassifier() {
@@ -74,4 +84,30 @@ public class EjbHelperTest {
     public void getJarFileNameShouldReturnFileNameWithClassifier() {
         Assert.assertEquals(EjbHelper.getJarFile(new File("base"), "test", "alpha"), new File("base/test-alpha.jar"));
     }
+
+    @Test
+    public void replaceFileShouldMoveSourceOverTargetOnInMemoryFileSystem() throws Exception {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            Path source = Files.write(fileSystem.getPath("/source"), "new".getBytes(StandardCharsets.UTF_8));
+            Path target = Files.write(fileSystem.getPath("/target"), "old".getBytes(StandardCharsets.UTF_8));
+
+            EjbHelper.replaceFile(source, target);
+
+            Assert.assertFalse(Files.exists(source));
+            Assert.assertEquals("new", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void replaceFileShouldMoveSourceOverTarget() throws Exception {
+        File source = temporaryFolder.newFile("source");
+        File target = temporaryFolder.newFile("target");
+        Files.write(source.toPath(), "new".getBytes(StandardCharsets.UTF_8));
+        Files.write(target.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+
+        EjbHelper.replaceFile(source, target);
+
+        Assert.assertFalse(source.exists());
+        Assert.assertEquals("new", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+    }
 }
@@ -18,18 +18,47 @@
  */
 package org.apache.maven.plugins.ejb;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.apache.maven.plugins.ejb.stub.MavenProjectResourcesStub;
 import org.apache.maven.plugins.ejb.utils.JarContentChecker;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 
 /**
  * EJB plugin Test Case
@@ -39,6 +68,10 @@ public class EjbMojoTest extends AbstractMojoTestCase {
 
     static final String DEFAULT_JAR_NAME = "testJar";
 
+    private static final int CONCURRENT_PROJECTS = 4;
+
+    private static final int CONCURRENT_RUNS = 2;
+
     /**
      * check test environment
      *
@@ -422,44 +455,75 @@ public class EjbMojoTest extends AbstractMojoTestCase {
     }
 
     /**
-     * Tests if the mojo throws an exception when the EJB version is &lt; 3.0 and no deployment descriptor is present.
-     * The case with deployment descriptor present is covered by previous tests.
+     * Jar creation test through the NIO archiver with uncompressed entries.
      *
      * @throws Exception if any exception occurs
      */
-    public void testEjbComplianceVersionTwoDotOneWithoutDescriptor() throws Exception {
-        final MavenProjectResourcesStub project = createTestProject("compliance-nodescriptor-2.1");
+    public void testNioArchiverWithClientJar() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("nio-archiver");
         final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
 
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+
         // put this on the root dir
         project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
 
         // start creating the environment
         project.setupBuildEnvironment();
 
-        setVariableValueToObject(mojo, "generateClient", Boolean.FALSE);
+        MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+        archive.setCompress(false);
+
+        setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
         setVariableValueToObject(mojo, "ejbVersion", "2.1");
+        setVariableValueToObject(mojo, "archiverBackend", "nio");
+        setVariableValueToObject(mojo, "archive", archive);
 
-        try {
-            mojo.execute();
-            fail("Exception should be thrown: No deployment descriptor present.");
-        } catch (MojoExecutionException e) {
-            // OK
+        mojo.execute();
+
+        assertJarCreation(project, true, true);
+        assertJarContent(
+                project,
+                new String[] {
+                    "META-INF/MANIFEST.MF",
+                    "META-INF/ejb-jar.xml",
+                    "META-INF/maven/org.apache.maven.test/maven-test-plugin/pom.xml",
+                    "META-INF/maven/org.apache.maven.test/maven-test-plugin/pom.properties",
+                    "org/sample/ejb/AppBean.class",
+                    "org/sample/ejb/AppStub.class"
+                },
+                null);
+        assertClientJarContent(
+                project,
+                new String[] {"META-INF/MANIFEST.MF", "org/sample/ejb/AppStub.class"},
+                new String[] {"org/sample/ejb/AppBean.class"});
+
+        try (JarFile jarFile = new JarFile(project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + ".jar")) {
+            assertNotNull(jarFile.getManifest());
+            assertEquals(
+                    ZipEntry.STORED,
+                    jarFile.getEntry("org/sample/ejb/AppBean.class").getMethod());
+            assertTrue(jarFile.getEntry("org/sample/ejb/").isDirectory());
         }
     }
 
     /**
-     * Tests if the jar is created under EJB version 3.0 with deployment descriptor present.
+     * Entry order driven by a class-load profile.
      *
      * @throws Exception if any exception occurs
      */
-    public void testEjbComplianceVersionThreeWithDescriptor() throws Exception {
-
-        final MavenProjectResourcesStub project = createTestProject("compliance-descriptor-3");
+    public void testClassLoadProfileOrdersEntries() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("class-load-profile");
         final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
 
-        // put this on the target dir
+        // put this on the target output dir
         project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppCMP.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppSession.class", MavenProjectResourcesStub.OUTPUT_FILE);
 
         // put this on the root dir
         project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
@@ -468,151 +532,1430 @@ public class EjbMojoTest extends AbstractMojoTestCase {
         project.setupBuildEnvironment();
 
         setVariableValueToObject(mojo, "generateClient", Boolean.FALSE);
-        setVariableValueToObject(mojo, "ejbVersion", "3.0");
+        setVariableValueToObject(mojo, "ejbVersion", "2.1");
+        setVariableValueToObject(mojo, "archiverBackend", "nio");
+        setVariableValueToObject(
+                mojo,
+                "classLoadProfile",
+                new File(getBasedir(), "src/test/resources/unit/classloadprofile/verbose-class.log"));
 
         mojo.execute();
 
-        assertJarCreation(project, true, false);
+        List<String> files = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + ".jar")) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                if (!entry.isDirectory()) {
+                    files.add(entry.getName());
+                }
+            }
+        }
+        assertEquals(
+                Arrays.asList(
+                        "META-INF/MANIFEST.MF",
+                        "META-INF/ejb-jar.xml",
+                        "org/sample/ejb/AppSession.class",
+                        "org/sample/ejb/AppBean.class"),
+                files.subList(0, 4));
     }
 
     /**
-     * Tests if the jar is created under EJB version 3.0 without deployment descriptor present.
+     * Package index written by the NIO archiver for both the EJB and the client jar.
      *
      * @throws Exception if any exception occurs
      */
-    public void testEjbCompliance_3_0_WithoutDescriptor() throws Exception {
-        final MavenProjectResourcesStub project = createTestProject("compliance-nodescriptor-3");
+    public void testNioArchiverWritesPackageIndex() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("nio-index");
         final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
 
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/impl/AppSessionBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+
         // put this on the root dir
         project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
 
         // start creating the environment
         project.setupBuildEnvironment();
 
-        setVariableValueToObject(mojo, "generateClient", Boolean.FALSE);
-        setVariableValueToObject(mojo, "ejbVersion", "3.0");
+        MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+        archive.setIndex(true);
+
+        setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+        setVariableValueToObject(mojo, "ejbVersion", "2.1");
+        setVariableValueToObject(mojo, "archiverBackend", "nio");
+        setVariableValueToObject(mojo, "archive", archive);
 
         mojo.execute();
 
-        assertJarCreation(project, true, false);
+        assertEquals(
+                Arrays.asList(
+                        "JarIndex-Version: 1.0",
+                        "",
+                        DEFAULT_JAR_NAME + ".jar",
+                        "org/sample/ejb",
+                        "org/sample/ejb/impl"),
+                readIndex(project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + ".jar"));
+        assertEquals(
+                Arrays.asList("JarIndex-Version: 1.0", "", DEFAULT_JAR_NAME + "-client.jar", "org/sample/ejb"),
+                readIndex(project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-client.jar"));
     }
 
-    public void testEjb1VersionValidation() {
-        try {
-            EjbMojo.validateEjbVersion("1.1");
-            fail("MojoException is expected");
-        } catch (MojoExecutionException mex) {
+    private static List<String> readIndex(String jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            JarEntry index = jarFile.getJarEntry("META-INF/INDEX.LIST");
+            assertNotNull("META-INF/INDEX.LIST in " + jar, index);
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(jarFile.getInputStream(index), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            // drop the trailing blank line which ends the section
+            return lines.subList(0, lines.size() - 1);
         }
     }
 
-    public void testEjb2VersionValidation() throws MojoExecutionException {
-        EjbMojo.validateEjbVersion("2.1");
-    }
+    /**
+     * Stored entries aligned for memory-mapping, reproducible with outputTimestamp.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testStoredEntryAlignmentIsReproducible() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("stored-entry-alignment");
 
-    public void testEjb3VersionValidation() throws MojoExecutionException {
-        EjbMojo.validateEjbVersion("3.2");
-    }
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/resources/messages.properties", MavenProjectResourcesStub.OUTPUT_FILE);
 
-    public void testEjb4VersionValidation() throws MojoExecutionException {
-        EjbMojo.validateEjbVersion("4.0");
-    }
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
 
-    protected EjbMojo lookupMojo() throws Exception {
-        File pomFile = new File(getBasedir(), DEFAULT_POM_PATH);
-        EjbMojo mojo = (EjbMojo) lookupMojo("ejb", pomFile);
+        // start creating the environment
+        project.setupBuildEnvironment();
 
-        assertNotNull(mojo);
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        byte[] firstBuild = null;
+        for (int build = 0; build < 2; build++) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+            archive.setCompress(false);
 
-        return mojo;
-    }
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "2.1");
+            setVariableValueToObject(mojo, "storedEntryAlignment", 4096);
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+            setVariableValueToObject(mojo, "archive", archive);
 
-    protected MavenProjectResourcesStub createTestProject(final String testName) throws Exception {
-        // this will automatically create the isolated
-        // test environment
-        return new MavenProjectResourcesStub(testName);
+            mojo.execute();
+
+            if (firstBuild == null) {
+                firstBuild = Files.readAllBytes(jar.toPath());
+                project.getArtifact().setFile(null);
+            } else {
+                assertTrue(Arrays.equals(firstBuild, Files.readAllBytes(jar.toPath())));
+            }
+        }
+
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        for (File archive : Arrays.asList(jar, clientJar)) {
+            Map<String, Long> offsets = ZipChannelWriterTest.storedDataOffsets(archive);
+            assertTrue(offsets.containsKey("org/sample/ejb/AppStub.class"));
+            for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+                assertEquals(offset.getKey(), 0, offset.getValue() % 4096);
+            }
+        }
     }
 
-    protected void setupDefaultProject(final MavenProjectResourcesStub project) throws Exception {
-        // put this on the target dir
+    /**
+     * Tests that streaming the source directory writes the same EJB and client jars as the NIO archiver, both in the
+     * order of the file system and sorted for a reproducible build.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testStreamingPackagingWritesSameJars() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("streaming-packaging");
+
+        // put this on the target output dir
         project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppSession.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/resources/messages.properties", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample-api/Api.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/package.html", MavenProjectResourcesStub.OUTPUT_FILE);
+
         // put this on the root dir
         project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
         // start creating the environment
         project.setupBuildEnvironment();
+
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        for (String outputTimestamp : Arrays.asList("2022-04-18T19:35:30Z", null)) {
+            List<Object> nioJars = null;
+            for (boolean streaming : new boolean[] {false, true}) {
+                final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+                setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+                setVariableValueToObject(mojo, "ejbVersion", "2.1");
+                setVariableValueToObject(mojo, "archiverBackend", "nio");
+                setVariableValueToObject(mojo, "streamingPackaging", streaming);
+                setVariableValueToObject(mojo, "outputTimestamp", outputTimestamp);
+
+                mojo.execute();
+                project.getArtifact().setFile(null);
+
+                // without a timestamp the entry times and the order of the file system differ between builds
+                List<Object> jars = outputTimestamp != null
+                        ? Arrays.asList(
+                                entryNames(jar),
+                                entryNames(clientJar),
+                                Arrays.toString(Files.readAllBytes(jar.toPath())),
+                                Arrays.toString(Files.readAllBytes(clientJar.toPath())))
+                        : Arrays.asList(new TreeSet<>(entryNames(jar)), new TreeSet<>(entryNames(clientJar)));
+                if (nioJars == null) {
+                    nioJars = jars;
+                } else {
+                    assertEquals(nioJars, jars);
+                }
+            }
+        }
+        assertClientJarContent(
+                project,
+                new String[] {"META-INF/ejb-jar.xml", "org/sample/ejb/AppStub.class", "org/sample-api/Api.class"},
+                new String[] {"org/sample/ejb/AppBean.class", "org/sample/ejb/package.html"});
+        assertEquals(
+                "the temporary files should be deleted",
+                new TreeSet<>(Arrays.asList(DEFAULT_JAR_NAME + ".jar", DEFAULT_JAR_NAME + "-client.jar")),
+                new TreeSet<>(Arrays.asList(
+                        new File(project.getBuild().getDirectory()).list((dir, name) -> name.contains(".jar")))));
     }
 
-    protected EjbMojo lookupMojoWithSettings(
-            final MavenProject project, List<String> clientIncludes, List<String> clientExcludes, List<String> excludes)
-            throws Exception {
-        final EjbMojo mojo = lookupMojo();
-        setVariableValueToObject(mojo, "project", project);
-        setVariableValueToObject(
-                mojo, "outputDirectory", new File(project.getBuild().getDirectory()));
-        setVariableValueToObject(
-                mojo, "sourceDirectory", new File(project.getBuild().getOutputDirectory()));
-        setVariableValueToObject(mojo, "jarName", DEFAULT_JAR_NAME);
-        setVariableValueToObject(mojo, "ejbJar", EjbMojo.DEFAULT_EJBJAR);
-        setVariableValueToObject(mojo, "clientExcludes", clientExcludes);
-        setVariableValueToObject(mojo, "clientIncludes", clientIncludes);
-        setVariableValueToObject(mojo, "excludes", excludes);
-        setVariableValueToObject(mojo, "clientClassifier", EjbMojo.DEFAULT_CLIENT_CLASSIFIER);
+    /**
+     * Reading files ahead of the NIO writer should not change the jars.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testReadAheadWritesSameJars() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("read-ahead");
 
-        return mojo;
-    }
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppSession.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/resources/messages.properties", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample-api/Api.class", MavenProjectResourcesStub.OUTPUT_FILE);
 
-    protected EjbMojo lookupMojoWithDefaultSettings(final MavenProject project) throws Exception {
-        return lookupMojoWithSettings(project, new LinkedList<String>(), new LinkedList<String>(), null);
-    }
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
 
-    protected void assertJarCreation(
-            final MavenProject project, boolean ejbJarCreated, boolean ejbClientJarCreated, String classifier) {
-        String checkedJarFile;
-        String checkedClientJarFile;
+        // start creating the environment
+        project.setupBuildEnvironment();
 
-        if (classifier == null) {
-            checkedJarFile = project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + ".jar";
-            checkedClientJarFile = project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-client.jar";
-        } else {
-            checkedJarFile = project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-" + classifier + ".jar";
-            checkedClientJarFile =
-                    project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-" + classifier + "-client.jar";
-        }
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        List<byte[]> nioJars = null;
+        for (int readAheadSize : new int[] {0, 1}) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "2.1");
+            setVariableValueToObject(mojo, "archiverBackend", "nio");
+            setVariableValueToObject(mojo, "readAheadSize", readAheadSize);
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
 
-        assertEquals("Invalid value for ejb-jar creation", ejbJarCreated, FileUtils.fileExists(checkedJarFile));
-        assertEquals(
-                "Invalid value for ejb-jar client creation",
-                ejbClientJarCreated,
-                FileUtils.fileExists(checkedClientJarFile));
+            mojo.execute();
+            project.getArtifact().setFile(null);
+
+            List<byte[]> jars = Arrays.asList(Files.readAllBytes(jar.toPath()), Files.readAllBytes(clientJar.toPath()));
+            if (nioJars == null) {
+                nioJars = jars;
+            } else {
+                assertTrue(Arrays.equals(nioJars.get(0), jars.get(0)));
+                assertTrue(Arrays.equals(nioJars.get(1), jars.get(1)));
+            }
+        }
+        assertJarContent(
+                project,
+                new String[] {
+                    "META-INF/MANIFEST.MF",
+                    "META-INF/ejb-jar.xml",
+                    "org/sample/ejb/AppBean.class",
+                    "org/sample/ejb/AppStub.class",
+                    "org/sample/ejb/AppSession.class",
+                    "org/sample/ejb/resources/messages.properties",
+                    "org/sample-api/Api.class"
+                },
+                null);
     }
 
-    protected void assertJarCreation(final MavenProject project, boolean ejbJarCreated, boolean ejbClientJarCreated) {
-        assertJarCreation(project, ejbJarCreated, ejbClientJarCreated, null);
+    /**
+     * With the plexus entry layout, the plexus and the NIO archiver write the same EJB and client jars for the same
+     * reproducible settings, whichever writes which jar.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testArchiverBackendsWriteSameJars() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("archiver-backends");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", "<ejb-jar/>", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", "bean bean bean bean", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", "stub", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile(
+                "org/sample/ejb/resources/messages.properties",
+                "greeting=hello",
+                MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample-api/Api.class", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        List<byte[]> plexusJars = null;
+        String[][] backends = {{"plexus", null}, {"nio", null}, {"plexus", "nio"}, {"nio", "plexus"}};
+        for (String[] backend : backends) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "3.2");
+            setVariableValueToObject(mojo, "archiverBackend", backend[0]);
+            setVariableValueToObject(mojo, "clientArchiverBackend", backend[1]);
+            setVariableValueToObject(mojo, "plexusEntryLayout", Boolean.TRUE);
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+
+            mojo.execute();
+            project.getArtifact().setFile(null);
+
+            List<byte[]> jars = Arrays.asList(Files.readAllBytes(jar.toPath()), Files.readAllBytes(clientJar.toPath()));
+            if (plexusJars == null) {
+                plexusJars = jars;
+            } else {
+                String written = Arrays.toString(backend);
+                assertTrue("the EJB jar of " + written, Arrays.equals(plexusJars.get(0), jars.get(0)));
+                assertTrue("the client jar of " + written, Arrays.equals(plexusJars.get(1), jars.get(1)));
+            }
+        }
+        assertTrue(filesOf(jar).contains("org/sample/ejb/resources/messages.properties"));
     }
 
-    private void doAssertJarContent(
-            final MavenProject project,
-            final String fileName,
-            final String[] expectedFiles,
-            final String[] unexpectedFiles)
-            throws IOException {
-        String checkedJarFile = project.getBuild().getDirectory() + "/" + fileName;
-        if (expectedFiles != null) {
-            final JarContentChecker inclusionChecker = new JarContentChecker();
+    /**
+     * The plexus archiver cannot be chosen along with an option only the NIO archiver supports.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testArchiverBackendMustSupportOptions() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("archiver-backend-options");
+        setupDefaultProject(project);
 
-            // set expected jar contents
-            for (String expectedFile : expectedFiles) {
-                inclusionChecker.addFile(new File(expectedFile));
+        for (String[] backends : new String[][] {{"plexus", null}, {"nio", "plexus"}, {"zip", null}}) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "ejbVersion", "3.2");
+            setVariableValueToObject(mojo, "archiverBackend", backends[0]);
+            setVariableValueToObject(mojo, "clientArchiverBackend", backends[1]);
+            setVariableValueToObject(mojo, "readAheadSize", 1);
+            try {
+                mojo.execute();
+                fail("Exception should be thrown: " + Arrays.toString(backends) + " cannot read ahead.");
+            } catch (MojoExecutionException e) {
+                // OK
             }
-            assertTrue(inclusionChecker.isOK(new JarFile(checkedJarFile)));
         }
-        if (unexpectedFiles != null) {
-            final JarContentChecker exclusionChecker = new JarContentChecker();
-            for (String unexpectedFile : unexpectedFiles) {
-                exclusionChecker.addFile(new File(unexpectedFile));
+    }
+
+    /**
+     * Copying deflated content from the deflate cache should not change the jars.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testDeflateCacheWritesSameJars() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("deflate-cache");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/resources/messages.properties", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        File cache = new File(project.getBuild().getDirectory(), "deflate-cache");
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        List<byte[]> uncachedJars = null;
+        // without the cache, with an empty cache, with the cache filled, and reading ahead from it
+        for (int build = 0; build < 4; build++) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "2.1");
+            setVariableValueToObject(mojo, "archiverBackend", "nio");
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+            if (build > 0) {
+                setVariableValueToObject(mojo, "deflateCache", cache);
+            }
+            if (build == 3) {
+                setVariableValueToObject(mojo, "readAheadSize", 1);
+            }
+
+            mojo.execute();
+            project.getArtifact().setFile(null);
+
+            List<byte[]> jars = Arrays.asList(Files.readAllBytes(jar.toPath()), Files.readAllBytes(clientJar.toPath()));
+            if (uncachedJars == null) {
+                uncachedJars = jars;
+            } else {
+                assertTrue("the EJB jar should not change", Arrays.equals(uncachedJars.get(0), jars.get(0)));
+                assertTrue("the client jar should not change", Arrays.equals(uncachedJars.get(1), jars.get(1)));
+            }
+        }
+        assertTrue(cache.isDirectory());
+    }
+
+    /**
+     * The digests of the signature are computed while the jars are written, the same way whether the files are read
+     * ahead and deflated on other threads or not.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testSigningDigests() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("signing-digests");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("META-INF/OLD.SF", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        List<byte[]> firstJars = null;
+        for (int build = 0; build < 2; build++) {
+            RecordingSigner.SIGNED.clear();
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "2.1");
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+            setVariableValueToObject(mojo, "signingDigests", Boolean.TRUE);
+            setVariableValueToObject(mojo, "signatureDigestAlgorithm", "SHA-256");
+            setVariableValueToObject(mojo, "signatureName", "ejb");
+            setVariableValueToObject(mojo, "signer", RecordingSigner.class.getName());
+            if (build == 1) {
+                setVariableValueToObject(mojo, "readAheadSize", 1);
+                setVariableValueToObject(
+                        mojo, "deflateCache", new File(project.getBuild().getDirectory(), "deflate-cache"));
+            }
+
+            mojo.execute();
+            project.getArtifact().setFile(null);
+
+            assertEquals("the EJB and client jars should be signed", 2, RecordingSigner.SIGNED.size());
+            for (File signed : Arrays.asList(jar, clientJar)) {
+                assertSigningDigests(signed);
+            }
+            List<byte[]> jars = Arrays.asList(Files.readAllBytes(jar.toPath()), Files.readAllBytes(clientJar.toPath()));
+            if (firstJars == null) {
+                firstJars = jars;
+            } else {
+                assertTrue("the EJB jar should not change", Arrays.equals(firstJars.get(0), jars.get(0)));
+                assertTrue("the client jar should not change", Arrays.equals(firstJars.get(1), jars.get(1)));
+            }
+        }
+        assertFalse(filesOf(jar).contains("META-INF/OLD.SF"));
+    }
+
+    private static void assertSigningDigests(File jar) throws Exception {
+        try (JarFile jarFile = new JarFile(jar, false)) {
+            Map<String, Attributes> sections = jarFile.getManifest().getEntries();
+            Set<String> signed = new TreeSet<>();
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                String name = entry.getName();
+                if (entry.isDirectory() || JarSignature.isSignatureRelated(name)) {
+                    continue;
+                }
+                signed.add(name);
+                byte[] content;
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    content = IOUtil.toByteArray(in);
+                }
+                assertEquals(
+                        name,
+                        Base64.getEncoder()
+                                .encodeToString(
+                                        MessageDigest.getInstance("SHA-256").digest(content)),
+                        sections.get(name).getValue("SHA-256-Digest"));
+            }
+            assertEquals(signed, sections.keySet());
+
+            byte[] signatureFile;
+            try (InputStream in = jarFile.getInputStream(jarFile.getEntry("META-INF/EJB.SF"))) {
+                signatureFile = IOUtil.toByteArray(in);
+            }
+            assertTrue(new String(signatureFile, StandardCharsets.UTF_8).contains("SHA-256-Digest-Manifest: "));
+            assertTrue(RecordingSigner.SIGNED.stream().anyMatch(sf -> Arrays.equals(sf, signatureFile)));
+            try (InputStream in = jarFile.getInputStream(jarFile.getEntry("META-INF/EJB.EC"))) {
+                assertEquals("signed " + signatureFile.length, new String(IOUtil.toByteArray(in), "UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * Records the signature files it is given, and signs them with their length.
+     */
+    public static class RecordingSigner implements SignatureBlockSigner {
+        static final List<byte[]> SIGNED = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String getBlockExtension() {
+            return "EC";
+        }
+
+        @Override
+        public byte[] sign(byte[] signatureFile) {
+            SIGNED.add(signatureFile);
+            return ("signed " + signatureFile.length).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The entries are transformed to the jakarta namespace while they are written, the same way whether the files are
+     * read ahead or not.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testJakartaTransform() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("jakarta-transform");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/resources/logo.png", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        Path classes = Paths.get(project.getBuild().getOutputDirectory());
+        Files.write(
+                classes.resolve("META-INF/ejb-jar.xml"),
+                "<ejb-jar><res-type>javax.jms.Queue</res-type></ejb-jar>".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(classes.resolve("META-INF/services"));
+        Files.write(
+                classes.resolve("META-INF/services/javax.enterprise.inject.spi.Extension"),
+                "org.sample.ejb.AppExtension\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(
+                classes.resolve("org/sample/ejb/AppBean.class"),
+                JakartaTransformerTest.classFile("org/sample/ejb/AppBean", "Ljavax/ejb/SessionContext;"));
+        Files.write(
+                classes.resolve("org/sample/ejb/AppStub.class"),
+                JakartaTransformerTest.classFile("org/sample/ejb/AppStub", "Ljavax/transaction/xa/Xid;"));
+
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        List<byte[]> firstJars = null;
+        for (int readAheadSize : new int[] {0, 1}) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "4.0");
+            setVariableValueToObject(mojo, "jakartaTransform", Boolean.TRUE);
+            setVariableValueToObject(mojo, "readAheadSize", readAheadSize);
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+
+            mojo.execute();
+            project.getArtifact().setFile(null);
+
+            List<byte[]> jars = Arrays.asList(Files.readAllBytes(jar.toPath()), Files.readAllBytes(clientJar.toPath()));
+            if (firstJars == null) {
+                firstJars = jars;
+            } else {
+                assertTrue("the EJB jar should not change", Arrays.equals(firstJars.get(0), jars.get(0)));
+                assertTrue("the client jar should not change", Arrays.equals(firstJars.get(1), jars.get(1)));
+            }
+        }
+
+        try (JarFile jarFile = new JarFile(jar)) {
+            assertNull(jarFile.getEntry("META-INF/services/javax.enterprise.inject.spi.Extension"));
+            assertEquals(
+                    "org.sample.ejb.AppExtension\n",
+                    entryContent(jarFile, "META-INF/services/jakarta.enterprise.inject.spi.Extension"));
+            assertEquals(
+                    "<ejb-jar><res-type>jakarta.jms.Queue</res-type></ejb-jar>",
+                    entryContent(jarFile, "META-INF/ejb-jar.xml"));
+            assertTrue(entryContent(jarFile, "org/sample/ejb/AppBean.class").contains("Ljakarta/ejb/SessionContext;"));
+            assertTrue(entryContent(jarFile, "org/sample/ejb/AppStub.class").contains("Ljavax/transaction/xa/Xid;"));
+        }
+        try (JarFile jarFile = new JarFile(clientJar)) {
+            assertNull(jarFile.getEntry("org/sample/ejb/AppBean.class"));
+            assertTrue(entryContent(jarFile, "org/sample/ejb/AppStub.class").contains("Ljavax/transaction/xa/Xid;"));
+        }
+    }
+
+    /**
+     * The configured transformers rewrite the entries of the EJB jar, the same way whether the files are read ahead
+     * or not, and leave the client jar alone.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testEntryTransformers() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("entry-transformers");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile(
+                "org/sample/ejb/resources/messages.properties",
+                "greeting=hello",
+                MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/resources/notes.txt", "notes", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        Properties properties = new Properties();
+        properties.setProperty("suffix", ".text");
+        List<byte[]> firstJars = null;
+        for (int readAheadSize : new int[] {0, 1}) {
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "3.2");
+            setVariableValueToObject(mojo, "archiverBackend", "nio");
+            setVariableValueToObject(
+                    mojo, "entryTransformers", Collections.singletonList(UpperCaseTransformer.class.getName()));
+            setVariableValueToObject(mojo, "entryTransformerProperties", properties);
+            setVariableValueToObject(mojo, "readAheadSize", readAheadSize);
+            setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+
+            mojo.execute();
+            project.getArtifact().setFile(null);
+
+            List<byte[]> jars = Arrays.asList(Files.readAllBytes(jar.toPath()), Files.readAllBytes(clientJar.toPath()));
+            if (firstJars == null) {
+                firstJars = jars;
+            } else {
+                assertTrue("the EJB jar should not change", Arrays.equals(firstJars.get(0), jars.get(0)));
+                assertTrue("the client jar should not change", Arrays.equals(firstJars.get(1), jars.get(1)));
+            }
+        }
+
+        try (JarFile jarFile = new JarFile(jar)) {
+            assertEquals("GREETING=HELLO", entryContent(jarFile, "org/sample/ejb/resources/messages.properties"));
+            assertNull(jarFile.getEntry("org/sample/ejb/resources/notes.txt"));
+            assertEquals("notes", entryContent(jarFile, "org/sample/ejb/resources/notes.text"));
+        }
+        try (JarFile jarFile = new JarFile(clientJar)) {
+            assertEquals("greeting=hello", entryContent(jarFile, "org/sample/ejb/resources/messages.properties"));
+            assertNotNull(jarFile.getEntry("org/sample/ejb/resources/notes.txt"));
+        }
+    }
+
+    /**
+     * Upper-cases the properties files and gives the text files the configured suffix.
+     */
+    public static class UpperCaseTransformer implements EntryTransformer {
+        private String suffix;
+
+        @Override
+        public void configure(Properties properties) {
+            suffix = properties.getProperty("suffix");
+        }
+
+        @Override
+        public String rename(String name) {
+            return name.endsWith(".txt") ? name.substring(0, name.length() - ".txt".length()) + suffix : name;
+        }
+
+        @Override
+        public boolean transforms(String name) {
+            return name.endsWith(".properties");
+        }
+
+        @Override
+        public byte[] transform(String name, long lastModified, byte[] content) {
+            return new String(content, StandardCharsets.UTF_8)
+                    .toUpperCase(Locale.ROOT)
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The client jar strips the debug attributes from its classes while the EJB jar and the output directory keep
+     * them.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testClientStrippedClassAttributes() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("stripped-class-attributes");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        Path classes = Paths.get(project.getBuild().getOutputDirectory());
+        Path compiled = Files.createDirectories(Paths.get(project.getBuild().getDirectory(), "compiled"));
+        byte[] original = DebugInfoStripperTest.compile(compiled);
+        Files.createDirectories(classes.resolve("org/sample/ejb"));
+        Files.write(classes.resolve("org/sample/ejb/AppStub.class"), original);
+
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+        setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+        setVariableValueToObject(mojo, "ejbVersion", "3.2");
+        setVariableValueToObject(mojo, "clientStrippedClassAttributes", DebugInfoStripper.ATTRIBUTES);
+        setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+
+        mojo.execute();
+
+        File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+        File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+        try (JarFile jarFile = new JarFile(jar)) {
+            assertEquals(
+                    original.length,
+                    jarFile.getEntry("org/sample/ejb/AppStub.class").getSize());
+        }
+        try (JarFile jarFile = new JarFile(clientJar)) {
+            assertTrue(jarFile.getEntry("org/sample/ejb/AppStub.class").getSize() < original.length);
+        }
+        assertTrue(Arrays.equals(original, Files.readAllBytes(classes.resolve("org/sample/ejb/AppStub.class"))));
+    }
+
+    /**
+     * Attributes the JVM needs cannot be stripped.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testStrippedClassAttributesMustBeDebugAttributes() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("stripped-class-attributes-invalid");
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+        setVariableValueToObject(mojo, "ejbVersion", "3.2");
+        setVariableValueToObject(mojo, "strippedClassAttributes", Arrays.asList("SourceFile", "Code"));
+
+        try {
+            mojo.execute();
+            fail("Exception should be thrown: Code cannot be stripped.");
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage().contains("strippedClassAttributes"));
+        }
+    }
+
+    /**
+     * The EJB jar leaves out the classes no entry point reaches and lists them in the report, the client jar keeps
+     * them.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testShrinkClasses() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("shrink-classes");
+
+        // put this on the target output dir
+        project.addFile(
+                "META-INF/ejb-jar.xml",
+                "<ejb-jar><ejb-class>org.sample.ejb.Described</ejb-class></ejb-jar>",
+                MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        Path classes = Paths.get(project.getBuild().getOutputDirectory());
+        Path compiled = ClassShrinkerTest.compile(
+                Files.createDirectories(Paths.get(project.getBuild().getDirectory(), "compiled")));
+        for (String name : ClassShrinkerTest.classNames(compiled)) {
+            Files.createDirectories(classes.resolve(name).getParent());
+            Files.copy(compiled.resolve(name), classes.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+        setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+        setVariableValueToObject(mojo, "ejbVersion", "3.2");
+        setVariableValueToObject(mojo, "shrinkClasses", Boolean.TRUE);
+        setVariableValueToObject(mojo, "keepClasses", Collections.singletonList("**/spi/**"));
+
+        mojo.execute();
+
+        Set<String> files = filesOf(new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar"));
+        assertFalse(files.contains("org/sample/ejb/Unused.class"));
+        assertTrue(files.contains("org/sample/ejb/AppBean.class"));
+        assertTrue(files.contains("org/sample/ejb/Described.class"));
+        assertTrue(files.contains("org/sample/ejb/spi/Plugin.class"));
+        assertTrue(files.contains("META-INF/ejb-jar.xml"));
+        assertTrue(filesOf(new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar"))
+                .contains("org/sample/ejb/Unused.class"));
+        assertEquals(
+                Collections.singletonList("org/sample/ejb/Unused.class"),
+                Files.readAllLines(Paths.get(project.getBuild().getDirectory(), "ejb-dropped-classes.txt")));
+    }
+
+    /**
+     * The classes are shrunk by the filtered deployment descriptor, so a bean class named by a property is kept, by the
+     * plexus and the streaming packaging.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testShrinkClassesWithFilteredDescriptor() throws Exception {
+        for (boolean streaming : new boolean[] {false, true}) {
+            final MavenProjectResourcesStub project =
+                    createTestProject("shrink-classes-filtered-" + (streaming ? "streaming" : "plexus"));
+            project.addProperty("bean.class", "org.sample.ejb.Unused");
+
+            // put this on the target output dir
+            project.addFile(
+                    "META-INF/ejb-jar.xml",
+                    "<ejb-jar><ejb-class>${bean.class}</ejb-class></ejb-jar>",
+                    MavenProjectResourcesStub.OUTPUT_FILE);
+
+            // put this on the root dir
+            project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+            // start creating the environment
+            project.setupBuildEnvironment();
+
+            Path classes = Paths.get(project.getBuild().getOutputDirectory());
+            Path compiled = ClassShrinkerTest.compile(
+                    Files.createDirectories(Paths.get(project.getBuild().getDirectory(), "compiled")));
+            for (String name : ClassShrinkerTest.classNames(compiled)) {
+                Files.createDirectories(classes.resolve(name).getParent());
+                Files.copy(compiled.resolve(name), classes.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+            setVariableValueToObject(mojo, "ejbVersion", "3.2");
+            setVariableValueToObject(mojo, "filterDeploymentDescriptor", Boolean.TRUE);
+            setVariableValueToObject(mojo, "shrinkClasses", Boolean.TRUE);
+            if (streaming) {
+                setVariableValueToObject(mojo, "archiverBackend", "nio");
+                setVariableValueToObject(mojo, "streamingPackaging", Boolean.TRUE);
+            }
+
+            mojo.execute();
+
+            Set<String> files = filesOf(new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar"));
+            assertTrue(files.contains("org/sample/ejb/Unused.class"));
+            assertTrue(files.contains("org/sample/ejb/Helper.class"));
+            assertFalse(files.contains("org/sample/ejb/Described.class"));
+            assertFalse(files.contains("org/sample/ejb/spi/Plugin.class"));
+            assertTrue(files.contains("META-INF/ejb-jar.xml"));
+            assertEquals(
+                    Arrays.asList("org/sample/ejb/Described.class", "org/sample/ejb/spi/Plugin.class"),
+                    Files.readAllLines(Paths.get(project.getBuild().getDirectory(), "ejb-dropped-classes.txt")));
+        }
+    }
+
+    private static String entryContent(JarFile jarFile, String name) throws IOException {
+        try (InputStream in = jarFile.getInputStream(jarFile.getEntry(name))) {
+            return new String(IOUtil.toByteArray(in), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Variants are built from the scan of the EJB jar, which should not change the EJB and client jars.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testVariantsFromSharedScan() throws Exception {
+        for (boolean nio : new boolean[] {false, true}) {
+            final MavenProjectResourcesStub project = createTestProject("variants-" + (nio ? "nio" : "plexus"));
+
+            // put this on the target output dir
+            project.addFile(
+                    "META-INF/ejb-jar.xml", "<ejb-jar version=\"2.1\"/>", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile(
+                    "META-INF/wildfly/ejb-jar.xml",
+                    "<ejb-jar version=\"2.1\" id=\"wildfly\"/>",
+                    MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/weblogic/AppHelper.class", MavenProjectResourcesStub.OUTPUT_FILE);
+
+            // put this on the root dir
+            project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+            // start creating the environment
+            project.setupBuildEnvironment();
+
+            File jar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + ".jar");
+            File clientJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-client.jar");
+            List<byte[]> jars = new ArrayList<>();
+            for (boolean withVariants : new boolean[] {false, true}) {
+                final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+                setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+                setVariableValueToObject(mojo, "ejbVersion", "2.1");
+                setVariableValueToObject(mojo, "archiverBackend", nio ? "nio" : null);
+                setVariableValueToObject(mojo, "excludes", Collections.singletonList("META-INF/wildfly/**"));
+                setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+                if (withVariants) {
+                    EjbVariant wildfly = new EjbVariant();
+                    wildfly.setClassifier("wildfly");
+                    wildfly.setEjbJar("META-INF/wildfly/ejb-jar.xml");
+                    wildfly.setExcludes(Collections.singletonList("**/weblogic/**"));
+                    EjbVariant plain = new EjbVariant();
+                    plain.setClassifier("plain");
+                    setVariableValueToObject(mojo, "variants", Arrays.asList(wildfly, plain));
+                }
+
+                mojo.execute();
+                project.getArtifact().setFile(null);
+
+                jars.add(Files.readAllBytes(jar.toPath()));
+                jars.add(Files.readAllBytes(clientJar.toPath()));
+            }
+            assertTrue("the EJB jar should not change", Arrays.equals(jars.get(0), jars.get(2)));
+            assertTrue("the client jar should not change", Arrays.equals(jars.get(1), jars.get(3)));
+
+            Set<String> classifiers = new TreeSet<>();
+            for (Artifact attached : project.getAttachedArtifacts()) {
+                classifiers.add(attached.getClassifier());
+            }
+            assertTrue(classifiers.containsAll(Arrays.asList("client", "plain", "wildfly")));
+
+            File wildflyJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-wildfly.jar");
+            Set<String> wildflyFiles = filesOf(wildflyJar);
+            assertTrue(wildflyFiles.containsAll(Arrays.asList(
+                    "META-INF/ejb-jar.xml", "org/sample/ejb/AppBean.class", "org/sample/ejb/AppStub.class")));
+            assertFalse(wildflyFiles.contains("META-INF/wildfly/ejb-jar.xml"));
+            assertFalse(wildflyFiles.contains("org/sample/ejb/weblogic/AppHelper.class"));
+            try (JarFile jarFile = new JarFile(wildflyJar)) {
+                String descriptor = IOUtil.toString(jarFile.getInputStream(jarFile.getEntry("META-INF/ejb-jar.xml")));
+                assertTrue(descriptor.contains("wildfly"));
+            }
+            File plainJar = new File(project.getBuild().getDirectory(), DEFAULT_JAR_NAME + "-plain.jar");
+            Set<String> plainFiles = filesOf(plainJar);
+            assertTrue(plainFiles.contains("org/sample/ejb/weblogic/AppHelper.class"));
+            assertFalse(plainFiles.contains("META-INF/wildfly/ejb-jar.xml"));
+        }
+    }
+
+    /**
+     * Runs executions of the separate output directories of a parallel build and executions sharing one output and
+     * source directory at the same time, each filtering the deployment descriptor, and checks that every run gives
+     * the same jars.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testConcurrentExecutions() throws Exception {
+        List<MavenProjectResourcesStub> projects = new ArrayList<>();
+        List<String> classifiers = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_PROJECTS; i++) {
+            MavenProjectResourcesStub project = createTestProject("concurrent-" + i);
+            project.addProperty("ejb.vendor", "vendor-" + i);
+            project.addFile(
+                    "META-INF/ejb-jar.xml",
+                    "<ejb-jar version=\"2.1\" id=\"${ejb.vendor}\"/>",
+                    MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/resources/messages.properties", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+            project.setupBuildEnvironment();
+            projects.add(project);
+            classifiers.add(null);
+        }
+        // more projects are built into the directories of the last one, told apart by their classifiers
+        MavenProjectResourcesStub shared = projects.get(CONCURRENT_PROJECTS - 1);
+        for (String classifier : Arrays.asList("a", "b")) {
+            MavenProjectResourcesStub project = createTestProject("concurrent-" + classifier);
+            project.addProperty("ejb.vendor", "vendor-" + (CONCURRENT_PROJECTS - 1));
+            project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+            project.setupBuildEnvironment();
+            projects.add(project);
+            classifiers.add(classifier);
+        }
+
+        Map<File, byte[]> firstRun = null;
+        for (int run = 0; run < CONCURRENT_RUNS; run++) {
+            List<EjbMojo> mojos = new ArrayList<>();
+            for (int i = 0; i < projects.size(); i++) {
+                MavenProjectResourcesStub project = projects.get(i);
+                MavenProject directories = i < CONCURRENT_PROJECTS ? project : shared;
+                EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+                setVariableValueToObject(
+                        mojo, "outputDirectory", new File(directories.getBuild().getDirectory()));
+                setVariableValueToObject(
+                        mojo, "sourceDirectory", new File(directories.getBuild().getOutputDirectory()));
+                setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+                setVariableValueToObject(mojo, "ejbVersion", "2.1");
+                setVariableValueToObject(mojo, "filterDeploymentDescriptor", Boolean.TRUE);
+                setVariableValueToObject(mojo, "archiverBackend", i % 2 == 1 ? "nio" : null);
+                setVariableValueToObject(mojo, "outputTimestamp", "2022-04-18T19:35:30Z");
+                if (classifiers.get(i) != null) {
+                    setVariableValueToObject(mojo, "classifier", classifiers.get(i));
+                    setVariableValueToObject(mojo, "clientClassifier", classifiers.get(i) + "-client");
+                }
+                mojos.add(mojo);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(mojos.size());
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> executions = new ArrayList<>();
+                for (EjbMojo mojo : mojos) {
+                    executions.add(executor.submit(() -> {
+                        start.await();
+                        mojo.execute();
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> execution : executions) {
+                    execution.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            Map<File, byte[]> jars = new HashMap<>();
+            for (int i = 0; i < projects.size(); i++) {
+                MavenProject directories = i < CONCURRENT_PROJECTS ? projects.get(i) : shared;
+                String suffix = classifiers.get(i) != null ? "-" + classifiers.get(i) : "";
+                File jar = new File(directories.getBuild().getDirectory(), DEFAULT_JAR_NAME + suffix + ".jar");
+                File clientJar =
+                        new File(directories.getBuild().getDirectory(), DEFAULT_JAR_NAME + suffix + "-client.jar");
+                assertTrue(
+                        "Missing files in " + jar,
+                        filesOf(jar)
+                                .containsAll(Arrays.asList(
+                                        "META-INF/ejb-jar.xml",
+                                        "org/sample/ejb/AppBean.class",
+                                        "org/sample/ejb/AppStub.class",
+                                        "org/sample/ejb/resources/messages.properties")));
+                try (JarFile jarFile = new JarFile(jar)) {
+                    String descriptor =
+                            IOUtil.toString(jarFile.getInputStream(jarFile.getEntry("META-INF/ejb-jar.xml")));
+                    String vendor = projects.get(i).getProperties().getProperty("ejb.vendor");
+                    assertTrue("Unfiltered descriptor in " + jar, descriptor.contains(vendor));
+                }
+                assertTrue("Missing stub in " + clientJar, filesOf(clientJar).contains("org/sample/ejb/AppStub.class"));
+                jars.put(jar, Files.readAllBytes(jar.toPath()));
+                jars.put(clientJar, Files.readAllBytes(clientJar.toPath()));
+            }
+            if (firstRun == null) {
+                firstRun = jars;
+            } else {
+                for (Map.Entry<File, byte[]> jar : jars.entrySet()) {
+                    assertTrue(
+                            jar.getKey() + " should be the same in every run",
+                            Arrays.equals(firstRun.get(jar.getKey()), jar.getValue()));
+                }
+            }
+            for (MavenProjectResourcesStub project : projects) {
+                project.getArtifact().setFile(null);
+            }
+        }
+
+        // no temporary files are left in the directory the jars are made from
+        assertEquals(
+                Collections.singletonList("ejb-jar.xml"),
+                Arrays.asList(new File(shared.getBuild().getOutputDirectory(), "META-INF").list()));
+    }
+
+    /**
+     * Tests if the mojo rejects variants sharing a classifier.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testVariantClassifiersMustBeUnique() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("variants-duplicate");
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        EjbVariant first = new EjbVariant();
+        first.setClassifier("server");
+        EjbVariant second = new EjbVariant();
+        second.setClassifier("server");
+        setVariableValueToObject(mojo, "variants", Arrays.asList(first, second));
+
+        try {
+            mojo.execute();
+            fail("Exception should be thrown: two variants have the same classifier.");
+        } catch (MojoExecutionException e) {
+            // OK
+        }
+    }
+
+    /**
+     * Tests if the mojo rejects an alignment which is not a power of two.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testStoredEntryAlignmentMustBePowerOfTwo() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("stored-entry-alignment-invalid");
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        setVariableValueToObject(mojo, "storedEntryAlignment", 1000);
+
+        try {
+            mojo.execute();
+            fail("Exception should be thrown: alignment is not a power of two.");
+        } catch (MojoExecutionException e) {
+            // OK
+        }
+    }
+
+    /**
+     * Compact jars without directory entries, for both the plexus and the NIO archiver.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testCompactJarsWithoutDirectoryEntries() throws Exception {
+        for (boolean nio : new boolean[] {false, true}) {
+            final MavenProjectResourcesStub project = createTestProject("compact-jars-" + (nio ? "nio" : "plexus"));
+            final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+            // put this on the target output dir
+            project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+            project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+
+            // put this on the root dir
+            project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+            // start creating the environment
+            project.setupBuildEnvironment();
+
+            setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+            setVariableValueToObject(mojo, "ejbVersion", "2.1");
+            setVariableValueToObject(mojo, "archiverBackend", nio ? "nio" : null);
+            setVariableValueToObject(mojo, "compactJars", Boolean.TRUE);
+
+            mojo.execute();
+
+            assertJarCreation(project, true, true);
+            assertJarContent(
+                    project,
+                    new String[] {
+                        "META-INF/MANIFEST.MF",
+                        "META-INF/ejb-jar.xml",
+                        "META-INF/maven/org.apache.maven.test/maven-test-plugin/pom.xml",
+                        "META-INF/maven/org.apache.maven.test/maven-test-plugin/pom.properties",
+                        "org/sample/ejb/AppBean.class",
+                        "org/sample/ejb/AppStub.class"
+                    },
+                    null);
+
+            for (String jar : new String[] {DEFAULT_JAR_NAME + ".jar", DEFAULT_JAR_NAME + "-client.jar"}) {
+                try (JarFile jarFile = new JarFile(project.getBuild().getDirectory() + "/" + jar)) {
+                    assertNotNull(jarFile.getManifest());
+                    for (JarEntry entry : Collections.list(jarFile.entries())) {
+                        // plexus always writes META-INF/ first to mark the file as a jar
+                        boolean jarMarker = !nio && entry.getName().equals("META-INF/");
+                        assertFalse(jar + " (nio: " + nio + ") " + entry.getName(), entry.isDirectory() && !jarMarker);
+                        assertNull(entry.getExtra());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * JSON profile of the module and the reactor.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testProfileReport() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("profile-report");
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+        // put this on the target output dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppBean.class", MavenProjectResourcesStub.OUTPUT_FILE);
+        project.addFile("org/sample/ejb/AppStub.class", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        setVariableValueToObject(mojo, "generateClient", Boolean.TRUE);
+        setVariableValueToObject(mojo, "ejbVersion", "2.1");
+        setVariableValueToObject(mojo, "archiverBackend", "nio");
+        setVariableValueToObject(mojo, "profileReport", Boolean.TRUE);
+        setVariableValueToObject(mojo, "session", newMavenSession(project));
+
+        mojo.execute();
+
+        String report = new String(
+                Files.readAllBytes(new File(project.getBuild().getDirectory(), "ejb-profile.json").toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(report, report.contains("\"module\": \"org.apache.maven.test:maven-test-plugin\""));
+        for (String phase : new String[] {"descriptorValidation", "scan", "archive", "attach"}) {
+            assertTrue(report, report.contains("\"phase\": \"" + phase + "\""));
+        }
+        assertTrue(report, report.contains("\"archive\": \"" + DEFAULT_JAR_NAME + "-client.jar\""));
+        assertTrue(report, report.contains("\"largestEntries\""));
+        assertTrue(report, report.contains("\"name\": \"META-INF/ejb-jar.xml\""));
+        assertTrue(report, report.contains("\"compressionRatio\""));
+
+        String reactorReport = new String(
+                Files.readAllBytes(new File(project.getBuild().getDirectory(), "ejb-profile-reactor.json").toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(reactorReport, reactorReport.contains("\"modules\": 1"));
+        assertTrue(reactorReport, reactorReport.contains("\"archives\": 2"));
+    }
+
+    /**
+     * Tests if the mojo throws an exception when the EJB version is &lt; 3.0 and no deployment descriptor is present.
+     * The case with deployment descriptor present is covered by previous tests.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testEjbComplianceVersionTwoDotOneWithoutDescriptor() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("compliance-nodescriptor-2.1");
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        setVariableValueToObject(mojo, "generateClient", Boolean.FALSE);
+        setVariableValueToObject(mojo, "ejbVersion", "2.1");
+
+        try {
+            mojo.execute();
+            fail("Exception should be thrown: No deployment descriptor present.");
+        } catch (MojoExecutionException e) {
+            // OK
+        }
+    }
+
+    /**
+     * Tests if the jar is created under EJB version 3.0 with deployment descriptor present.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testEjbComplianceVersionThreeWithDescriptor() throws Exception {
+
+        final MavenProjectResourcesStub project = createTestProject("compliance-descriptor-3");
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+        // put this on the target dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        setVariableValueToObject(mojo, "generateClient", Boolean.FALSE);
+        setVariableValueToObject(mojo, "ejbVersion", "3.0");
+
+        mojo.execute();
+
+        assertJarCreation(project, true, false);
+    }
+
+    /**
+     * Tests if the jar is created under EJB version 3.0 without deployment descriptor present.
+     *
+     * @throws Exception if any exception occurs
+     */
+    public void testEjbCompliance_3_0_WithoutDescriptor() throws Exception {
+        final MavenProjectResourcesStub project = createTestProject("compliance-nodescriptor-3");
+        final EjbMojo mojo = lookupMojoWithDefaultSettings(project);
+
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+
+        // start creating the environment
+        project.setupBuildEnvironment();
+
+        setVariableValueToObject(mojo, "generateClient", Boolean.FALSE);
+        setVariableValueToObject(mojo, "ejbVersion", "3.0");
+
+        mojo.execute();
+
+        assertJarCreation(project, true, false);
+    }
+
+    public void testEjb1VersionValidation() {
+        try {
+            EjbMojo.validateEjbVersion("1.1");
+            fail("MojoException is expected");
+        } catch (MojoExecutionException mex) {
+        }
+    }
+
+    public void testEjb2VersionValidation() throws MojoExecutionException {
+        EjbMojo.validateEjbVersion("2.1");
+    }
+
+    public void testEjb3VersionValidation() throws MojoExecutionException {
+        EjbMojo.validateEjbVersion("3.2");
+    }
+
+    public void testEjb4VersionValidation() throws MojoExecutionException {
+        EjbMojo.validateEjbVersion("4.0");
+    }
+
+    protected EjbMojo lookupMojo() throws Exception {
+        File pomFile = new File(getBasedir(), DEFAULT_POM_PATH);
+        EjbMojo mojo = (EjbMojo) lookupMojo("ejb", pomFile);
+
+        assertNotNull(mojo);
+
+        return mojo;
+    }
+
+    protected MavenProjectResourcesStub createTestProject(final String testName) throws Exception {
+        // this will automatically create the isolated
+        // test environment
+        return new MavenProjectResourcesStub(testName);
+    }
+
+    protected void setupDefaultProject(final MavenProjectResourcesStub project) throws Exception {
+        // put this on the target dir
+        project.addFile("META-INF/ejb-jar.xml", MavenProjectResourcesStub.OUTPUT_FILE);
+        // put this on the root dir
+        project.addFile("pom.xml", MavenProjectResourcesStub.ROOT_FILE);
+        // start creating the environment
+        project.setupBuildEnvironment();
+    }
+
+    protected EjbMojo lookupMojoWithSettings(
+            final MavenProject project, List<String> clientIncludes, List<String> clientExcludes, List<String> excludes)
+            throws Exception {
+        final EjbMojo mojo = lookupMojo();
+        setVariableValueToObject(mojo, "project", project);
+        setVariableValueToObject(
+                mojo, "outputDirectory", new File(project.getBuild().getDirectory()));
+        setVariableValueToObject(
+                mojo, "sourceDirectory", new File(project.getBuild().getOutputDirectory()));
+        setVariableValueToObject(mojo, "jarName", DEFAULT_JAR_NAME);
+        setVariableValueToObject(mojo, "ejbJar", EjbMojo.DEFAULT_EJBJAR);
+        setVariableValueToObject(mojo, "clientExcludes", clientExcludes);
+        setVariableValueToObject(mojo, "clientIncludes", clientIncludes);
+        setVariableValueToObject(mojo, "excludes", excludes);
+        setVariableValueToObject(mojo, "clientClassifier", EjbMojo.DEFAULT_CLIENT_CLASSIFIER);
+        setVariableValueToObject(mojo, "manifestCache", Boolean.TRUE);
+
+        return mojo;
+    }
+
+    protected EjbMojo lookupMojoWithDefaultSettings(final MavenProject project) throws Exception {
+        return lookupMojoWithSettings(project, new LinkedList<String>(), new LinkedList<String>(), null);
+    }
+
+    protected void assertJarCreation(
+            final MavenProject project, boolean ejbJarCreated, boolean ejbClientJarCreated, String classifier) {
+        String checkedJarFile;
+        String checkedClientJarFile;
+
+        if (classifier == null) {
+            checkedJarFile = project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + ".jar";
+            checkedClientJarFile = project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-client.jar";
+        } else {
+            checkedJarFile = project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-" + classifier + ".jar";
+            checkedClientJarFile =
+                    project.getBuild().getDirectory() + "/" + DEFAULT_JAR_NAME + "-" + classifier + "-client.jar";
+        }
+
+        assertEquals("Invalid value for ejb-jar creation", ejbJarCreated, FileUtils.fileExists(checkedJarFile));
+        assertEquals(
+                "Invalid value for ejb-jar client creation",
+                ejbClientJarCreated,
+                FileUtils.fileExists(checkedClientJarFile));
+    }
+
+    protected void assertJarCreation(final MavenProject project, boolean ejbJarCreated, boolean ejbClientJarCreated) {
+        assertJarCreation(project, ejbJarCreated, ejbClientJarCreated, null);
+    }
+
+    private void doAssertJarContent(
+            final MavenProject project,
+            final String fileName,
+            final String[] expectedFiles,
+            final String[] unexpectedFiles)
+            throws IOException {
+        String checkedJarFile = project.getBuild().getDirectory() + "/" + fileName;
+        if (expectedFiles != null) {
+            final JarContentChecker inclusionChecker = new JarContentChecker();
+
+            // set expected jar contents
+            for (String expectedFile : expectedFiles) {
+                inclusionChecker.addFile(new File(expectedFile));
+            }
+            assertTrue(inclusionChecker.isOK(new JarFile(checkedJarFile)));
+        }
+        if (unexpectedFiles != null) {
+            final JarContentChecker exclusionChecker = new JarContentChecker();
+            for (String unexpectedFile : unexpectedFiles) {
+                exclusionChecker.addFile(new File(unexpectedFile));
+            }
+            assertFalse(exclusionChecker.isOK(new JarFile(checkedJarFile)));
+        }
+    }
+
+    private static Set<String> filesOf(File jar) throws IOException {
+        Set<String> files = new TreeSet<>();
+        for (String name : entryNames(jar)) {
+            if (!name.endsWith("/")) {
+                files.add(name);
+            }
+        }
+        return files;
+    }
+
+    private static List<String> entryNames(File jar) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                names.add(entry.getName());
             }
-            assertFalse(exclusionChecker.isOK(new JarFile(checkedJarFile)));
         }
+        return names;
     }
 
     protected void assertJarContent(
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EntryTransformerChainTest {
+    @Test
+    public void transformersShouldSeeTheNamesOfTheirPredecessors() throws Exception {
+        EntryTransformerChain chain = new EntryTransformerChain(
+                Arrays.asList(new Suffix(".txt", ".text", "first"), new Suffix(".text", ".md", "second")));
+
+        Assert.assertEquals("notes.md", chain.rename("notes.txt"));
+        Assert.assertEquals("notes.md", chain.rename("notes.text"));
+        Assert.assertEquals("notes.properties", chain.rename("notes.properties"));
+        Assert.assertTrue(chain.transforms("notes.txt"));
+        Assert.assertFalse(chain.transforms("notes.properties"));
+
+        Assert.assertEquals("a first second", transform(chain, "notes.txt", "a"));
+        Assert.assertEquals("a second", transform(chain, "notes.text", "a"));
+        Assert.assertEquals(2, chain.getTransformedCount());
+    }
+
+    @Test
+    public void unchangedContentShouldNotBeCounted() throws Exception {
+        EntryTransformerChain chain = new EntryTransformerChain(Arrays.asList(new Suffix(".txt", ".txt", null)));
+        byte[] content = "a".getBytes(StandardCharsets.UTF_8);
+
+        Assert.assertSame(content, chain.transform("notes.txt", 0L, content));
+        Assert.assertEquals(0, chain.getTransformedCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingContentShouldBeRejected() throws Exception {
+        EntryTransformer broken = new EntryTransformer() {
+            @Override
+            public boolean transforms(String name) {
+                return true;
+            }
+
+            @Override
+            public byte[] transform(String name, long lastModified, byte[] content) {
+                return null;
+            }
+        };
+        new EntryTransformerChain(Arrays.asList(broken)).transform("notes.txt", 0L, new byte[0]);
+    }
+
+    private static String transform(EntryTransformerChain chain, String name, String content) throws IOException {
+        return new String(chain.transform(name, 0L, content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Renames the files with a suffix and appends a word to their content.
+     */
+    private static final class Suffix implements EntryTransformer {
+        private final String from;
+
+        private final String to;
+
+        private final String word;
+
+        Suffix(String from, String to, String word) {
+            this.from = from;
+            this.to = to;
+            this.word = word;
+        }
+
+        @Override
+        public String rename(String name) {
+            return name.endsWith(from) ? name.substring(0, name.length() - from.length()) + to : name;
+        }
+
+        @Override
+        public boolean transforms(String name) {
+            return name.endsWith(from);
+        }
+
+        @Override
+        public byte[] transform(String name, long lastModified, byte[] content) {
+            if (word == null) {
+                return content;
+            }
+            return (new String(content, StandardCharsets.UTF_8) + " " + word).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
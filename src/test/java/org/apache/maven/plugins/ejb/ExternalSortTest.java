@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExternalSortTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void smallInputShouldBeSortedInMemory() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (ExternalSort sort = new ExternalSort(Comparator.<String>naturalOrder(), 10, directory.toPath())) {
+            for (String value : Arrays.asList("org/sample/B.class", "META-INF/", "org/sample/A.class")) {
+                sort.add(value);
+            }
+            Assert.assertFalse(sort.isSpilled());
+            Assert.assertEquals(Arrays.asList("META-INF/", "org/sample/A.class", "org/sample/B.class"), read(sort));
+        }
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void runsShouldBeMerged() throws IOException {
+        List<String> values = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            values.add("org/sample/ejb/Generated" + random.nextInt(500) + ".class");
+        }
+        List<String> expected = new ArrayList<>(values);
+        Collections.sort(expected, Comparator.reverseOrder());
+
+        File directory = temporaryFolder.newFolder();
+        try (ExternalSort sort = new ExternalSort(Comparator.<String>reverseOrder(), 64, directory.toPath())) {
+            for (String value : values) {
+                sort.add(value);
+            }
+            Assert.assertTrue(sort.isSpilled());
+            Assert.assertEquals(expected, read(sort));
+        }
+        Assert.assertEquals("the runs should be deleted", 0, directory.list().length);
+    }
+
+    private static List<String> read(ExternalSort sort) throws IOException {
+        List<String> sorted = new ArrayList<>();
+        ExternalSort.Cursor cursor = sort.sorted();
+        String value;
+        while ((value = cursor.next()) != null) {
+            sorted.add(value);
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JakartaTransformerTest {
+    private final JakartaTransformer transformer = new JakartaTransformer();
+
+    @Test
+    public void classConstantsShouldBeTransformed() throws Exception {
+        byte[] original = classFile(
+                "org/sample/AppBean",
+                "Ljavax/ejb/EJBContext;",
+                "(Ljavax/persistence/EntityManager;Ljavax/transaction/xa/Xid;)V",
+                "javax.jms.Queue");
+        byte[] transformed = transformer.transform("org/sample/AppBean.class", 0L, original);
+
+        Assert.assertArrayEquals(
+                classFile(
+                        "org/sample/AppBean",
+                        "Ljakarta/ejb/EJBContext;",
+                        "(Ljakarta/persistence/EntityManager;Ljavax/transaction/xa/Xid;)V",
+                        "jakarta.jms.Queue"),
+                transformed);
+        Assert.assertEquals(
+                "org.sample.AppBean", new ClassFileLoader().define(transformed).getName());
+    }
+
+    @Test
+    public void unchangedContentShouldBeReturnedAsItIs() throws Exception {
+        byte[] original = classFile("org/sample/AppBean", "Ljavax/transaction/xa/Xid;", "javax.sql.DataSource");
+        Assert.assertSame(original, transformer.transform("org/sample/AppBean.class", 0L, original));
+
+        byte[] descriptor = "<ejb-jar><javaxFoo/>javax.ejbx</ejb-jar>".getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(descriptor, transformer.transform("META-INF/ejb-jar.xml", 0L, descriptor));
+    }
+
+    @Test
+    public void commonAnnotationsShouldBeTransformed() throws Exception {
+        byte[] original = classFile(
+                "org/sample/AppBean",
+                "Ljavax/annotation/PostConstruct;",
+                "(ILjavax/annotation/Resource$AuthenticationType;)V",
+                "Ljavax/annotation/security/RolesAllowed;",
+                "Ljavax/annotation/Nonnull;",
+                "javax.annotation.processing.Processor");
+        byte[] transformed = transformer.transform("org/sample/AppBean.class", 0L, original);
+
+        Assert.assertArrayEquals(
+                classFile(
+                        "org/sample/AppBean",
+                        "Ljakarta/annotation/PostConstruct;",
+                        "(ILjakarta/annotation/Resource$AuthenticationType;)V",
+                        "Ljakarta/annotation/security/RolesAllowed;",
+                        "Ljavax/annotation/Nonnull;",
+                        "javax.annotation.processing.Processor"),
+                transformed);
+    }
+
+    @Test
+    public void javaxWithinNameShouldNotBeTransformed() throws Exception {
+        byte[] original =
+                classFile("com/acme/myjavax/ejb/Foo", "Lcom/acme/myjavax/ejb/Foo;", "org.notjavax.persistence.Unit");
+        Assert.assertSame(original, transformer.transform("com/acme/myjavax/ejb/Foo.class", 0L, original));
+
+        byte[] descriptor = "<ejb-class>org.notjavax.ejb.AppBean</ejb-class>".getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(descriptor, transformer.transform("META-INF/ejb-jar.xml", 0L, descriptor));
+    }
+
+    @Test
+    public void textShouldBeTransformed() throws Exception {
+        byte[] descriptor = ("<message-destination-type>javax.jms.Queue</message-destination-type>\n"
+                        + "<res-type>javax.annotation.processing.Processor</res-type>")
+                .getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(
+                "<message-destination-type>jakarta.jms.Queue</message-destination-type>\n"
+                        + "<res-type>javax.annotation.processing.Processor</res-type>",
+                new String(transformer.transform("META-INF/ejb-jar.xml", 0L, descriptor), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void utf16TextShouldBeTransformedInItsByteOrder() throws Exception {
+        String descriptor = "<?xml version=\"1.0\" encoding=\"UTF-16\"?>\n"
+                + "<session><description>Caf\u00e9</description>"
+                + "<ejb-class>javax.ejb.SessionBean</ejb-class></session>";
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-16\"?>\n"
+                + "<session><description>Caf\u00e9</description>"
+                + "<ejb-class>jakarta.ejb.SessionBean</ejb-class></session>";
+
+        // with a byte order mark, big endian by default
+        Assert.assertArrayEquals(
+                expected.getBytes(StandardCharsets.UTF_16),
+                transformer.transform("META-INF/ejb-jar.xml", 0L, descriptor.getBytes(StandardCharsets.UTF_16)));
+        Assert.assertArrayEquals(
+                ("\uFEFF" + expected).getBytes(StandardCharsets.UTF_16LE),
+                transformer.transform(
+                        "META-INF/ejb-jar.xml", 0L, ("\uFEFF" + descriptor).getBytes(StandardCharsets.UTF_16LE)));
+        // without, from the XML declaration
+        Assert.assertArrayEquals(
+                expected.getBytes(StandardCharsets.UTF_16LE),
+                transformer.transform("META-INF/ejb-jar.xml", 0L, descriptor.getBytes(StandardCharsets.UTF_16LE)));
+        Assert.assertArrayEquals(
+                expected.getBytes(StandardCharsets.UTF_16BE),
+                transformer.transform("META-INF/ejb-jar.xml", 0L, descriptor.getBytes(StandardCharsets.UTF_16BE)));
+    }
+
+    @Test
+    public void undecodableUtf16TextShouldBeLeftAsItIs() throws Exception {
+        byte[] truncated = "<ejb-class>javax.ejb.SessionBean</ejb-class>".getBytes(StandardCharsets.UTF_16LE);
+        truncated = Arrays.copyOf(truncated, truncated.length - 1);
+        Assert.assertSame(truncated, transformer.transform("META-INF/ejb-jar.xml", 0L, truncated));
+    }
+
+    @Test
+    public void serviceFilesShouldBeRenamed() {
+        Assert.assertTrue(transformer.transforms("META-INF/services/javax.ws.rs.ext.Providers"));
+        Assert.assertTrue(transformer.transforms("META-INF/ejb-jar.XML"));
+        Assert.assertFalse(transformer.transforms("META-INF/MANIFEST.MF"));
+        Assert.assertFalse(transformer.transforms("org/sample/logo.png"));
+        Assert.assertEquals(
+                "META-INF/services/jakarta.ws.rs.ext.Providers",
+                transformer.rename("META-INF/services/javax.ws.rs.ext.Providers"));
+        Assert.assertEquals(
+                "META-INF/services/javax.annotation.processing.Processor",
+                transformer.rename("META-INF/services/javax.annotation.processing.Processor"));
+        Assert.assertEquals("org/sample/javax.ejb.txt", transformer.rename("org/sample/javax.ejb.txt"));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidClassShouldBeRejected() throws Exception {
+        transformer.transform("org/sample/AppBean.class", 0L, new byte[0]);
+    }
+
+    /**
+     * Builds a class extending <code>Object</code>, whose constant pool holds the given UTF-8 constants and a long
+     * constant taking two entries.
+     *
+     * @param name the internal name of the class
+     * @param constants the further UTF-8 constants
+     * @return the class file
+     */
+    static byte[] classFile(String name, String... constants) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(7 + constants.length);
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        out.writeByte(5);
+        out.writeLong(Long.MAX_VALUE);
+        for (String constant : constants) {
+            out.writeByte(1);
+            out.writeUTF(constant);
+        }
+        // public super class, this class, super class, no interfaces, fields, methods and attributes
+        out.writeShort(0x21);
+        out.writeShort(2);
+        out.writeShort(4);
+        for (int i = 0; i < 4; i++) {
+            out.writeShort(0);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static final class ClassFileLoader extends ClassLoader {
+        Class<?> define(byte[] classFile) {
+            return defineClass(null, classFile, 0, classFile.length);
+        }
+    }
+}
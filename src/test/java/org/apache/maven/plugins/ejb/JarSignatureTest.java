@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JarSignatureTest {
+    private static final String LONG_NAME = "org/sample/ejb/very/deeply/nested/package/of/the/application/"
+            + "Gr\u00fc\u00dfeBeanImplementationWithAnEvenLongerName.class";
+
+    @Test
+    public void manifestShouldBeWrittenLikeJdkManifest() throws Exception {
+        JarSignature signature = new JarSignature("SHA-256");
+        byte[] digest = signature.digest("content".getBytes(StandardCharsets.UTF_8));
+        signature.add(LONG_NAME, digest);
+        Manifest base = newManifest();
+
+        Manifest expected = newManifest();
+        Attributes section = new Attributes();
+        section.putValue("SHA-256-Digest", Base64.getEncoder().encodeToString(digest));
+        expected.getEntries().put(LONG_NAME, section);
+        ByteArrayOutputStream expectedContent = new ByteArrayOutputStream();
+        expected.write(expectedContent);
+
+        Assert.assertArrayEquals(expectedContent.toByteArray(), signature.manifest(base));
+    }
+
+    @Test
+    public void signatureFileShouldHoldDigestsOfManifestSections() throws Exception {
+        JarSignature signature = new JarSignature("SHA-384");
+        signature.add("META-INF/ejb-jar.xml", signature.digest(new byte[] {1}));
+        signature.add(LONG_NAME, signature.digest(new byte[] {2}));
+        signature.add("META-INF/MANIFEST.MF", signature.digest(new byte[] {3}));
+        Manifest base = newManifest();
+        base.getEntries().put("org/sample/", new Attributes());
+        base.getEntries().get("org/sample/").putValue("Sealed", "true");
+
+        byte[] manifest = signature.manifest(base);
+        List<byte[]> sections = split(manifest);
+        Assert.assertEquals("main attributes, package and two entries", 4, sections.size());
+        Assert.assertTrue(new String(sections.get(1), StandardCharsets.UTF_8).startsWith("Name: org/sample/\r\n"));
+        Assert.assertEquals(
+                3, new Manifest(new ByteArrayInputStream(manifest)).getEntries().size());
+
+        Manifest signatureFile = new Manifest(new ByteArrayInputStream(signature.signatureFile("test")));
+        Attributes main = signatureFile.getMainAttributes();
+        Assert.assertEquals("1.0", main.getValue("Signature-Version"));
+        Assert.assertEquals(digest(manifest), main.getValue("SHA-384-Digest-Manifest"));
+        Assert.assertEquals(digest(sections.get(0)), main.getValue("SHA-384-Digest-Manifest-Main-Attributes"));
+        Assert.assertEquals(
+                digest(sections.get(1)),
+                signatureFile.getAttributes("org/sample/").getValue("SHA-384-Digest"));
+        Assert.assertEquals(
+                digest(sections.get(2)),
+                signatureFile.getAttributes("META-INF/ejb-jar.xml").getValue("SHA-384-Digest"));
+        Assert.assertEquals(
+                digest(sections.get(3)), signatureFile.getAttributes(LONG_NAME).getValue("SHA-384-Digest"));
+    }
+
+    @Test
+    public void signatureFilesShouldBeRecognized() {
+        Assert.assertTrue(JarSignature.isSignatureRelated("META-INF/MANIFEST.MF"));
+        Assert.assertTrue(JarSignature.isSignatureRelated("META-INF/EJB.SF"));
+        Assert.assertTrue(JarSignature.isSignatureRelated("meta-inf/ejb.rsa"));
+        Assert.assertTrue(JarSignature.isSignatureRelated("META-INF/SIG-EJB"));
+        Assert.assertFalse(JarSignature.isSignatureRelated("META-INF/ejb-jar.xml"));
+        Assert.assertFalse(JarSignature.isSignatureRelated("META-INF/keys/EJB.RSA"));
+        Assert.assertFalse(JarSignature.isSignatureRelated("org/sample/EJB.SF"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weakDigestAlgorithmShouldBeRejected() {
+        new JarSignature("SHA-1");
+    }
+
+    private static Manifest newManifest() {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+        manifest.getMainAttributes().putValue("Created-By", "Apache Maven");
+        return manifest;
+    }
+
+    /**
+     * Splits a manifest into its sections, each ending with the empty line.
+     */
+    private static List<byte[]> split(byte[] manifest) {
+        List<byte[]> sections = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i + 3 < manifest.length; i++) {
+            if (manifest[i] == '\r' && manifest[i + 1] == '\n' && manifest[i + 2] == '\r' && manifest[i + 3] == '\n') {
+                sections.add(Arrays.copyOfRange(manifest, start, i + 4));
+                start = i + 4;
+            }
+        }
+        return sections;
+    }
+
+    private static String digest(byte[] content) throws Exception {
+        return Base64.getEncoder()
+                .encodeToString(MessageDigest.getInstance("SHA-384").digest(content));
+    }
+}
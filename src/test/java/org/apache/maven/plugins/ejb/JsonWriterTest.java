@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonWriterTest {
+    @Test
+    public void nestedValuesShouldBeIndented() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            json.name("module").value("org.sample:ejb");
+            json.name("classifier").value((String) null);
+            json.name("phases").beginArray();
+            json.beginObject().name("wallTimeMs").value(1.5).endObject();
+            json.endArray();
+            json.name("cacheHits").beginObject().endObject();
+            json.name("entries").value(3L);
+            json.endObject();
+        }
+
+        Assert.assertEquals(
+                "{\n"
+                        + "  \"module\": \"org.sample:ejb\",\n"
+                        + "  \"classifier\": null,\n"
+                        + "  \"phases\": [\n"
+                        + "    {\n"
+                        + "      \"wallTimeMs\": 1.500\n"
+                        + "    }\n"
+                        + "  ],\n"
+                        + "  \"cacheHits\": {},\n"
+                        + "  \"entries\": 3\n"
+                        + "}\n",
+                out.toString());
+    }
+
+    @Test
+    public void stringsShouldBeEscaped() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.value("a \"quoted\" C:\\path\n\u0001");
+        }
+
+        Assert.assertEquals("\"a \\\"quoted\\\" C:\\\\path\\n\\u0001\"\n", out.toString());
+    }
+}
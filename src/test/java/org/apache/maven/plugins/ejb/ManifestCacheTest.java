@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.archiver.MavenArchiveConfiguration;
+import org.apache.maven.archiver.MavenArchiver;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ManifestCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void keptClassPathShouldGiveSameManifest() throws Exception {
+        MavenProject project = newProject(3);
+        MavenArchiveConfiguration configuration = newConfiguration();
+        File file = new File(temporaryFolder.getRoot(), "cache.properties");
+
+        byte[] expected = toBytes(new MavenArchiver().getManifest(null, project, configuration));
+        Assert.assertTrue(new String(expected, "UTF-8").contains("Class-Path: lib-0-1.0.jar lib-1-1.0.jar"));
+
+        List<Boolean> classPathBuilt = new ArrayList<>();
+        for (int build = 0; build < 2; build++) {
+            ManifestCache cache = new ManifestCache(file.toPath(), null);
+            Manifest manifest = cache.getManifest(
+                    configuration,
+                    built -> {
+                        classPathBuilt.add(built.getManifest().isAddClasspath());
+                        return new MavenArchiver().getManifest(null, project, built);
+                    },
+                    project);
+            Assert.assertArrayEquals(expected, toBytes(manifest));
+
+            // the manifest is built once per execution
+            cache.getManifest(configuration, built -> null, project);
+        }
+        Assert.assertEquals(
+                "the second build should use the kept class path", "[true, false]", classPathBuilt.toString());
+        Assert.assertTrue(configuration.getManifest().isAddClasspath());
+    }
+
+    @Test
+    public void withoutFileClassPathShouldBeBuiltEveryTime() throws Exception {
+        MavenProject project = newProject(3);
+        MavenArchiveConfiguration configuration = newConfiguration();
+
+        List<MavenArchiveConfiguration> configurations = new ArrayList<>();
+        for (int build = 0; build < 2; build++) {
+            Manifest manifest = new ManifestCache(null, null)
+                    .getManifest(
+                            configuration,
+                            built -> {
+                                configurations.add(built);
+                                return new MavenArchiver().getManifest(null, project, built);
+                            },
+                            project);
+            Assert.assertEquals(
+                    "lib-0-1.0.jar lib-1-1.0.jar lib-2-1.0.jar",
+                    manifest.getMainAttributes().getValue("Class-Path"));
+        }
+        Assert.assertEquals(Arrays.asList(configuration, configuration), configurations);
+    }
+
+    @Test
+    public void changedDependenciesShouldBuildClassPath() throws Exception {
+        MavenArchiveConfiguration configuration = newConfiguration();
+        File file = new File(temporaryFolder.getRoot(), "cache.properties");
+        MavenProject before = newProject(2);
+        new ManifestCache(file.toPath(), null).newArchiver().getManifest(null, before, configuration);
+
+        MavenProject after = newProject(3);
+        Assert.assertNotEquals(
+                ManifestCache.key(configuration.getManifest(), before),
+                ManifestCache.key(configuration.getManifest(), after));
+        Manifest manifest =
+                new ManifestCache(file.toPath(), null).newArchiver().getManifest(null, after, configuration);
+        Assert.assertEquals(
+                "lib-0-1.0.jar lib-1-1.0.jar lib-2-1.0.jar",
+                manifest.getMainAttributes().getValue("Class-Path"));
+    }
+
+    @Test
+    public void resolvedSnapshotShouldBuildClassPath() throws Exception {
+        MavenArchiveConfiguration configuration = newConfiguration();
+        File file = new File(temporaryFolder.getRoot(), "cache.properties");
+        MavenProject before = newSnapshotProject("1.0-20261018.120000-1");
+        new ManifestCache(file.toPath(), null).newArchiver().getManifest(null, before, configuration);
+
+        MavenProject after = newSnapshotProject("1.0-20261019.120000-2");
+        Assert.assertNotEquals(
+                ManifestCache.key(configuration.getManifest(), before),
+                ManifestCache.key(configuration.getManifest(), after));
+        Manifest manifest =
+                new ManifestCache(file.toPath(), null).newArchiver().getManifest(null, after, configuration);
+        Assert.assertEquals(
+                "lib-1.0-20261019.120000-2.jar", manifest.getMainAttributes().getValue("Class-Path"));
+    }
+
+    private MavenProject newProject(int dependencies) throws IOException {
+        MavenProject project = new MavenProject();
+        project.setGroupId("org.sample");
+        project.setArtifactId("sample-ejb");
+        project.setVersion("1.0");
+        project.getBuild().setOutputDirectory(temporaryFolder.getRoot().getPath());
+        DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+        handler.setAddedToClasspath(true);
+        Set<Artifact> artifacts = new LinkedHashSet<>();
+        for (int i = 0; i < dependencies; i++) {
+            Artifact artifact =
+                    new DefaultArtifact("org.sample", "lib-" + i, "1.0", Artifact.SCOPE_COMPILE, "jar", null, handler);
+            File jar = new File(temporaryFolder.getRoot(), "lib-" + i + "-1.0.jar");
+            jar.createNewFile();
+            artifact.setFile(jar);
+            artifacts.add(artifact);
+        }
+        project.setArtifacts(artifacts);
+        return project;
+    }
+
+    /**
+     * @param version the resolved version of the snapshot dependency, which is always in the same file
+     */
+    private MavenProject newSnapshotProject(String version) throws IOException {
+        MavenProject project = newProject(0);
+        DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+        handler.setAddedToClasspath(true);
+        Artifact artifact =
+                new DefaultArtifact("org.sample", "lib", version, Artifact.SCOPE_COMPILE, "jar", null, handler);
+        File jar = new File(temporaryFolder.getRoot(), "lib-1.0-SNAPSHOT.jar");
+        jar.createNewFile();
+        artifact.setFile(jar);
+        project.setArtifacts(Collections.singleton(artifact));
+        return project;
+    }
+
+    private static MavenArchiveConfiguration newConfiguration() {
+        MavenArchiveConfiguration configuration = new MavenArchiveConfiguration();
+        configuration.getManifest().setAddClasspath(true);
+        configuration.getManifest().setAddDefaultImplementationEntries(true);
+        return configuration;
+    }
+
+    private static byte[] toBytes(Manifest manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        return bytes.toByteArray();
+    }
+}
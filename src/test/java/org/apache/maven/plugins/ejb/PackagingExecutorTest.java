@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackagingExecutorTest {
+    @Test
+    public void lastLeaseShouldShutPoolDown() {
+        MavenSession session =
+                new MavenSession(null, new DefaultRepositorySystemSession(), new DefaultMavenExecutionRequest(), null);
+
+        PackagingExecutor first = PackagingExecutor.lease(session);
+        PackagingExecutor second = PackagingExecutor.lease(session);
+        ForkJoinPool pool = first.getPool();
+        Assert.assertSame("the executions of a session share the pool", pool, second.getPool());
+
+        first.close();
+        first.close();
+        Assert.assertFalse(pool.isShutdown());
+        second.close();
+        Assert.assertTrue(pool.isShutdown());
+
+        try (PackagingExecutor later = PackagingExecutor.lease(session)) {
+            Assert.assertNotSame(pool, later.getPool());
+            Assert.assertFalse(later.getPool().isShutdown());
+        }
+    }
+
+    @Test
+    public void unusedLeaseShouldNotCreatePool() {
+        DefaultRepositorySystemSession repositorySession = new DefaultRepositorySystemSession();
+        MavenSession session = new MavenSession(null, repositorySession, new DefaultMavenExecutionRequest(), null);
+
+        try (PackagingExecutor unused = PackagingExecutor.lease(session)) {
+            Assert.assertNull(repositorySession.getData().get(PackagingExecutor.class.getName()));
+            try (PackagingExecutor used = PackagingExecutor.lease(session)) {
+                ForkJoinPool pool = used.getPool();
+                Assert.assertNotNull(repositorySession.getData().get(PackagingExecutor.class.getName()));
+                unused.close();
+                Assert.assertFalse("an unused lease does not count", pool.isShutdown());
+            }
+        }
+        Assert.assertNull(repositorySession.getData().get(PackagingExecutor.class.getName()));
+    }
+
+    @Test
+    public void commonPoolShouldNotBeShutDown() {
+        try (PackagingExecutor executor = PackagingExecutor.lease(null)) {
+            Assert.assertSame(ForkJoinPool.commonPool(), executor.getPool());
+        }
+        Assert.assertFalse(ForkJoinPool.commonPool().isShutdown());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PackagingPhaseTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void phaseShouldNotBeRecordedWithoutRecording() {
+        PackagingPhase phase = PackagingPhase.begin(PackagingPhase.Kind.ARCHIVE, null, null);
+        Assert.assertFalse(phase.isRecording());
+        phase.end("ejb.jar", 1, 2, 3);
+    }
+
+    @Test
+    public void enabledPhaseShouldBeRecordedWithCounts() throws IOException {
+        Path output = temporaryFolder.getRoot().toPath().resolve("packaging.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.apache.maven.plugins.ejb.Archive");
+            recording.disable("org.apache.maven.plugins.ejb.Attach");
+            recording.start();
+
+            PackagingPhase archive = PackagingPhase.begin(PackagingPhase.Kind.ARCHIVE, "client", null);
+            Assert.assertTrue(archive.isRecording());
+            archive.end("ejb-client.jar", 3, 1000, 400);
+
+            PackagingPhase attach = PackagingPhase.begin(PackagingPhase.Kind.ATTACH, "client", null);
+            Assert.assertFalse(attach.isRecording());
+            attach.end("ejb-client.jar", 1, 0, 400);
+
+            recording.stop();
+            recording.dump(output);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(output);
+        Assert.assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        Assert.assertEquals(
+                "org.apache.maven.plugins.ejb.Archive", event.getEventType().getName());
+        Assert.assertEquals("client", event.getString("classifier"));
+        Assert.assertEquals("ejb-client.jar", event.getString("archive"));
+        Assert.assertEquals(3, event.getLong("fileCount"));
+        Assert.assertEquals(1000, event.getLong("bytesIn"));
+        Assert.assertEquals(400, event.getLong("bytesOut"));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamedDirectoryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parallelWalkShouldSelectSameEntries() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        for (String name : Arrays.asList(
+                "META-INF/ejb-jar.xml",
+                "org/sample/ejb/AppBean.class",
+                "org/sample/ejb/AppStub.class",
+                "org/sample/ejb/impl/AppImpl.class",
+                "org/sample/api/Api.class",
+                "org/sample/api/package.html",
+                "org/other/Other.class",
+                "org/sample/.svn/entries")) {
+            File file = new File(directory, name);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), name.getBytes("UTF-8"));
+        }
+        StreamedDirectory streamedDirectory =
+                new StreamedDirectory(directory.toPath(), new String[] {"org/sample/", "META-INF/**"}, new String[] {
+                    "**/*Bean.class", "**/*.html"
+                });
+
+        List<String> walked = new ArrayList<>();
+        streamedDirectory.walk(collector(walked));
+        List<String> walkedInParallel = new ArrayList<>();
+        streamedDirectory.walkParallel(collector(walkedInParallel), new ForkJoinPool(4));
+
+        Set<String> expected = new TreeSet<>(Arrays.asList(
+                "META-INF/",
+                "META-INF/ejb-jar.xml",
+                "org/sample/",
+                "org/sample/api/",
+                "org/sample/api/Api.class",
+                "org/sample/ejb/",
+                "org/sample/ejb/AppStub.class",
+                "org/sample/ejb/impl/",
+                "org/sample/ejb/impl/AppImpl.class"));
+        Assert.assertEquals(expected, new TreeSet<>(walked));
+        Assert.assertEquals(walked.size(), walkedInParallel.size());
+        Assert.assertEquals(expected, new TreeSet<>(walkedInParallel));
+    }
+
+    @Test
+    public void walkShouldSupportInMemoryFileSystem() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            Path directory = fileSystem.getPath("/classes");
+            for (String name : Arrays.asList(
+                    "META-INF/ejb-jar.xml", "org/sample/ejb/AppBean.class", "org/sample/ejb/AppStub.class")) {
+                Path file = directory.resolve(name);
+                Files.createDirectories(file.getParent());
+                Files.write(file, name.getBytes("UTF-8"));
+            }
+            StreamedDirectory streamedDirectory =
+                    new StreamedDirectory(directory, new String[0], new String[] {"**/*Bean.class"});
+
+            List<String> walked = new ArrayList<>();
+            streamedDirectory.walk(collector(walked));
+            List<String> walkedInParallel = Collections.synchronizedList(new ArrayList<>());
+            streamedDirectory.walkParallel(collector(walkedInParallel), new ForkJoinPool(2));
+
+            Set<String> expected = new TreeSet<>(Arrays.asList(
+                    "META-INF/",
+                    "META-INF/ejb-jar.xml",
+                    "org/",
+                    "org/sample/",
+                    "org/sample/ejb/",
+                    "org/sample/ejb/AppStub.class"));
+            Assert.assertEquals(expected, new TreeSet<>(walked));
+            Assert.assertEquals(expected, new TreeSet<>(walkedInParallel));
+        }
+    }
+
+    @Test
+    public void walksShouldGivePermissions() throws IOException {
+        Configuration configuration = Configuration.unix().toBuilder()
+                .setAttributeViews("basic", "posix")
+                .build();
+        try (FileSystem fileSystem = Jimfs.newFileSystem(configuration)) {
+            Path directory = fileSystem.getPath("/classes");
+            Path file = directory.resolve("org/sample/App.class");
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[] {1});
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-x---"));
+            StreamedDirectory streamedDirectory = new StreamedDirectory(directory, new String[0], new String[0]);
+
+            Map<String, Integer> walked = new TreeMap<>();
+            streamedDirectory.walk(permissionsCollector(walked));
+            Map<String, Integer> walkedInParallel = new TreeMap<>();
+            streamedDirectory.walkParallel(
+                    new StreamedDirectory.Visitor() {
+                        @Override
+                        public void directory(String name, BasicFileAttributes attributes) {}
+
+                        @Override
+                        public void file(String name, Path file, BasicFileAttributes attributes) throws IOException {
+                            // read along with the other attributes, so no second stat is needed
+                            Assert.assertTrue(attributes instanceof PosixFileAttributes);
+                            walkedInParallel.put(name, StreamedDirectory.permissions(file, attributes));
+                        }
+                    },
+                    new ForkJoinPool(2));
+
+            Assert.assertEquals(Integer.valueOf(0750), walked.get("org/sample/App.class"));
+            Assert.assertEquals(Collections.singletonMap("org/sample/App.class", 0750), walkedInParallel);
+        }
+
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            Path file = fileSystem.getPath("/App.class");
+            Files.write(file, new byte[] {1});
+            Assert.assertEquals(
+                    -1, StreamedDirectory.permissions(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        }
+    }
+
+    @Test(expected = FileSystemLoopException.class)
+    public void parallelWalkShouldDetectLoops() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        Path sample = new File(directory, "org/sample").toPath();
+        Files.createDirectories(sample);
+        try {
+            Files.createSymbolicLink(sample.resolve("loop"), sample.getParent());
+        } catch (UnsupportedOperationException | IOException e) {
+            Assume.assumeNoException(e);
+        }
+        new StreamedDirectory(directory.toPath(), new String[0], new String[0])
+                .walkParallel(collector(Collections.synchronizedList(new ArrayList<>())), new ForkJoinPool(2));
+    }
+
+    private static StreamedDirectory.Visitor permissionsCollector(Map<String, Integer> permissions) {
+        return new StreamedDirectory.Visitor() {
+            @Override
+            public void directory(String name, BasicFileAttributes attributes) {}
+
+            @Override
+            public void file(String name, Path file, BasicFileAttributes attributes) throws IOException {
+                permissions.put(name, StreamedDirectory.permissions(file, attributes));
+            }
+        };
+    }
+
+    private static StreamedDirectory.Visitor collector(List<String> names) {
+        return new StreamedDirectory.Visitor() {
+            @Override
+            public void directory(String name, BasicFileAttributes attributes) {
+                names.add(name);
+            }
+
+            @Override
+            public void file(String name, Path file, BasicFileAttributes attributes) {
+                names.add(name);
+            }
+        };
+    }
+}
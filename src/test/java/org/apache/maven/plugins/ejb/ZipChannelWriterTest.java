@@ -0,0 +1,469 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.ejb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipChannelWriterTest {
+    private static final long TIME = 1650308130000L;
+
+    private static final int FILE_MODE = 0100644;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void storedFileShouldBeTransferredWithValidCrc() throws IOException {
+        byte[] content = randomBytes((int) ZipChannelWriter.TRANSFER_THRESHOLD * 3 + 17);
+        Path source = temporaryFolder.newFile("large.bin").toPath();
+        Files.write(source, content);
+
+        File archive = temporaryFolder.newFile("stored.zip");
+        try (ZipChannelWriter writer = openWriter(archive);
+                FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            writer.putDirectory("data/", TIME, 040755);
+            writer.putFile("data/large.bin", channel, false, TIME, FILE_MODE);
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry entry = zipFile.getEntry("data/large.bin");
+            Assert.assertEquals(ZipEntry.STORED, entry.getMethod());
+            Assert.assertEquals(content.length, entry.getSize());
+            Assert.assertArrayEquals(content, read(zipFile, entry));
+            Assert.assertTrue(zipFile.getEntry("data/").isDirectory());
+        }
+    }
+
+    @Test
+    public void archiveShouldBeWrittenToInMemoryFileSystem() throws IOException {
+        byte[] content = randomBytes((int) ZipChannelWriter.TRANSFER_THRESHOLD * 2 + 5);
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            Path source = fileSystem.getPath("/classes/large.bin");
+            Files.createDirectories(source.getParent());
+            Files.write(source, content);
+
+            Path archive = fileSystem.getPath("/target/sample.jar");
+            Files.createDirectories(archive.getParent());
+            try (ZipChannelWriter writer = new ZipChannelWriter(
+                            FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+                    FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                writer.putFile("large.bin", channel, false, TIME, FILE_MODE);
+                writer.putStream("text.txt", stream("deflated"), true, TIME, FILE_MODE);
+                writer.finish();
+            }
+
+            Map<String, byte[]> entries = new TreeMap<>();
+            try (ZipInputStream in = new ZipInputStream(Files.newInputStream(archive))) {
+                for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                    entries.put(entry.getName(), toBytes(in));
+                }
+            }
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("large.bin", "text.txt")), entries.keySet());
+            Assert.assertArrayEquals(content, entries.get("large.bin"));
+            Assert.assertEquals("deflated", new String(entries.get("text.txt"), StandardCharsets.UTF_8));
+            Assert.assertEquals(2, CentralDirectory.read(archive).getEntryCount());
+        }
+    }
+
+    @Test
+    public void compressedFileShouldBeDeflated() throws IOException {
+        byte[] content = repeat("compressible content ", 10000);
+        Path source = temporaryFolder.newFile("text.txt").toPath();
+        Files.write(source, content);
+
+        File archive = temporaryFolder.newFile("deflated.zip");
+        try (ZipChannelWriter writer = openWriter(archive);
+                FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            writer.putFile("text.txt", channel, true, TIME, FILE_MODE);
+            writer.finish();
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ZipEntry entry = zipFile.getEntry("text.txt");
+            Assert.assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            Assert.assertTrue(entry.getCompressedSize() < entry.getSize());
+            Assert.assertArrayEquals(content, read(zipFile, entry));
+        }
+    }
+
+    @Test
+    public void streamedEntriesShouldKeepNamesAndTimes() throws IOException {
+        File archive = temporaryFolder.newFile("streamed.zip");
+        try (ZipChannelWriter writer = openWriter(archive)) {
+            writer.putStream("small.txt", stream("stored"), false, TIME, FILE_MODE);
+            writer.putStream("\u00fcml\u00e4ut.txt", stream("deflated"), true, TIME, FILE_MODE);
+            writer.finish();
+            Assert.assertEquals(2, writer.getEntryCount());
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Assert.assertEquals(2, zipFile.size());
+            ZipEntry stored = zipFile.getEntry("small.txt");
+            Assert.assertEquals(ZipEntry.STORED, stored.getMethod());
+            Assert.assertEquals("stored", new String(read(zipFile, stored), StandardCharsets.UTF_8));
+            ZipEntry deflated = zipFile.getEntry("\u00fcml\u00e4ut.txt");
+            Assert.assertEquals("deflated", new String(read(zipFile, deflated), StandardCharsets.UTF_8));
+            Assert.assertEquals(dosRounded(TIME), deflated.getTime());
+        }
+    }
+
+    @Test
+    public void signatureShouldGetDigestsOfWrittenFiles() throws Exception {
+        byte[] large = randomBytes((int) ZipChannelWriter.TRANSFER_THRESHOLD * 2 + 3);
+        byte[] text = repeat("public class Generated {}\n", 1000);
+        Path source = temporaryFolder.newFile("large.bin").toPath();
+        Files.write(source, large);
+
+        JarSignature signature = new JarSignature("SHA-256");
+        Deflater deflater = ZipChannelWriter.newDeflater();
+        try (ZipChannelWriter writer = openWriter(temporaryFolder.newFile("signed.jar"));
+                FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            writer.setSignature(signature);
+            writer.putDirectory("data/", TIME, 040755);
+            writer.putFile("data/large.bin", channel, false, TIME, FILE_MODE);
+            writer.putStream("data/small.txt", stream("small"), true, TIME, FILE_MODE);
+            writer.putPrepared("data/Generated.java", ZipChannelWriter.prepare(text, true, deflater), TIME, FILE_MODE);
+            writer.putStream("META-INF/EJB.SF", stream("ignored"), true, TIME, FILE_MODE);
+            writer.finish();
+        } finally {
+            deflater.end();
+        }
+
+        Manifest manifest = new Manifest(new ByteArrayInputStream(signature.manifest(new Manifest())));
+        Assert.assertEquals(
+                new TreeSet<>(Arrays.asList("data/Generated.java", "data/large.bin", "data/small.txt")),
+                manifest.getEntries().keySet());
+        Assert.assertEquals(
+                sha256(large), manifest.getAttributes("data/large.bin").getValue("SHA-256-Digest"));
+        Assert.assertEquals(
+                sha256("small".getBytes(StandardCharsets.UTF_8)),
+                manifest.getAttributes("data/small.txt").getValue("SHA-256-Digest"));
+        Assert.assertEquals(
+                sha256(text), manifest.getAttributes("data/Generated.java").getValue("SHA-256-Digest"));
+    }
+
+    @Test
+    public void preparedEntriesShouldMatchStreamed() throws IOException {
+        byte[] text = repeat("public class Generated {}\n", 20000);
+        byte[] random = randomBytes(100000);
+
+        File streamed = temporaryFolder.newFile("streamed.zip");
+        try (ZipChannelWriter writer = openWriter(streamed)) {
+            writer.putStream("text.txt", new ByteArrayInputStream(text), true, TIME, FILE_MODE);
+            writer.putStream("random.bin", new ByteArrayInputStream(random), true, TIME, FILE_MODE);
+            writer.putStream("stored.txt", stream("stored"), false, TIME, FILE_MODE);
+            writer.finish();
+        }
+
+        File prepared = temporaryFolder.newFile("prepared.zip");
+        Deflater deflater = ZipChannelWriter.newDeflater();
+        try (ZipChannelWriter writer = openWriter(prepared)) {
+            writer.putPrepared("text.txt", ZipChannelWriter.prepare(text, true, deflater), TIME, FILE_MODE);
+            writer.putPrepared("random.bin", ZipChannelWriter.prepare(random, true, deflater), TIME, FILE_MODE);
+            writer.putPrepared(
+                    "stored.txt",
+                    ZipChannelWriter.prepare("stored".getBytes(StandardCharsets.UTF_8), false, deflater),
+                    TIME,
+                    FILE_MODE);
+            writer.finish();
+        } finally {
+            deflater.end();
+        }
+
+        Assert.assertArrayEquals(Files.readAllBytes(streamed.toPath()), Files.readAllBytes(prepared.toPath()));
+    }
+
+    @Test
+    public void spilledCentralDirectoryShouldMatchInMemory() throws IOException {
+        File inMemory = temporaryFolder.newFile("in-memory.zip");
+        try (ZipChannelWriter writer = openWriter(inMemory)) {
+            writeEntries(writer, 5000);
+        }
+
+        File spilled = temporaryFolder.newFile("spilled.zip");
+        File spill = temporaryFolder.newFile("central-directory.tmp");
+        try (ZipChannelWriter writer = openWriter(spilled);
+                FileChannel spillChannel =
+                        FileChannel.open(spill.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            writer.setCentralDirectorySpill(spillChannel);
+            writeEntries(writer, 5000);
+        }
+
+        Assert.assertArrayEquals(Files.readAllBytes(inMemory.toPath()), Files.readAllBytes(spilled.toPath()));
+        try (ZipFile zipFile = new ZipFile(spilled)) {
+            Assert.assertEquals(5001, zipFile.size());
+            Assert.assertEquals(
+                    "content 4999",
+                    new String(
+                            read(zipFile, zipFile.getEntry("org/sample/Generated4999.txt")), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void forcedZip64ShouldBeReadable() throws IOException {
+        byte[] large = randomBytes((int) ZipChannelWriter.TRANSFER_THRESHOLD + 1);
+        Path source = temporaryFolder.newFile("large.bin").toPath();
+        Files.write(source, large);
+
+        File archive = temporaryFolder.newFile("zip64.zip");
+        try (ZipChannelWriter writer = openWriter(archive);
+                FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            writer.setForceZip64(true);
+            writer.setAlignment(4096);
+            writer.putDirectory("a/", TIME, 040755);
+            writer.putStream("a/b.txt", stream("stored"), false, TIME, FILE_MODE);
+            writer.putStream("a/bc.txt", stream("deflated"), true, TIME, FILE_MODE);
+            writer.putFile("a/large.bin", channel, false, TIME, FILE_MODE);
+            writer.finish();
+        }
+
+        for (long offset : storedDataOffsets(archive).values()) {
+            Assert.assertEquals(0, offset % 4096);
+        }
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Assert.assertEquals(4, zipFile.size());
+            Assert.assertEquals(large.length, zipFile.getEntry("a/large.bin").getSize());
+            Assert.assertArrayEquals(large, read(zipFile, zipFile.getEntry("a/large.bin")));
+            Assert.assertEquals(
+                    "deflated", new String(read(zipFile, zipFile.getEntry("a/bc.txt")), StandardCharsets.UTF_8));
+        }
+        // the local file headers are read by a stream
+        Map<String, byte[]> streamed = readStream(archive);
+        Assert.assertEquals(4, streamed.size());
+        Assert.assertEquals("stored", new String(streamed.get("a/b.txt"), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(large, streamed.get("a/large.bin"));
+
+        CentralDirectory centralDirectory = CentralDirectory.read(archive.toPath());
+        Assert.assertEquals(4, centralDirectory.getEntryCount());
+        Assert.assertEquals(
+                large.length + "stored".length() + "deflated".length(), centralDirectory.getUncompressedSize());
+    }
+
+    @Test
+    public void moreThan65535EntriesShouldUseZip64End() throws IOException {
+        int count = ZipChannelWriter.MAX_UNSIGNED_SHORT + 10;
+        File archive = temporaryFolder.newFile("many.zip");
+        try (ZipChannelWriter writer = openWriter(archive)) {
+            writeEntries(writer, count);
+            Assert.assertEquals(count + 1, writer.getEntryCount());
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Assert.assertEquals(count + 1, zipFile.size());
+            Assert.assertEquals(
+                    "content " + (count - 1),
+                    new String(
+                            read(zipFile, zipFile.getEntry("org/sample/Generated" + (count - 1) + ".txt")),
+                            StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(count + 1, readStream(archive).size());
+        Assert.assertEquals(count + 1, CentralDirectory.read(archive.toPath()).getEntryCount());
+    }
+
+    @Test
+    public void storedEntriesShouldBeAligned() throws IOException {
+        byte[] large = randomBytes((int) ZipChannelWriter.TRANSFER_THRESHOLD + 1);
+        Path source = temporaryFolder.newFile("large.bin").toPath();
+        Files.write(source, large);
+
+        File archive = temporaryFolder.newFile("aligned.zip");
+        try (ZipChannelWriter writer = openWriter(archive);
+                FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            writer.setAlignment(4096);
+            writer.putDirectory("a/", TIME, 040755);
+            writer.putStream("a/b.txt", stream("stored"), false, TIME, FILE_MODE);
+            writer.putStream("a/bc.txt", stream("deflated"), true, TIME, FILE_MODE);
+            writer.putFile("a/large.bin", channel, false, TIME, FILE_MODE);
+            writer.putStream("abcde.txt", stream("stored again"), false, TIME, FILE_MODE);
+            writer.finish();
+        }
+
+        Map<String, Long> offsets = storedDataOffsets(archive);
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("a/b.txt", "a/large.bin", "abcde.txt")), offsets.keySet());
+        for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+            Assert.assertEquals(offset.getKey(), 0, offset.getValue() % 4096);
+        }
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Assert.assertArrayEquals(large, read(zipFile, zipFile.getEntry("a/large.bin")));
+            Assert.assertEquals(
+                    "stored again", new String(read(zipFile, zipFile.getEntry("abcde.txt")), StandardCharsets.UTF_8));
+            Assert.assertEquals(
+                    "deflated", new String(read(zipFile, zipFile.getEntry("a/bc.txt")), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void alignmentShouldBePowerOfTwo() throws IOException {
+        try (ZipChannelWriter writer = openWriter(temporaryFolder.newFile("invalid.zip"))) {
+            writer.setAlignment(12);
+        }
+    }
+
+    @Test
+    public void dosTimeShouldBeClampedTo1980() {
+        Assert.assertEquals(ZipChannelWriter.DOS_EPOCH, ZipChannelWriter.toDosTime(0L));
+    }
+
+    /**
+     * Walks the local file headers of an archive.
+     *
+     * @return the offsets of the data of the stored files by entry name
+     */
+    static Map<String, Long> storedDataOffsets(File archive) throws IOException {
+        Map<String, Long> offsets = new TreeMap<>();
+        ByteBuffer content =
+                ByteBuffer.wrap(Files.readAllBytes(archive.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        while (content.getInt(offset) == 0x04034b50) {
+            int method = content.getShort(offset + 8);
+            int compressedSize = content.getInt(offset + 18);
+            int nameLength = content.getShort(offset + 26);
+            int extraLength = content.getShort(offset + 28) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            content.position(offset + 30);
+            content.get(name);
+            if (compressedSize == -1) {
+                // the Zip64 extra field comes first, with the size before the compressed size
+                compressedSize = (int) content.getLong(offset + 30 + nameLength + 12);
+            }
+            int dataOffset = offset + 30 + nameLength + extraLength;
+            String entryName = new String(name, StandardCharsets.UTF_8);
+            if (method == ZipEntry.STORED && !entryName.endsWith("/")) {
+                offsets.put(entryName, (long) dataOffset);
+            }
+            offset = dataOffset + compressedSize;
+        }
+        return offsets;
+    }
+
+    private static void writeEntries(ZipChannelWriter writer, int count) throws IOException {
+        writer.putDirectory("org/sample/", TIME, 040755);
+        for (int i = 0; i < count; i++) {
+            writer.putStream("org/sample/Generated" + i + ".txt", stream("content " + i), i % 2 == 0, TIME, FILE_MODE);
+        }
+        writer.finish();
+    }
+
+    /**
+     * @return the content of the entries by name, read from the local file headers
+     */
+    private static Map<String, byte[]> readStream(File archive) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                entries.put(entry.getName(), out.toByteArray());
+            }
+        }
+        return entries;
+    }
+
+    private static ZipChannelWriter openWriter(File archive) throws IOException {
+        return new ZipChannelWriter(
+                FileChannel.open(archive.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(byte[] content) throws NoSuchAlgorithmException {
+        return Base64.getEncoder()
+                .encodeToString(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            return toBytes(in);
+        }
+    }
+
+    private static byte[] toBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the time a zip entry reports after the round trip through the two second MS-DOS resolution
+     */
+    private static long dosRounded(long time) {
+        ZipEntry entry = new ZipEntry("x");
+        entry.setTime(time);
+        return entry.getTime();
+    }
+}